@@ -0,0 +1,21 @@
+#!/bin/bash
+
+# 查询回放脚本：按录制的查询日志向目标实例回放请求，并比较不同版本的延迟分布
+#
+# 用法:
+#   ./scripts/replay-queries.sh replay --log data/query-log --target http://localhost:8080 [--speed 2]
+#   ./scripts/replay-queries.sh compare baseline.ndjson candidate.ndjson
+#
+# 录制需在被测实例上开启 app.query-log.enabled=true（或设置 QUERY_LOG_ENABLED=true）
+
+JAR=$(ls target/elasticsearch-ai-query-*.jar 2>/dev/null | grep -v original | head -n 1)
+
+if [ -z "$JAR" ]; then
+    echo "❌ 未找到应用jar，请先执行 mvn package -DskipTests"
+    exit 1
+fi
+
+# 使用Spring Boot的PropertiesLauncher以可执行jar中的依赖运行回放工具（不启动应用）
+exec java -cp "$JAR" \
+    -Dloader.main=com.example.tools.QueryReplayTool \
+    org.springframework.boot.loader.launch.PropertiesLauncher "$@"
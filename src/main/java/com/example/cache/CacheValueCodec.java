@@ -0,0 +1,108 @@
+package com.example.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.cache.support.NullValue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 二级缓存的值编码
+ * 向量（float[]）编码为紧凑的二进制数组，字符串按UTF-8编码，其他对象以"类名 + JSON"编码；
+ * 无法编码的值返回null，只保存在一级缓存中
+ */
+public class CacheValueCodec {
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_FLOAT_ARRAY = 1;
+    private static final byte TYPE_STRING = 2;
+    private static final byte TYPE_JSON = 3;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    public byte[] encode(Object value) {
+        if (value == null || value == NullValue.INSTANCE) {
+            return new byte[]{TYPE_NULL};
+        }
+
+        if (value instanceof float[] vector) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 + vector.length * Float.BYTES);
+            buffer.put(TYPE_FLOAT_ARRAY);
+            for (float element : vector) {
+                buffer.putFloat(element);
+            }
+            return buffer.array();
+        }
+
+        if (value instanceof String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            return ByteBuffer.allocate(1 + bytes.length).put(TYPE_STRING).put(bytes).array();
+        }
+
+        if (!isJsonSerializable(value.getClass())) {
+            return null;
+        }
+        try {
+            byte[] type = value.getClass().getName().getBytes(StandardCharsets.UTF_8);
+            byte[] json = objectMapper.writeValueAsBytes(value);
+            return ByteBuffer.allocate(1 + Short.BYTES + type.length + json.length)
+                .put(TYPE_JSON)
+                .putShort((short) type.length)
+                .put(type)
+                .put(json)
+                .array();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public Object decode(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        switch (buffer.get()) {
+            case TYPE_NULL:
+                return NullValue.INSTANCE;
+            case TYPE_FLOAT_ARRAY: {
+                float[] vector = new float[buffer.remaining() / Float.BYTES];
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = buffer.getFloat();
+                }
+                return vector;
+            }
+            case TYPE_STRING:
+                return new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8);
+            case TYPE_JSON: {
+                byte[] type = new byte[buffer.getShort()];
+                buffer.get(type);
+                String typeName = new String(type, StandardCharsets.UTF_8);
+                // 类型名来自Redis，只加载允许的包中的类，且不触发类的静态初始化
+                if (!isAllowedType(typeName)) {
+                    throw new IOException("不允许的缓存值类型: " + typeName);
+                }
+                try {
+                    Class<?> valueType = Class.forName(typeName, false, CacheValueCodec.class.getClassLoader());
+                    return objectMapper.readValue(bytes, buffer.position(), buffer.remaining(), valueType);
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("未知的缓存值类型", e);
+                }
+            }
+            default:
+                throw new IOException("未知的缓存值编码");
+        }
+    }
+
+    /**
+     * 只对本项目的DTO/模型类使用JSON编码（第三方响应对象通常无法通过Jackson反序列化）
+     */
+    private boolean isJsonSerializable(Class<?> type) {
+        return type.getName().startsWith("com.example.");
+    }
+
+    /**
+     * 解码时允许加载的类型
+     */
+    private boolean isAllowedType(String typeName) {
+        return typeName.startsWith("com.example.") || typeName.startsWith("java.");
+    }
+}
@@ -0,0 +1,333 @@
+package com.example.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 二级缓存
+ * 一级为进程内有界LRU（ConcurrentHashMap加访问时间戳，命中不加锁，超出容量时批量淘汰最久未访问的条目），二级为Redis（多实例共享）。读取时依次查询L1、L2，L2命中后回填L1；
+ * 写入同时写两级；删除和清空时通过Redis发布订阅通知其他实例清理各自的L1。
+ * 配置了软TTL的缓存支持提前刷新：通过 get(key, loader) 读取到超过软TTL的热点条目时
+ * 立即返回旧值，同时由后台任务重新计算
+ */
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TwoLevelCache.class);
+
+    private final String name;
+    private static final int CLEAR_BATCH_SIZE = 500;
+
+    private final ConcurrentHashMap<String, CacheEntry> localCache = new ConcurrentHashMap<>();
+    private final int maxLocalEntries;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final RedisTemplate<String, byte[]> redisTemplate;
+    private final CacheValueCodec codec;
+    private final String keyPrefix;
+    private final Duration ttl;
+    private final Duration softTtl;
+    private final TwoLevelCacheManager manager;
+
+    private final ConcurrentHashMap<String, ReentrantLock> loadLocks = new ConcurrentHashMap<>();
+
+    private final AtomicLong l1Hits = new AtomicLong();
+    private final AtomicLong l2Hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+
+    /**
+     * 缓存条目：值、写入时间、写入后的访问次数（决定是否值得提前刷新）和最近访问时间（决定淘汰顺序）
+     */
+    private record CacheEntry(Object value, long writtenAt, AtomicInteger hits, AtomicLong lastAccess) {
+        CacheEntry(Object value, long writtenAt) {
+            this(value, writtenAt, new AtomicInteger(), new AtomicLong(System.nanoTime()));
+        }
+    }
+
+    public TwoLevelCache(String name, int maxLocalEntries, RedisTemplate<String, byte[]> redisTemplate,
+                         CacheValueCodec codec, String keyPrefix, Duration ttl, Duration softTtl,
+                         TwoLevelCacheManager manager) {
+        super(true);
+        this.name = name;
+        this.maxLocalEntries = maxLocalEntries;
+        this.redisTemplate = redisTemplate;
+        this.codec = codec;
+        this.keyPrefix = keyPrefix;
+        this.ttl = ttl;
+        this.softTtl = softTtl;
+        this.manager = manager;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return localCache;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        CacheEntry entry = lookupEntry(String.valueOf(key));
+        return entry == null ? null : entry.value();
+    }
+
+    private CacheEntry lookupEntry(String localKey) {
+        CacheEntry entry = getLocal(localKey);
+        if (entry != null) {
+            l1Hits.incrementAndGet();
+            entry.hits().incrementAndGet();
+            return entry;
+        }
+
+        entry = getRemote(localKey);
+        if (entry != null) {
+            l2Hits.incrementAndGet();
+            putLocal(localKey, entry);
+            return entry;
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = String.valueOf(key);
+        CacheEntry cached = lookupEntry(localKey);
+        if (cached != null) {
+            maybeRefreshAhead(key, localKey, cached, valueLoader);
+            return (T) fromStoreValue(cached.value());
+        }
+
+        // 同一个键只允许一个线程加载，其他线程等待结果
+        ReentrantLock lock = loadLocks.computeIfAbsent(localKey, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            ValueWrapper loaded = get(key);
+            if (loaded != null) {
+                return (T) loaded.get();
+            }
+            T value = valueLoader.call();
+            put(key, value);
+            return value;
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } finally {
+            lock.unlock();
+            loadLocks.remove(localKey, lock);
+        }
+    }
+
+    /**
+     * 条目超过软TTL且写入后被访问的次数达到阈值时，提交后台刷新（由管理器去重和限流），本次仍返回旧值
+     */
+    private void maybeRefreshAhead(Object key, String localKey, CacheEntry entry, Callable<?> valueLoader) {
+        if (softTtl == null || System.currentTimeMillis() - entry.writtenAt() < softTtl.toMillis()) {
+            return;
+        }
+        staleHits.incrementAndGet();
+        if (entry.hits().get() < manager.getRefreshMinHits()) {
+            return;
+        }
+        manager.scheduleRefresh(name + ":" + localKey, () -> {
+            Object value = valueLoader.call();
+            put(key, value);
+            return value;
+        });
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        String localKey = String.valueOf(key);
+        CacheEntry entry = new CacheEntry(toStoreValue(value), System.currentTimeMillis());
+        putLocal(localKey, entry);
+        putRemote(localKey, entry);
+    }
+
+    @Override
+    public void evict(Object key) {
+        String localKey = String.valueOf(key);
+        evictLocal(localKey);
+        if (manager.isRedisAvailable()) {
+            try {
+                redisTemplate.delete(redisKey(localKey));
+            } catch (Exception e) {
+                manager.markRedisFailure(e);
+            }
+        }
+        manager.publishInvalidation(name, localKey);
+    }
+
+    @Override
+    public void clear() {
+        clearLocal();
+        if (manager.isRedisAvailable()) {
+            try {
+                // 按前缀分批清空二级缓存；使用SCAN游标而不是KEYS，避免阻塞Redis。
+                // 结果缓存通常依靠键中的代数失效，很少需要清空
+                ScanOptions options = ScanOptions.scanOptions().match(keyPrefix + "*").count(CLEAR_BATCH_SIZE).build();
+                try (Cursor<String> cursor = redisTemplate.scan(options)) {
+                    List<String> batch = new ArrayList<>(CLEAR_BATCH_SIZE);
+                    while (cursor.hasNext()) {
+                        batch.add(cursor.next());
+                        if (batch.size() >= CLEAR_BATCH_SIZE) {
+                            redisTemplate.delete(batch);
+                            batch.clear();
+                        }
+                    }
+                    if (!batch.isEmpty()) {
+                        redisTemplate.delete(batch);
+                    }
+                }
+            } catch (Exception e) {
+                manager.markRedisFailure(e);
+            }
+        }
+        manager.publishInvalidation(name, null);
+    }
+
+    /**
+     * 处理其他实例广播的失效通知（只清理本地L1）
+     */
+    void onRemoteInvalidation(String key) {
+        if (key == null) {
+            clearLocal();
+        } else {
+            evictLocal(key);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("localEntries", localCache.size());
+        stats.put("l1Hits", l1Hits.get());
+        stats.put("l2Hits", l2Hits.get());
+        stats.put("misses", misses.get());
+        stats.put("staleHits", staleHits.get());
+        stats.put("ttlSeconds", ttl.getSeconds());
+        if (softTtl != null) {
+            stats.put("softTtlSeconds", softTtl.getSeconds());
+        }
+        return stats;
+    }
+
+    /**
+     * 读取一级缓存，超过TTL的条目视为不存在并移除（与二级缓存的过期时间一致）
+     */
+    private CacheEntry getLocal(String key) {
+        CacheEntry entry = localCache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.writtenAt() >= ttl.toMillis()) {
+            localCache.remove(key, entry);
+            return null;
+        }
+        entry.lastAccess().set(System.nanoTime());
+        return entry;
+    }
+
+    private void putLocal(String key, CacheEntry entry) {
+        localCache.put(key, entry);
+        if (localCache.size() > maxLocalEntries) {
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    /**
+     * 超出容量时淘汰最久未访问的条目，一次淘汰到容量的90%以分摊排序开销；
+     * 同一时间只有一个线程执行淘汰，其他线程直接返回（容量可能短暂超出）
+     */
+    private void evictLeastRecentlyUsed() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            int excess = localCache.size() - maxLocalEntries * 9 / 10;
+            if (excess <= 0) {
+                return;
+            }
+            List<Map.Entry<String, CacheEntry>> entries = new ArrayList<>(localCache.entrySet());
+            entries.sort(Comparator.comparingLong(e -> e.getValue().lastAccess().get()));
+            for (int i = 0; i < Math.min(excess, entries.size()); i++) {
+                Map.Entry<String, CacheEntry> eldest = entries.get(i);
+                localCache.remove(eldest.getKey(), eldest.getValue());
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void evictLocal(String key) {
+        localCache.remove(key);
+    }
+
+    private void clearLocal() {
+        localCache.clear();
+    }
+
+    /**
+     * 读取二级缓存，存储格式为：写入时间(8字节) + 编码后的值
+     */
+    private CacheEntry getRemote(String key) {
+        if (!manager.isRedisAvailable()) {
+            return null;
+        }
+        try {
+            byte[] bytes = redisTemplate.opsForValue().get(redisKey(key));
+            if (bytes == null || bytes.length <= Long.BYTES) {
+                return null;
+            }
+            long writtenAt = ByteBuffer.wrap(bytes).getLong();
+            return new CacheEntry(codec.decode(Arrays.copyOfRange(bytes, Long.BYTES, bytes.length)), writtenAt);
+        } catch (Exception e) {
+            manager.markRedisFailure(e);
+            return null;
+        }
+    }
+
+    private void putRemote(String key, CacheEntry entry) {
+        if (!manager.isRedisAvailable()) {
+            return;
+        }
+        byte[] encoded = codec.encode(entry.value());
+        if (encoded == null) {
+            logger.debug("缓存 [{}] 的值类型 {} 不支持二级缓存，仅保存在本地", name, entry.value().getClass().getSimpleName());
+            return;
+        }
+        byte[] bytes = ByteBuffer.allocate(Long.BYTES + encoded.length)
+            .putLong(entry.writtenAt())
+            .put(encoded)
+            .array();
+        try {
+            redisTemplate.opsForValue().set(redisKey(key), bytes, ttl);
+        } catch (Exception e) {
+            manager.markRedisFailure(e);
+        }
+    }
+
+    private String redisKey(String key) {
+        return keyPrefix + key;
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.cache;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 二级缓存管理器
+ * 为每个缓存创建"进程内LRU + Redis"的二级缓存。Redis键形如
+ * {前缀}:{缓存名}:v{版本}:{键}，数据结构变化时提升版本号即可让旧值自然过期；
+ * Redis不可用时暂停访问一段时间，期间只使用一级缓存。
+ * 配置了软TTL的缓存由管理器统一调度提前刷新：同一键同时只刷新一次，
+ * 刷新速率受令牌桶限制，线程池和队列有界，队列满时直接放弃本次刷新
+ */
+public class TwoLevelCacheManager implements CacheManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(TwoLevelCacheManager.class);
+
+    private final RedisTemplate<String, byte[]> redisTemplate;
+    private final boolean redisEnabled;
+    private final String keyPrefix;
+    private final int keyVersion;
+    private final String invalidationChannel;
+    private final int maxLocalEntries;
+    private final Duration defaultTtl;
+    private final Map<String, Duration> ttls;
+    private final long redisRetryIntervalMs;
+    private final Map<String, Duration> softTtls;
+    private final int refreshMinHits;
+    private final double maxRefreshesPerSecond;
+    private final ThreadPoolExecutor refreshExecutor;
+
+    private final CacheValueCodec codec = new CacheValueCodec();
+    private final String instanceId = UUID.randomUUID().toString();
+    private final ConcurrentHashMap<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong refreshesScheduled = new AtomicLong();
+    private final AtomicLong refreshesSucceeded = new AtomicLong();
+    private final AtomicLong refreshesFailed = new AtomicLong();
+    private final AtomicLong refreshesThrottled = new AtomicLong();
+
+    private volatile long redisUnavailableUntil = 0L;
+    private double refreshTokens;
+    private long lastRefillTime = System.nanoTime();
+
+    public TwoLevelCacheManager(RedisTemplate<String, byte[]> redisTemplate, boolean redisEnabled,
+                                String keyPrefix, int keyVersion, String invalidationChannel,
+                                int maxLocalEntries, Duration defaultTtl, Map<String, Duration> ttls,
+                                long redisRetryIntervalMs, Map<String, Duration> softTtls,
+                                int refreshMinHits, double maxRefreshesPerSecond,
+                                int refreshThreads, int refreshQueueCapacity) {
+        this.redisTemplate = redisTemplate;
+        this.redisEnabled = redisEnabled;
+        this.keyPrefix = keyPrefix;
+        this.keyVersion = keyVersion;
+        this.invalidationChannel = invalidationChannel;
+        this.maxLocalEntries = maxLocalEntries;
+        this.defaultTtl = defaultTtl;
+        this.ttls = ttls;
+        this.redisRetryIntervalMs = redisRetryIntervalMs;
+        this.softTtls = softTtls;
+        this.refreshMinHits = refreshMinHits;
+        this.maxRefreshesPerSecond = maxRefreshesPerSecond;
+        this.refreshTokens = maxRefreshesPerSecond;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.refreshExecutor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(refreshQueueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, "cache-refresh-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+        this.refreshExecutor.allowCoreThreadTimeOut(true);
+        ttls.keySet().forEach(this::getCache);
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, cacheName -> new TwoLevelCache(
+            cacheName,
+            maxLocalEntries,
+            redisTemplate,
+            codec,
+            keyPrefix + ":" + cacheName + ":v" + keyVersion + ":",
+            ttls.getOrDefault(cacheName, defaultTtl),
+            softTtls.get(cacheName),
+            this
+        ));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    /**
+     * 处理失效广播消息（格式：实例ID \n 缓存名 \n 键，键为空表示清空整个缓存）
+     */
+    public void onInvalidationMessage(String message) {
+        String[] parts = message.split("\n", 3);
+        if (parts.length < 2 || instanceId.equals(parts[0])) {
+            return;
+        }
+        TwoLevelCache cache = caches.get(parts[1]);
+        if (cache != null) {
+            cache.onRemoteInvalidation(parts.length == 3 && !parts[2].isEmpty() ? parts[2] : null);
+        }
+    }
+
+    void publishInvalidation(String cacheName, String key) {
+        if (!isRedisAvailable()) {
+            return;
+        }
+        try {
+            String message = instanceId + "\n" + cacheName + "\n" + (key == null ? "" : key);
+            redisTemplate.convertAndSend(invalidationChannel, message.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            markRedisFailure(e);
+        }
+    }
+
+    int getRefreshMinHits() {
+        return refreshMinHits;
+    }
+
+    /**
+     * 提交一次后台刷新。同一刷新键正在刷新、超出速率限制或队列已满时直接放弃，
+     * 调用方继续使用旧值；刷新失败时保留旧值，等待下次访问再尝试
+     */
+    void scheduleRefresh(String refreshKey, Callable<?> refresher) {
+        if (!refreshing.add(refreshKey)) {
+            return;
+        }
+        if (!tryAcquireRefreshToken()) {
+            refreshing.remove(refreshKey);
+            refreshesThrottled.incrementAndGet();
+            return;
+        }
+
+        Runnable task = () -> {
+            try {
+                refresher.call();
+                refreshesSucceeded.incrementAndGet();
+            } catch (Exception e) {
+                refreshesFailed.incrementAndGet();
+                logger.debug("缓存提前刷新失败，继续使用旧值: {} - {}", refreshKey, e.getMessage());
+            } finally {
+                refreshing.remove(refreshKey);
+            }
+        };
+        try {
+            refreshExecutor.execute(task);
+            refreshesScheduled.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(refreshKey);
+            refreshesThrottled.incrementAndGet();
+        }
+    }
+
+    private synchronized boolean tryAcquireRefreshToken() {
+        long now = System.nanoTime();
+        refreshTokens = Math.min(maxRefreshesPerSecond,
+            refreshTokens + (now - lastRefillTime) / 1_000_000_000.0 * maxRefreshesPerSecond);
+        lastRefillTime = now;
+        if (refreshTokens < 1.0) {
+            return false;
+        }
+        refreshTokens -= 1.0;
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    boolean isRedisAvailable() {
+        return redisEnabled && System.currentTimeMillis() >= redisUnavailableUntil;
+    }
+
+    void markRedisFailure(Exception e) {
+        if (System.currentTimeMillis() >= redisUnavailableUntil) {
+            logger.warn("Redis二级缓存不可用，{}ms内只使用本地缓存: {}", redisRetryIntervalMs, e.getMessage());
+        }
+        redisUnavailableUntil = System.currentTimeMillis() + redisRetryIntervalMs;
+    }
+
+    /**
+     * 获取各缓存的命中统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("redisEnabled", redisEnabled);
+        stats.put("redisAvailable", isRedisAvailable());
+        stats.put("keyVersion", keyVersion);
+        Map<String, Object> refreshAhead = new LinkedHashMap<>();
+        refreshAhead.put("scheduled", refreshesScheduled.get());
+        refreshAhead.put("succeeded", refreshesSucceeded.get());
+        refreshAhead.put("failed", refreshesFailed.get());
+        refreshAhead.put("throttled", refreshesThrottled.get());
+        refreshAhead.put("inFlight", refreshing.size());
+        stats.put("refreshAhead", refreshAhead);
+        caches.forEach((name, cache) -> stats.put(name, cache.getStats()));
+        return stats;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.config;
+
+import com.example.resilience.AdaptiveConcurrencyLimiter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 搜索API准入控制过滤器
+ * 按请求路径将搜索接口划分到LLM、Embedding、Elasticsearch和写入四个隔舱，
+ * 隔舱并发达到自适应上限时立即返回503和Retry-After，避免廉价请求被慢速LLM请求拖垮；
+ * 文档写入和导入需要向量化且耗时长，单独使用写入隔舱，不占用只读查询的并发
+ */
+@Component
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControlFilter.class);
+
+    private static final String API_PREFIX = "/api/search";
+
+    private final AdaptiveConcurrencyLimiter llmBulkhead;
+    private final AdaptiveConcurrencyLimiter embeddingBulkhead;
+    private final AdaptiveConcurrencyLimiter elasticsearchBulkhead;
+    private final AdaptiveConcurrencyLimiter writeBulkhead;
+
+    @Value("${app.admission.enabled:true}")
+    private boolean enabled;
+
+    public AdmissionControlFilter(@Qualifier("llmBulkhead") AdaptiveConcurrencyLimiter llmBulkhead,
+                                  @Qualifier("embeddingBulkhead") AdaptiveConcurrencyLimiter embeddingBulkhead,
+                                  @Qualifier("elasticsearchBulkhead") AdaptiveConcurrencyLimiter elasticsearchBulkhead,
+                                  @Qualifier("writeBulkhead") AdaptiveConcurrencyLimiter writeBulkhead) {
+        this.llmBulkhead = llmBulkhead;
+        this.embeddingBulkhead = embeddingBulkhead;
+        this.elasticsearchBulkhead = elasticsearchBulkhead;
+        this.writeBulkhead = writeBulkhead;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || resolveBulkhead(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        AdaptiveConcurrencyLimiter bulkhead = resolveBulkhead(request);
+
+        if (!bulkhead.tryAcquire()) {
+            logger.warn("准入控制拒绝请求: {} {} (隔舱: {})",
+                request.getMethod(), request.getRequestURI(), bulkhead.getName());
+            reject(response, bulkhead);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        boolean success = false;
+        try {
+            filterChain.doFilter(request, response);
+            success = response.getStatus() < HttpStatus.INTERNAL_SERVER_ERROR.value();
+        } finally {
+            bulkhead.release(System.currentTimeMillis() - start, success);
+        }
+    }
+
+    /**
+     * 根据请求路径选择隔舱，不受控的路径（健康检查、监控指标等）返回null
+     */
+    private AdaptiveConcurrencyLimiter resolveBulkhead(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (!path.startsWith(API_PREFIX)) {
+            return null;
+        }
+
+        String endpoint = path.substring(API_PREFIX.length());
+        boolean read = "GET".equalsIgnoreCase(request.getMethod());
+        if (!read && (endpoint.startsWith("/documents") || endpoint.startsWith("/ingest"))) {
+            return writeBulkhead;
+        }
+        if (endpoint.startsWith("/intelligent") || endpoint.startsWith("/hybrid")) {
+            return llmBulkhead;
+        }
+        if (endpoint.startsWith("/vector")) {
+            return embeddingBulkhead;
+        }
+        if (endpoint.startsWith("/documents")) {
+            return elasticsearchBulkhead;
+        }
+        return null;
+    }
+
+    private void reject(HttpServletResponse response, AdaptiveConcurrencyLimiter bulkhead) throws IOException {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(bulkhead.suggestedRetryAfterSeconds()));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write("{\"error\":\"服务繁忙，请稍后重试\",\"bulkhead\":\"" + bulkhead.getName() + "\"}");
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.config;
 
+import com.example.service.CacheWarmupService;
 import com.example.service.IntelligentSearchService;
 import com.example.service.SampleDataService;
 import org.slf4j.Logger;
@@ -18,11 +19,14 @@ public class ApplicationStartupListener {
     
     private final IntelligentSearchService intelligentSearchService;
     private final SampleDataService sampleDataService;
+    private final CacheWarmupService cacheWarmupService;
     
     public ApplicationStartupListener(IntelligentSearchService intelligentSearchService,
-                                     SampleDataService sampleDataService) {
+                                     SampleDataService sampleDataService,
+                                     CacheWarmupService cacheWarmupService) {
         this.intelligentSearchService = intelligentSearchService;
         this.sampleDataService = sampleDataService;
+        this.cacheWarmupService = cacheWarmupService;
     }
     
     @EventListener(ApplicationReadyEvent.class)
@@ -47,5 +51,9 @@ public class ApplicationStartupListener {
             logger.error("系统初始化失败", e);
             // 不抛出异常，让应用继续启动
         }
+        
+        // 按查询日志预热缓存；在此监听器返回前健康检查保持未就绪，
+        // Spring Boot也在ApplicationReadyEvent处理完成后才切换为ACCEPTING_TRAFFIC
+        cacheWarmupService.warmUp();
     }
 }
\ No newline at end of file
@@ -1,30 +1,93 @@
 package com.example.config;
 
-import org.springframework.cache.CacheManager;
+import com.example.cache.TwoLevelCacheManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.scheduling.annotation.EnableAsync;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * 缓存配置
+ * 进程内LRU作为一级缓存，Redis作为多实例共享的二级缓存
  */
 @Configuration
 @EnableCaching
 @EnableAsync
 public class CacheConfig {
     
+    @Value("${app.cache.invalidation-channel:search-cache-invalidation}")
+    private String invalidationChannel;
+    
+    @Bean
+    public RedisTemplate<String, byte[]> cacheRedisTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        return template;
+    }
+    
     @Bean
-    public CacheManager cacheManager() {
-        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager(
-            "textEmbeddings",
-            "vectorSearchResults", 
-            "hybridSearchResults",
-            "aiGeneratedDSL",
-            "searchResults"
-        );
+    public TwoLevelCacheManager cacheManager(
+            RedisTemplate<String, byte[]> cacheRedisTemplate,
+            @Value("${app.cache.redis.enabled:false}") boolean redisEnabled,
+            @Value("${app.cache.key-prefix:chat2db-es}") String keyPrefix,
+            @Value("${app.cache.key-version:2}") int keyVersion,
+            @Value("${app.cache.local.max-entries:10000}") int maxLocalEntries,
+            @Value("${app.cache.redis.retry-interval-ms:30000}") long redisRetryIntervalMs,
+            @Value("${app.cache.ttl-seconds.text-embeddings:604800}") long textEmbeddingsTtl,
+            @Value("${app.cache.ttl-seconds.vector-search-results:86400}") long vectorSearchResultsTtl,
+            @Value("${app.cache.ttl-seconds.hybrid-search-results:86400}") long hybridSearchResultsTtl,
+            @Value("${app.cache.ttl-seconds.ai-generated-dsl:86400}") long aiGeneratedDslTtl,
+            @Value("${app.cache.ttl-seconds.search-results:600}") long searchResultsTtl,
+            @Value("${app.cache.refresh-ahead.soft-ttl-seconds.hybrid-search-results:300}") long hybridSearchResultsSoftTtl,
+            @Value("${app.cache.refresh-ahead.soft-ttl-seconds.ai-generated-dsl:3600}") long aiGeneratedDslSoftTtl,
+            @Value("${app.cache.refresh-ahead.min-hits:3}") int refreshMinHits,
+            @Value("${app.cache.refresh-ahead.max-refreshes-per-second:2}") double maxRefreshesPerSecond,
+            @Value("${app.cache.refresh-ahead.threads:2}") int refreshThreads,
+            @Value("${app.cache.refresh-ahead.queue-capacity:100}") int refreshQueueCapacity) {
+        Map<String, Duration> ttls = new LinkedHashMap<>();
+        ttls.put("textEmbeddings", Duration.ofSeconds(textEmbeddingsTtl));
+        ttls.put("vectorSearchResults", Duration.ofSeconds(vectorSearchResultsTtl));
+        ttls.put("hybridSearchResults", Duration.ofSeconds(hybridSearchResultsTtl));
+        ttls.put("aiGeneratedDSL", Duration.ofSeconds(aiGeneratedDslTtl));
+        ttls.put("searchResults", Duration.ofSeconds(searchResultsTtl));
         
-        return cacheManager;
+        // 热点查询结果和AI生成的DSL在软TTL后提前刷新，请求始终直接拿到缓存值
+        Map<String, Duration> softTtls = new LinkedHashMap<>();
+        softTtls.put("hybridSearchResults", Duration.ofSeconds(hybridSearchResultsSoftTtl));
+        softTtls.put("aiGeneratedDSL", Duration.ofSeconds(aiGeneratedDslSoftTtl));
+        
+        return new TwoLevelCacheManager(cacheRedisTemplate, redisEnabled, keyPrefix, keyVersion,
+            invalidationChannel, maxLocalEntries, Duration.ofSeconds(searchResultsTtl), ttls, redisRetryIntervalMs,
+            softTtls, refreshMinHits, maxRefreshesPerSecond, refreshThreads, refreshQueueCapacity);
+    }
+    
+    /**
+     * 订阅其他实例广播的缓存失效消息
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.cache.redis.enabled", havingValue = "true")
+    public RedisMessageListenerContainer cacheInvalidationListener(RedisConnectionFactory connectionFactory,
+                                                                   TwoLevelCacheManager cacheManager) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(
+            (message, pattern) -> cacheManager.onInvalidationMessage(
+                new String(message.getBody(), StandardCharsets.UTF_8)),
+            new ChannelTopic(invalidationChannel));
+        return container;
     }
-}
\ No newline at end of file
+}
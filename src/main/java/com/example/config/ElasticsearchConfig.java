@@ -1,5 +1,6 @@
 package com.example.config;
 
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
 import co.elastic.clients.transport.rest_client.RestClientTransport;
@@ -82,4 +83,12 @@ public class ElasticsearchConfig {
         logger.info("Elasticsearch客户端初始化完成");
         return client;
     }
-}
\ No newline at end of file
+    
+    /**
+     * 异步客户端（与同步客户端共享传输层），用于可取消的对冲请求
+     */
+    @Bean
+    public ElasticsearchAsyncClient elasticsearchAsyncClient(ElasticsearchClient elasticsearchClient) {
+        return new ElasticsearchAsyncClient(elasticsearchClient._transport());
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.config;
+
+import com.example.resilience.AdaptiveConcurrencyLimiter;
+import com.example.resilience.CircuitBreaker;
+import com.example.resilience.HedgedRequestExecutor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 容错配置：外部AI服务（Embedding、Chat）的熔断器、搜索和写入API的准入控制隔舱，以及ES读请求的对冲执行器
+ */
+@Configuration
+public class ResilienceConfig {
+
+    @Bean
+    public CircuitBreaker embeddingCircuitBreaker(
+            @Value("${app.resilience.embedding.window-size:50}") int windowSize,
+            @Value("${app.resilience.embedding.minimum-calls:10}") int minimumCalls,
+            @Value("${app.resilience.embedding.failure-rate-threshold:0.5}") double failureRateThreshold,
+            @Value("${app.resilience.embedding.slow-call-rate-threshold:0.8}") double slowCallRateThreshold,
+            @Value("${app.resilience.embedding.slow-call-duration-ms:3000}") long slowCallDurationMs,
+            @Value("${app.resilience.embedding.open-duration-ms:30000}") long openDurationMs,
+            @Value("${app.resilience.embedding.half-open-permitted-calls:3}") int halfOpenPermittedCalls) {
+        return new CircuitBreaker("embedding", windowSize, minimumCalls, failureRateThreshold,
+            slowCallRateThreshold, slowCallDurationMs, openDurationMs, halfOpenPermittedCalls);
+    }
+
+    @Bean
+    public CircuitBreaker chatCircuitBreaker(
+            @Value("${app.resilience.chat.window-size:50}") int windowSize,
+            @Value("${app.resilience.chat.minimum-calls:10}") int minimumCalls,
+            @Value("${app.resilience.chat.failure-rate-threshold:0.5}") double failureRateThreshold,
+            @Value("${app.resilience.chat.slow-call-rate-threshold:0.8}") double slowCallRateThreshold,
+            @Value("${app.resilience.chat.slow-call-duration-ms:10000}") long slowCallDurationMs,
+            @Value("${app.resilience.chat.open-duration-ms:60000}") long openDurationMs,
+            @Value("${app.resilience.chat.half-open-permitted-calls:3}") int halfOpenPermittedCalls) {
+        return new CircuitBreaker("chat", windowSize, minimumCalls, failureRateThreshold,
+            slowCallRateThreshold, slowCallDurationMs, openDurationMs, halfOpenPermittedCalls);
+    }
+
+    @Bean
+    public AdaptiveConcurrencyLimiter llmBulkhead(
+            @Value("${app.admission.llm.initial-limit:8}") int initialLimit,
+            @Value("${app.admission.llm.min-limit:2}") int minLimit,
+            @Value("${app.admission.llm.max-limit:32}") int maxLimit,
+            @Value("${app.admission.llm.target-latency-ms:8000}") long targetLatencyMs,
+            @Value("${app.admission.llm.backoff-ratio:0.9}") double backoffRatio) {
+        return new AdaptiveConcurrencyLimiter("llm", initialLimit, minLimit, maxLimit, targetLatencyMs, backoffRatio);
+    }
+
+    @Bean
+    public AdaptiveConcurrencyLimiter embeddingBulkhead(
+            @Value("${app.admission.embedding.initial-limit:20}") int initialLimit,
+            @Value("${app.admission.embedding.min-limit:4}") int minLimit,
+            @Value("${app.admission.embedding.max-limit:64}") int maxLimit,
+            @Value("${app.admission.embedding.target-latency-ms:1500}") long targetLatencyMs,
+            @Value("${app.admission.embedding.backoff-ratio:0.9}") double backoffRatio) {
+        return new AdaptiveConcurrencyLimiter("embedding", initialLimit, minLimit, maxLimit, targetLatencyMs, backoffRatio);
+    }
+
+    @Bean
+    public AdaptiveConcurrencyLimiter elasticsearchBulkhead(
+            @Value("${app.admission.elasticsearch.initial-limit:50}") int initialLimit,
+            @Value("${app.admission.elasticsearch.min-limit:10}") int minLimit,
+            @Value("${app.admission.elasticsearch.max-limit:150}") int maxLimit,
+            @Value("${app.admission.elasticsearch.target-latency-ms:500}") long targetLatencyMs,
+            @Value("${app.admission.elasticsearch.backoff-ratio:0.9}") double backoffRatio) {
+        return new AdaptiveConcurrencyLimiter("elasticsearch", initialLimit, minLimit, maxLimit, targetLatencyMs, backoffRatio);
+    }
+
+    @Bean
+    public AdaptiveConcurrencyLimiter writeBulkhead(
+            @Value("${app.admission.write.initial-limit:8}") int initialLimit,
+            @Value("${app.admission.write.min-limit:2}") int minLimit,
+            @Value("${app.admission.write.max-limit:16}") int maxLimit,
+            @Value("${app.admission.write.target-latency-ms:30000}") long targetLatencyMs,
+            @Value("${app.admission.write.backoff-ratio:0.9}") double backoffRatio) {
+        return new AdaptiveConcurrencyLimiter("write", initialLimit, minLimit, maxLimit, targetLatencyMs, backoffRatio);
+    }
+
+    @Bean
+    public HedgedRequestExecutor hedgedRequestExecutor(
+            @Value("${app.elasticsearch.hedging.enabled:false}") boolean enabled,
+            @Value("${app.elasticsearch.hedging.delay-percentile:0.95}") double delayPercentile,
+            @Value("${app.elasticsearch.hedging.min-delay-ms:50}") long minDelayMs,
+            @Value("${app.elasticsearch.hedging.window-size:1000}") int windowSize,
+            @Value("${app.elasticsearch.hedging.budget-ratio:0.05}") double budgetRatio,
+            @Value("${app.elasticsearch.hedging.max-budget-tokens:20}") double maxBudgetTokens) {
+        return new HedgedRequestExecutor(enabled, delayPercentile, minDelayMs, windowSize, budgetRatio, maxBudgetTokens);
+    }
+}
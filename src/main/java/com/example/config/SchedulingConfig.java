@@ -0,0 +1,12 @@
+package com.example.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * 定时任务配置：规则解析器取值刷新、写入任务清理、批量导入模式心跳、分区维护等 @Scheduled 任务依赖此配置
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -1,12 +1,29 @@
 package com.example.controller;
 
+import com.example.cache.TwoLevelCacheManager;
 import com.example.dto.QueryRequest;
 import com.example.dto.SearchResponse;
 import com.example.model.Document;
+import com.example.resilience.AdaptiveConcurrencyLimiter;
+import com.example.resilience.CircuitBreaker;
+import com.example.resilience.HedgedRequestExecutor;
+import com.example.service.AdaptiveStrategySelector;
+import com.example.service.DslTemplateLearningService;
 import com.example.service.ElasticsearchService;
 import com.example.service.IntelligentSearchService;
 import com.example.service.HybridSearchService;
+import com.example.service.QueryIntentClassifier;
+import com.example.service.RuleBasedQueryParser;
 import com.example.service.VectorSearchService;
+import com.example.service.MappedEmbeddingStore;
+import com.example.service.IndexGenerationService;
+import com.example.service.CacheWarmupService;
+import com.example.service.QueryRecorder;
+import com.example.service.IngestionJobService;
+import com.example.service.BulkLoadModeService;
+import com.example.service.ReindexService;
+import com.example.service.PartitionMaintenanceService;
+import com.example.service.ShardRoutingService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -14,9 +31,12 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 智能搜索REST API控制器
@@ -33,15 +53,66 @@ public class SearchController {
     private final ElasticsearchService elasticsearchService;
     private final HybridSearchService hybridSearchService;
     private final VectorSearchService vectorSearchService;
+    private final DslTemplateLearningService dslTemplateLearningService;
+    private final RuleBasedQueryParser ruleBasedQueryParser;
+    private final QueryIntentClassifier queryIntentClassifier;
+    private final AdaptiveStrategySelector adaptiveStrategySelector;
+    private final List<CircuitBreaker> circuitBreakers;
+    private final List<AdaptiveConcurrencyLimiter> bulkheads;
+    private final HedgedRequestExecutor hedgedRequestExecutor;
+    private final MappedEmbeddingStore embeddingStore;
+    private final TwoLevelCacheManager cacheManager;
+    private final IndexGenerationService indexGenerationService;
+    private final CacheWarmupService cacheWarmupService;
+    private final QueryRecorder queryRecorder;
+    private final IngestionJobService ingestionJobService;
+    private final BulkLoadModeService bulkLoadModeService;
+    private final ReindexService reindexService;
+    private final PartitionMaintenanceService partitionMaintenanceService;
+    private final ShardRoutingService shardRoutingService;
     
     public SearchController(IntelligentSearchService intelligentSearchService,
                            ElasticsearchService elasticsearchService,
                            HybridSearchService hybridSearchService,
-                           VectorSearchService vectorSearchService) {
+                           VectorSearchService vectorSearchService,
+                           DslTemplateLearningService dslTemplateLearningService,
+                           RuleBasedQueryParser ruleBasedQueryParser,
+                           QueryIntentClassifier queryIntentClassifier,
+                           AdaptiveStrategySelector adaptiveStrategySelector,
+                           List<CircuitBreaker> circuitBreakers,
+                           List<AdaptiveConcurrencyLimiter> bulkheads,
+                           HedgedRequestExecutor hedgedRequestExecutor,
+                           MappedEmbeddingStore embeddingStore,
+                           TwoLevelCacheManager cacheManager,
+                           IndexGenerationService indexGenerationService,
+                           CacheWarmupService cacheWarmupService,
+                           QueryRecorder queryRecorder,
+                           IngestionJobService ingestionJobService,
+                           BulkLoadModeService bulkLoadModeService,
+                           ReindexService reindexService,
+                           PartitionMaintenanceService partitionMaintenanceService,
+                           ShardRoutingService shardRoutingService) {
         this.intelligentSearchService = intelligentSearchService;
         this.elasticsearchService = elasticsearchService;
         this.hybridSearchService = hybridSearchService;
         this.vectorSearchService = vectorSearchService;
+        this.dslTemplateLearningService = dslTemplateLearningService;
+        this.ruleBasedQueryParser = ruleBasedQueryParser;
+        this.queryIntentClassifier = queryIntentClassifier;
+        this.adaptiveStrategySelector = adaptiveStrategySelector;
+        this.circuitBreakers = circuitBreakers;
+        this.bulkheads = bulkheads;
+        this.hedgedRequestExecutor = hedgedRequestExecutor;
+        this.embeddingStore = embeddingStore;
+        this.cacheManager = cacheManager;
+        this.indexGenerationService = indexGenerationService;
+        this.cacheWarmupService = cacheWarmupService;
+        this.queryRecorder = queryRecorder;
+        this.ingestionJobService = ingestionJobService;
+        this.bulkLoadModeService = bulkLoadModeService;
+        this.reindexService = reindexService;
+        this.partitionMaintenanceService = partitionMaintenanceService;
+        this.shardRoutingService = shardRoutingService;
     }
     
     /**
@@ -50,12 +121,15 @@ public class SearchController {
     @PostMapping("/intelligent")
     public ResponseEntity<SearchResponse> intelligentSearch(@Valid @RequestBody QueryRequest queryRequest) {
         logger.info("收到智能搜索请求: {}", queryRequest);
+        queryRecorder.begin();
         
         try {
             SearchResponse response = intelligentSearchService.intelligentSearch(queryRequest);
+            queryRecorder.record("intelligent", queryRequest, HttpStatus.OK.value(), response.getTotalHits());
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             logger.error("智能搜索处理失败", e);
+            queryRecorder.record("intelligent", queryRequest, HttpStatus.INTERNAL_SERVER_ERROR.value(), null);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(new SearchResponse(
                     queryRequest.getQuery(),
@@ -88,12 +162,15 @@ public class SearchController {
     @PostMapping("/hybrid")
     public ResponseEntity<SearchResponse> hybridSearch(@Valid @RequestBody QueryRequest queryRequest) {
         logger.info("收到混合搜索请求: {}", queryRequest);
+        queryRecorder.begin();
         
         try {
             SearchResponse response = hybridSearchService.smartSearch(queryRequest);
+            queryRecorder.record("hybrid", queryRequest, HttpStatus.OK.value(), response.getTotalHits());
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             logger.error("混合搜索处理失败", e);
+            queryRecorder.record("hybrid", queryRequest, HttpStatus.INTERNAL_SERVER_ERROR.value(), null);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(new SearchResponse(
                     queryRequest.getQuery(),
@@ -113,12 +190,15 @@ public class SearchController {
     @PostMapping("/vector")
     public ResponseEntity<Map<String, Object>> vectorSearch(@Valid @RequestBody QueryRequest queryRequest) {
         logger.info("收到向量搜索请求: {}", queryRequest);
+        queryRecorder.begin();
         
         try {
             int from = queryRequest.getPage() * queryRequest.getSize();
-            var esResponse = vectorSearchService.vectorSearch(queryRequest.getQuery(), queryRequest.getSize());
+            var esResponse = vectorSearchService.vectorSearch(
+                queryRequest.getQuery(), queryRequest.getSize(), queryRequest.getFilters());
             
             if (esResponse == null) {
+                queryRecorder.record("vector", queryRequest, HttpStatus.OK.value(), 0L);
                 return ResponseEntity.ok(Map.of(
                     "message", "向量搜索失败，向量生成异常",
                     "query", queryRequest.getQuery(),
@@ -127,6 +207,7 @@ public class SearchController {
             }
             
             List<Document> documents = elasticsearchService.extractDocuments(esResponse);
+            queryRecorder.record("vector", queryRequest, HttpStatus.OK.value(), esResponse.hits().total().value());
             
             return ResponseEntity.ok(Map.of(
                 "query", queryRequest.getQuery(),
@@ -139,6 +220,7 @@ public class SearchController {
             
         } catch (Exception e) {
             logger.error("向量搜索失败", e);
+            queryRecorder.record("vector", queryRequest, HttpStatus.INTERNAL_SERVER_ERROR.value(), null);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(Map.of("error", "向量搜索失败: " + e.getMessage()));
         }
@@ -152,14 +234,17 @@ public class SearchController {
         logger.info("执行健康检查");
         
         boolean isHealthy = intelligentSearchService.isSystemHealthy();
+        // 缓存预热完成前不接收流量
+        boolean isReady = cacheWarmupService.isReady();
         
         Map<String, Object> health = Map.of(
-            "status", isHealthy ? "UP" : "DOWN",
+            "status", isHealthy && isReady ? "UP" : (isHealthy ? "WARMING_UP" : "DOWN"),
             "elasticsearch", isHealthy ? "连接正常" : "连接异常",
+            "warmup", cacheWarmupService.getStatus(),
             "timestamp", System.currentTimeMillis()
         );
         
-        HttpStatus status = isHealthy ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+        HttpStatus status = isHealthy && isReady ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
         return ResponseEntity.status(status).body(health);
     }
     
@@ -174,7 +259,8 @@ public class SearchController {
             elasticsearchService.indexDocument(document);
             return ResponseEntity.ok(Map.of(
                 "message", "文档添加成功",
-                "title", document.getTitle()
+                "title", document.getTitle(),
+                "id", document.getId()
             ));
         } catch (Exception e) {
             logger.error("添加文档失败", e);
@@ -184,17 +270,18 @@ public class SearchController {
     }
     
     /**
-     * 批量添加文档接口
+     * 批量添加文档接口（同步写入，大批量请使用 /ingest/jobs）
      */
     @PostMapping("/documents/batch")
     public ResponseEntity<Map<String, Object>> addDocuments(@RequestBody List<Document> documents) {
         logger.info("批量添加 {} 个文档", documents.size());
         
         try {
-            elasticsearchService.indexDocuments(documents);
+            Map<String, Object> indexResult = elasticsearchService.indexDocuments(documents);
             return ResponseEntity.ok(Map.of(
                 "message", "批量添加成功",
-                "count", documents.size()
+                "count", documents.size(),
+                "result", indexResult
             ));
         } catch (Exception e) {
             logger.error("批量添加文档失败", e);
@@ -203,6 +290,202 @@ public class SearchController {
         }
     }
     
+    /**
+     * 提交异步批量写入任务，立即返回任务ID
+     */
+    @PostMapping("/ingest/jobs")
+    public ResponseEntity<Map<String, Object>> submitIngestionJob(@RequestBody List<Document> documents) {
+        logger.info("提交异步写入任务: {} 个文档", documents.size());
+        
+        try {
+            IngestionJobService.IngestionJob job = ingestionJobService.submitDocuments(documents);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                "jobId", job.getId(),
+                "state", job.getState().name(),
+                "count", documents.size(),
+                "statusUrl", "/api/search/ingest/jobs/" + job.getId()
+            ));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .body(Map.of("error", e.getMessage()));
+        }
+    }
+    
+    /**
+     * 流式上传NDJSON（每行一个文档），边解析边写入，内存占用与上传大小无关。
+     * 请求在写入完成后返回任务结果；写入期间可在任务列表中查看进度或取消
+     */
+    @PostMapping(value = "/ingest/stream", consumes = {"application/x-ndjson", "application/octet-stream", "text/plain"})
+    public ResponseEntity<Map<String, Object>> ingestStream(HttpServletRequest request) {
+        logger.info("开始流式写入NDJSON，Content-Length: {}", request.getContentLengthLong());
+        
+        try {
+            IngestionJobService.IngestionJob job = ingestionJobService.ingestNdjson(request.getInputStream());
+            // 输入无效返回400，写入后端失败返回502
+            HttpStatus status = HttpStatus.OK;
+            if (job.getState() == IngestionJobService.JobState.FAILED) {
+                status = job.isInvalidInput() ? HttpStatus.BAD_REQUEST : HttpStatus.BAD_GATEWAY;
+            }
+            return ResponseEntity.status(status).body(job.toStatus());
+        } catch (Exception e) {
+            logger.error("流式写入失败", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "流式写入失败: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * 写入任务列表
+     */
+    @GetMapping("/ingest/jobs")
+    public ResponseEntity<Map<String, Object>> listIngestionJobs() {
+        return ResponseEntity.ok(Map.of(
+            "jobs", ingestionJobService.listJobs().stream()
+                .map(IngestionJobService.IngestionJob::toStatus)
+                .toList()
+        ));
+    }
+    
+    /**
+     * 查询写入任务进度
+     */
+    @GetMapping("/ingest/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> getIngestionJob(@PathVariable String jobId) {
+        return ingestionJobService.getJob(jobId)
+            .map(job -> ResponseEntity.ok(job.toStatus()))
+            .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of("error", "写入任务不存在: " + jobId)));
+    }
+    
+    /**
+     * 取消写入任务
+     */
+    @DeleteMapping("/ingest/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> cancelIngestionJob(@PathVariable String jobId) {
+        if (ingestionJobService.getJob(jobId).isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of("error", "写入任务不存在: " + jobId));
+        }
+        boolean cancelled = ingestionJobService.cancel(jobId);
+        return ResponseEntity.ok(Map.of(
+            "jobId", jobId,
+            "cancelled", cancelled
+        ));
+    }
+
+    /**
+     * 发起在线重建索引（蓝绿切换）；存在未切换的重建索引时断点续建
+     */
+    @PostMapping("/index/reindex")
+    public ResponseEntity<Map<String, Object>> startReindex(
+            @RequestParam(defaultValue = "true") boolean reembed,
+            @RequestParam(defaultValue = "false") boolean autoCutover) {
+        try {
+            ReindexService.ReindexJob job = reindexService.start(reembed, autoCutover);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job.toStatus());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("发起重建索引失败", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "发起重建索引失败: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * 别名指向、各版本索引和重建进度
+     */
+    @GetMapping("/index/reindex")
+    public ResponseEntity<Map<String, Object>> getReindexStatus() {
+        return ResponseEntity.ok(reindexService.getStatus());
+    }
+    
+    /**
+     * 取消正在运行的重建
+     */
+    @DeleteMapping("/index/reindex")
+    public ResponseEntity<Map<String, Object>> cancelReindex() {
+        return ResponseEntity.ok(Map.of("cancelled", reindexService.cancel()));
+    }
+    
+    /**
+     * 将读写别名原子地切换到已建好的新索引
+     */
+    @PostMapping("/index/cutover")
+    public ResponseEntity<Map<String, Object>> cutoverIndex() {
+        try {
+            return ResponseEntity.ok(reindexService.cutover());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("切换索引失败", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "切换索引失败: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * 将读写别名切换回重建前的索引
+     */
+    @PostMapping("/index/rollback")
+    public ResponseEntity<Map<String, Object>> rollbackIndex() {
+        try {
+            return ResponseEntity.ok(reindexService.rollback());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("回滚索引失败", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "回滚索引失败: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * 按月分区列表（月份、文档数、段数、写入分区）
+     */
+    @GetMapping("/index/partitions")
+    public ResponseEntity<Map<String, Object>> getPartitions() {
+        return ResponseEntity.ok(partitionMaintenanceService.getStatus());
+    }
+    
+    /**
+     * 立即执行一次分区维护：预建分区、移动写别名、合并旧分区
+     */
+    @PostMapping("/index/partitions/maintain")
+    public ResponseEntity<Map<String, Object>> maintainPartitions() {
+        try {
+            return ResponseEntity.ok(partitionMaintenanceService.maintain());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("分区维护失败", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "分区维护失败: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * 自定义路由状态：各分片文档数与倾斜比、文档最多的路由取值、路由/全分片查询计数
+     */
+    @GetMapping("/index/routing")
+    public ResponseEntity<Map<String, Object>> getRoutingStatus() {
+        try {
+            return ResponseEntity.ok(shardRoutingService.getSkew());
+        } catch (Exception e) {
+            logger.error("获取路由状态失败", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "获取路由状态失败: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * 批量导入模式状态：本实例进行中的导入数和索引上记录的原设置
+     */
+    @GetMapping("/ingest/bulk-load")
+    public ResponseEntity<Map<String, Object>> getBulkLoadStatus() {
+        return ResponseEntity.ok(bulkLoadModeService.getStatus());
+    }
+    
     /**
      * 获取所有文档接口（用于测试）
      */
@@ -240,6 +523,12 @@ public class SearchController {
             return ResponseEntity.ok(Map.of(
                 "documentCount", documentCount,
                 "indexName", "documents",
+                "dslTemplates", dslTemplateLearningService.getStatistics(),
+                "ruleParser", ruleBasedQueryParser.getStatistics(),
+                "embeddingStore", embeddingStore.getStats(),
+                "cache", cacheManager.getStats(),
+                "indexGeneration", indexGenerationService.current(),
+                "queryLog", queryRecorder.getStats(),
                 "timestamp", System.currentTimeMillis()
             ));
         } catch (Exception e) {
@@ -248,4 +537,93 @@ public class SearchController {
                 .body(Map.of("error", "获取统计信息失败: " + e.getMessage()));
         }
     }
-}
\ No newline at end of file
+    
+    /**
+     * 意图分类器状态接口
+     */
+    @GetMapping("/intent-classifier")
+    public ResponseEntity<Map<String, Object>> getIntentClassifierStatus() {
+        return ResponseEntity.ok(queryIntentClassifier.getStatus());
+    }
+    
+    /**
+     * 从带标注的查询日志训练意图分类器（训练完成后自动热加载）
+     * logFile 为训练日志目录（app.search.intent-classifier.training-log-dir）下的文件名
+     */
+    @PostMapping("/intent-classifier/train")
+    public ResponseEntity<Map<String, Object>> trainIntentClassifier(@RequestBody Map<String, String> request) {
+        String logFile = request.get("logFile");
+        logger.info("训练意图分类器: {}", logFile);
+        
+        if (logFile == null || logFile.isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "logFile不能为空"));
+        }
+        
+        try {
+            return ResponseEntity.ok(queryIntentClassifier.train(logFile));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            // 解析错误信息可能包含日志内容，不返回给调用方
+            logger.error("训练意图分类器失败", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "训练意图分类器失败"));
+        }
+    }
+    
+    /**
+     * 搜索策略选择指标接口
+     */
+    @GetMapping("/strategy/metrics")
+    public ResponseEntity<Map<String, Object>> getStrategyMetrics() {
+        return ResponseEntity.ok(adaptiveStrategySelector.getMetrics());
+    }
+    
+    /**
+     * 搜索结果反馈接口（点击等质量信号）
+     */
+    @PostMapping("/strategy/feedback")
+    public ResponseEntity<Map<String, Object>> strategyFeedback(@RequestBody Map<String, Object> feedback) {
+        try {
+            HybridSearchService.SearchStrategy strategy = 
+                HybridSearchService.SearchStrategy.valueOf(String.valueOf(feedback.get("strategy")));
+            boolean clicked = Boolean.parseBoolean(String.valueOf(feedback.get("clicked")));
+            adaptiveStrategySelector.recordFeedback(strategy, clicked);
+            return ResponseEntity.ok(Map.of("message", "反馈已记录"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "未知的搜索策略: " + feedback.get("strategy")));
+        }
+    }
+    
+    /**
+     * 熔断器状态接口
+     */
+    @GetMapping("/breakers")
+    public ResponseEntity<Map<String, Object>> getCircuitBreakers() {
+        Map<String, Object> breakers = new LinkedHashMap<>();
+        for (CircuitBreaker breaker : circuitBreakers) {
+            breakers.put(breaker.getName(), breaker.getMetrics());
+        }
+        return ResponseEntity.ok(breakers);
+    }
+    
+    /**
+     * 准入控制隔舱状态接口
+     */
+    @GetMapping("/admission")
+    public ResponseEntity<Map<String, Object>> getAdmissionMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        for (AdaptiveConcurrencyLimiter bulkhead : bulkheads) {
+            metrics.put(bulkhead.getName(), bulkhead.getMetrics());
+        }
+        return ResponseEntity.ok(metrics);
+    }
+    
+    /**
+     * ES请求对冲指标接口
+     */
+    @GetMapping("/hedging")
+    public ResponseEntity<Map<String, Object>> getHedgingMetrics() {
+        return ResponseEntity.ok(hedgedRequestExecutor.getMetrics());
+    }
+}
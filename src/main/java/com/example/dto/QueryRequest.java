@@ -1,5 +1,6 @@
 package com.example.dto;
 
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Min;
 
@@ -17,6 +18,10 @@ public class QueryRequest {
     @Min(value = 1, message = "页面大小不能小于1")
     private int size = 10;
     
+    // 结构化过滤条件（可选）
+    @Valid
+    private SearchFilters filters;
+    
     // 构造函数
     public QueryRequest() {}
     
@@ -55,12 +60,21 @@ public class QueryRequest {
         this.size = size;
     }
     
+    public SearchFilters getFilters() {
+        return filters;
+    }
+    
+    public void setFilters(SearchFilters filters) {
+        this.filters = filters;
+    }
+    
     @Override
     public String toString() {
         return "QueryRequest{" +
                 "query='" + query + '\'' +
                 ", page=" + page +
                 ", size=" + size +
+                ", filters=" + filters +
                 '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+package com.example.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.List;
+
+/**
+ * 结构化搜索过滤条件DTO
+ * 作为过滤上下文（filter）下推到ES：kNN检索时在图遍历过程中剪枝，全文检索时可缓存过滤位图
+ */
+public class SearchFilters {
+    
+    private String category;
+    
+    private String author;
+    
+    // 命中任一标签即可
+    private List<String> tags;
+    
+    // 创建时间范围（yyyy-MM-dd HH:mm:ss 或 yyyy-MM-dd，均为闭区间）
+    private String createTimeFrom;
+    
+    private String createTimeTo;
+    
+    // 构造函数
+    public SearchFilters() {}
+    
+    /**
+     * 是否没有任何过滤条件
+     */
+    @JsonIgnore
+    public boolean isEmpty() {
+        return isBlank(category) && isBlank(author) 
+            && (tags == null || tags.isEmpty())
+            && isBlank(createTimeFrom) && isBlank(createTimeTo);
+    }
+    
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+    
+    // Getter和Setter方法
+    public String getCategory() {
+        return category;
+    }
+    
+    public void setCategory(String category) {
+        this.category = category;
+    }
+    
+    public String getAuthor() {
+        return author;
+    }
+    
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+    
+    public List<String> getTags() {
+        return tags;
+    }
+    
+    public void setTags(List<String> tags) {
+        this.tags = tags;
+    }
+    
+    public String getCreateTimeFrom() {
+        return createTimeFrom;
+    }
+    
+    public void setCreateTimeFrom(String createTimeFrom) {
+        this.createTimeFrom = createTimeFrom;
+    }
+    
+    public String getCreateTimeTo() {
+        return createTimeTo;
+    }
+    
+    public void setCreateTimeTo(String createTimeTo) {
+        this.createTimeTo = createTimeTo;
+    }
+    
+    @Override
+    public String toString() {
+        return "SearchFilters{" +
+                "category='" + category + '\'' +
+                ", author='" + author + '\'' +
+                ", tags=" + tags +
+                ", createTimeFrom='" + createTimeFrom + '\'' +
+                ", createTimeTo='" + createTimeTo + '\'' +
+                '}';
+    }
+}
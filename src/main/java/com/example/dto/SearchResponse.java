@@ -1,8 +1,10 @@
 package com.example.dto;
 
 import com.example.model.Document;
+import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 搜索响应DTO
@@ -16,6 +18,8 @@ public class SearchResponse {
     private int page;
     private int size;
     private long took; // 查询耗时（毫秒）
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, Object> aggregations; // 聚合结果（统计类查询）
     
     // 构造函数
     public SearchResponse() {}
@@ -88,6 +92,14 @@ public class SearchResponse {
         this.took = took;
     }
     
+    public Map<String, Object> getAggregations() {
+        return aggregations;
+    }
+    
+    public void setAggregations(Map<String, Object> aggregations) {
+        this.aggregations = aggregations;
+    }
+    
     @Override
     public String toString() {
         return "SearchResponse{" +
@@ -98,6 +110,7 @@ public class SearchResponse {
                 ", page=" + page +
                 ", size=" + size +
                 ", took=" + took +
+                ", aggregations=" + (aggregations != null ? aggregations.keySet() : null) +
                 '}';
     }
 }
\ No newline at end of file
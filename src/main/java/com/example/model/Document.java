@@ -38,6 +38,10 @@ public class Document {
     @JsonIgnore
     private float[] combinedEmbedding;
     
+    // 正文切分后的段落及其向量（以nested字段写入索引，不在API响应中显示）
+    @JsonIgnore
+    private List<Passage> passages;
+    
     // 构造函数
     public Document() {}
     
@@ -132,6 +136,14 @@ public class Document {
         this.combinedEmbedding = combinedEmbedding;
     }
     
+    public List<Passage> getPassages() {
+        return passages;
+    }
+    
+    public void setPassages(List<Passage> passages) {
+        this.passages = passages;
+    }
+    
     @Override
     public String toString() {
         return "Document{" +
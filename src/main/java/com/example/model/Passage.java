@@ -0,0 +1,55 @@
+package com.example.model;
+
+/**
+ * 文档段落（长文档按token预算切分后的片段，以nested字段存储）
+ */
+public class Passage {
+    
+    private String text;
+    
+    // 段落在原文中的起始字符位置
+    private int offset;
+    
+    private float[] embedding;
+    
+    // 构造函数
+    public Passage() {}
+    
+    public Passage(String text, int offset) {
+        this.text = text;
+        this.offset = offset;
+    }
+    
+    // Getter和Setter方法
+    public String getText() {
+        return text;
+    }
+    
+    public void setText(String text) {
+        this.text = text;
+    }
+    
+    public int getOffset() {
+        return offset;
+    }
+    
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+    
+    public float[] getEmbedding() {
+        return embedding;
+    }
+    
+    public void setEmbedding(float[] embedding) {
+        this.embedding = embedding;
+    }
+    
+    @Override
+    public String toString() {
+        return "Passage{" +
+                "offset=" + offset +
+                ", text='" + text + '\'' +
+                '}';
+    }
+}
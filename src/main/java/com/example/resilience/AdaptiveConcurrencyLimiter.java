@@ -0,0 +1,89 @@
+package com.example.resilience;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 自适应并发限制器（隔舱）
+ * 采用AIMD策略：请求延迟低于目标时缓慢增加并发上限，超过目标时按比例收缩，
+ * 超过上限的请求立即拒绝而不是排队等待
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetLatencyMs;
+    private final double backoffRatio;
+
+    private double limit;
+    private int inFlight = 0;
+    private double smoothedLatencyMs = 0.0;
+
+    private long acceptedRequests = 0L;
+    private long rejectedRequests = 0L;
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                                      long targetLatencyMs, double backoffRatio) {
+        this.name = name;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetLatencyMs = targetLatencyMs;
+        this.backoffRatio = backoffRatio;
+    }
+
+    /**
+     * 尝试获取执行许可，超过当前并发上限时返回false
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            rejectedRequests++;
+            return false;
+        }
+        inFlight++;
+        acceptedRequests++;
+        return true;
+    }
+
+    /**
+     * 释放许可并根据本次延迟调整并发上限
+     */
+    public synchronized void release(long latencyMs, boolean success) {
+        inFlight = Math.max(0, inFlight - 1);
+        smoothedLatencyMs = smoothedLatencyMs == 0.0 ? latencyMs : 0.9 * smoothedLatencyMs + 0.1 * latencyMs;
+
+        if (!success || latencyMs > targetLatencyMs) {
+            // 乘性减：延迟超标或失败时收缩
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else if (inFlight + 1 >= (int) limit) {
+            // 加性增：只有在接近上限时才扩张，避免空闲时上限无意义地增长
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    /**
+     * 建议客户端重试的等待秒数（按平滑延迟估算）
+     */
+    public synchronized long suggestedRetryAfterSeconds() {
+        return Math.max(1L, (long) Math.ceil(smoothedLatencyMs / 1000.0));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取限流指标
+     */
+    public synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("limit", (int) limit);
+        metrics.put("inFlight", inFlight);
+        metrics.put("smoothedLatencyMs", Math.round(smoothedLatencyMs));
+        metrics.put("targetLatencyMs", targetLatencyMs);
+        metrics.put("acceptedRequests", acceptedRequests);
+        metrics.put("rejectedRequests", rejectedRequests);
+        return metrics;
+    }
+}
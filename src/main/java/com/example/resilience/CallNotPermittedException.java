@@ -0,0 +1,18 @@
+package com.example.resilience;
+
+/**
+ * 熔断器打开时拒绝调用抛出的异常
+ */
+public class CallNotPermittedException extends RuntimeException {
+
+    private final String circuitBreakerName;
+
+    public CallNotPermittedException(String circuitBreakerName) {
+        super("熔断器已打开，拒绝调用: " + circuitBreakerName);
+        this.circuitBreakerName = circuitBreakerName;
+    }
+
+    public String getCircuitBreakerName() {
+        return circuitBreakerName;
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.resilience;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 熔断器
+ * 基于最近N次调用的失败率和慢调用率判断外部依赖是否健康，
+ * 熔断打开期间直接拒绝调用，等待一段时间后进入半开状态放行少量探测调用
+ */
+public class CircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED,     // 正常放行
+        OPEN,       // 熔断，直接拒绝
+        HALF_OPEN   // 半开，放行少量探测调用
+    }
+
+    private final String name;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallDurationMs;
+    private final long openDurationMs;
+    private final int halfOpenPermittedCalls;
+
+    private final boolean[] failures;
+    private final boolean[] slowCalls;
+    private int cursor = 0;
+    private int recordedCalls = 0;
+
+    private State state = State.CLOSED;
+    private long openedAt = 0L;
+    private int halfOpenInFlight = 0;
+    private int halfOpenSucceeded = 0;
+
+    private long rejectedCalls = 0L;
+    private long stateTransitions = 0L;
+
+    public CircuitBreaker(String name, int windowSize, int minimumCalls,
+                          double failureRateThreshold, double slowCallRateThreshold,
+                          long slowCallDurationMs, long openDurationMs, int halfOpenPermittedCalls) {
+        this.name = name;
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDurationMs = slowCallDurationMs;
+        this.openDurationMs = openDurationMs;
+        this.halfOpenPermittedCalls = halfOpenPermittedCalls;
+        this.failures = new boolean[windowSize];
+        this.slowCalls = new boolean[windowSize];
+    }
+
+    /**
+     * 在熔断器保护下执行调用，熔断打开时抛出 CallNotPermittedException
+     */
+    public <T> T execute(Supplier<T> call) {
+        if (!tryAcquirePermission()) {
+            throw new CallNotPermittedException(name);
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            T result = call.get();
+            onComplete(System.currentTimeMillis() - start, true);
+            return result;
+        } catch (RuntimeException e) {
+            onComplete(System.currentTimeMillis() - start, false);
+            throw e;
+        }
+    }
+
+    /**
+     * 当前是否允许调用（不占用半开状态的探测名额，用于调用前的快速判断）
+     */
+    public synchronized boolean isCallPermitted() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMs) {
+            transitionTo(State.HALF_OPEN);
+        }
+        return state != State.OPEN;
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMs) {
+            transitionTo(State.HALF_OPEN);
+        }
+        return state;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取熔断器指标
+     */
+    public synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("state", getState().name());
+        metrics.put("failureRate", failureRate());
+        metrics.put("slowCallRate", slowCallRate());
+        metrics.put("recordedCalls", recordedCalls);
+        metrics.put("rejectedCalls", rejectedCalls);
+        metrics.put("stateTransitions", stateTransitions);
+        metrics.put("failureRateThreshold", failureRateThreshold);
+        metrics.put("slowCallRateThreshold", slowCallRateThreshold);
+        metrics.put("slowCallDurationMs", slowCallDurationMs);
+        return metrics;
+    }
+
+    private synchronized boolean tryAcquirePermission() {
+        switch (getState()) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (halfOpenInFlight < halfOpenPermittedCalls) {
+                    halfOpenInFlight++;
+                    return true;
+                }
+                rejectedCalls++;
+                return false;
+            default:
+                rejectedCalls++;
+                return false;
+        }
+    }
+
+    private synchronized void onComplete(long durationMs, boolean success) {
+        boolean slow = durationMs >= slowCallDurationMs;
+
+        if (state == State.HALF_OPEN) {
+            halfOpenInFlight = Math.max(0, halfOpenInFlight - 1);
+            if (!success || slow) {
+                transitionTo(State.OPEN);
+                return;
+            }
+            halfOpenSucceeded++;
+            if (halfOpenSucceeded >= halfOpenPermittedCalls) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+
+        failures[cursor] = !success;
+        slowCalls[cursor] = slow;
+        cursor = (cursor + 1) % windowSize;
+        recordedCalls = Math.min(recordedCalls + 1, windowSize);
+
+        if (state == State.CLOSED && recordedCalls >= minimumCalls
+                && (failureRate() >= failureRateThreshold || slowCallRate() >= slowCallRateThreshold)) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private void transitionTo(State newState) {
+        if (state == newState) {
+            return;
+        }
+        logger.warn("熔断器 [{}] 状态变更: {} -> {} (失败率={}, 慢调用率={})",
+            name, state, newState, failureRate(), slowCallRate());
+
+        state = newState;
+        stateTransitions++;
+        halfOpenInFlight = 0;
+        halfOpenSucceeded = 0;
+
+        if (newState == State.OPEN) {
+            openedAt = System.currentTimeMillis();
+        } else if (newState == State.CLOSED) {
+            // 关闭时清空窗口，避免历史失败立即再次触发熔断
+            Arrays.fill(failures, false);
+            Arrays.fill(slowCalls, false);
+            cursor = 0;
+            recordedCalls = 0;
+        }
+    }
+
+    private double failureRate() {
+        return rate(failures);
+    }
+
+    private double slowCallRate() {
+        return rate(slowCalls);
+    }
+
+    private double rate(boolean[] outcomes) {
+        if (recordedCalls == 0) {
+            return 0.0;
+        }
+        int count = 0;
+        for (int i = 0; i < recordedCalls; i++) {
+            if (outcomes[i]) {
+                count++;
+            }
+        }
+        return (double) count / recordedCalls;
+    }
+}
@@ -0,0 +1,270 @@
+package com.example.resilience;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * 对冲请求执行器
+ * 主请求在延迟分位数内未完成时，以不同的preference再发送一个副本请求，
+ * 取先完成的结果并取消另一个。对冲请求受全局预算限制（按主请求数的比例积累令牌），
+ * 避免在故障期间放大负载。
+ * <p>
+ * 主请求轮流使用几个固定的preference分散到各副本，每个都配有一个固定的对冲preference。
+ * ES按preference字符串的Murmur3哈希（与分片号组合）轮转选择分片副本，
+ * 对冲preference选取为哈希奇偶性与主请求相反的字符串，每个分片两个副本（1个replica）时
+ * 对冲请求总是落在与主请求不同的副本上；副本更多时大部分分片也会落在不同副本
+ */
+public class HedgedRequestExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(HedgedRequestExecutor.class);
+
+    private static final int PREFERENCE_SLOTS = 8;
+
+    private final boolean enabled;
+    private final double delayPercentile;
+    private final long minDelayMs;
+    private final double budgetRatio;
+    private final double maxBudgetTokens;
+
+    private final long[] latencies;
+    private final String[] primaryPreferences = new String[PREFERENCE_SLOTS];
+    private final String[] hedgePreferences = new String[PREFERENCE_SLOTS];
+    private int cursor = 0;
+    private int count = 0;
+    private double budgetTokens;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "es-hedge-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final AtomicLong hedgesDenied = new AtomicLong();
+
+    public HedgedRequestExecutor(boolean enabled, double delayPercentile, long minDelayMs,
+                                 int windowSize, double budgetRatio, double maxBudgetTokens) {
+        this.enabled = enabled;
+        this.delayPercentile = delayPercentile;
+        this.minDelayMs = minDelayMs;
+        this.budgetRatio = budgetRatio;
+        this.maxBudgetTokens = maxBudgetTokens;
+        this.latencies = new long[windowSize];
+        this.budgetTokens = maxBudgetTokens;
+        for (int slot = 0; slot < PREFERENCE_SLOTS; slot++) {
+            primaryPreferences[slot] = "search-" + slot;
+            hedgePreferences[slot] = hedgePreferenceFor(primaryPreferences[slot]);
+        }
+    }
+
+    /**
+     * 执行可对冲的请求
+     *
+     * @param attempt 根据preference发起一次异步请求（未开启对冲时preference为null，由ES自适应选择副本）
+     */
+    public <T> T execute(Function<String, CompletableFuture<T>> attempt) throws IOException {
+        if (!enabled) {
+            return await(attempt.apply(null));
+        }
+
+        int slot = (int) (requests.incrementAndGet() % PREFERENCE_SLOTS);
+        depositBudget();
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger pendingAttempts = new AtomicInteger(1);
+
+        CompletableFuture<T> primary = attempt.apply(primaryPreferences[slot]);
+        subscribe(primary, result, pendingAttempts, start, false);
+
+        AtomicReference<CompletableFuture<T>> hedge = new AtomicReference<>();
+        ScheduledFuture<?> hedgeTask = scheduler.schedule(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            if (!tryConsumeBudget()) {
+                hedgesDenied.incrementAndGet();
+                return;
+            }
+
+            hedgesSent.incrementAndGet();
+            logger.debug("主请求超过 {}ms 未完成，发送对冲请求", currentDelayMs());
+            pendingAttempts.incrementAndGet();
+            CompletableFuture<T> hedgeFuture = attempt.apply(hedgePreferences[slot]);
+            hedge.set(hedgeFuture);
+            subscribe(hedgeFuture, result, pendingAttempts, start, true);
+            if (result.isDone()) {
+                hedgeFuture.cancel(true);
+            }
+        }, currentDelayMs(), TimeUnit.MILLISECONDS);
+
+        // 任一请求完成后取消其余请求
+        result.whenComplete((value, error) -> {
+            hedgeTask.cancel(false);
+            primary.cancel(true);
+            CompletableFuture<T> hedgeFuture = hedge.get();
+            if (hedgeFuture != null) {
+                hedgeFuture.cancel(true);
+            }
+        });
+
+        return await(result);
+    }
+
+    /**
+     * 获取对冲指标
+     */
+    public synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("requests", requests.get());
+        metrics.put("hedgesSent", hedgesSent.get());
+        metrics.put("hedgesWon", hedgesWon.get());
+        metrics.put("hedgesDenied", hedgesDenied.get());
+        metrics.put("hedgeDelayMs", currentDelayMs());
+        metrics.put("budgetTokens", budgetTokens);
+        return metrics;
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private <T> void subscribe(CompletableFuture<T> attemptFuture, CompletableFuture<T> result,
+                               AtomicInteger pendingAttempts, long start, boolean isHedge) {
+        attemptFuture.whenComplete((value, error) -> {
+            if (error == null) {
+                if (result.complete(value)) {
+                    recordLatency(System.currentTimeMillis() - start);
+                    if (isHedge) {
+                        hedgesWon.incrementAndGet();
+                    }
+                }
+            } else if (pendingAttempts.decrementAndGet() == 0) {
+                // 所有请求都失败时才向调用方报告错误
+                result.completeExceptionally(error);
+            }
+        });
+    }
+
+    private <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("请求被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private synchronized void recordLatency(long latencyMs) {
+        latencies[cursor] = latencyMs;
+        cursor = (cursor + 1) % latencies.length;
+        count = Math.min(count + 1, latencies.length);
+    }
+
+    private synchronized long currentDelayMs() {
+        if (count == 0) {
+            return minDelayMs;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int index = Math.min(count - 1, Math.max(0, (int) Math.ceil(delayPercentile * count) - 1));
+        return Math.max(minDelayMs, sorted[index]);
+    }
+
+    /**
+     * 对冲preference：与主请求的preference哈希奇偶性相反的第一个 {primary}-hedge-N
+     */
+    static String hedgePreferenceFor(String primary) {
+        int parity = preferenceHash(primary) & 1;
+        for (int n = 0; ; n++) {
+            String candidate = primary + "-hedge-" + n;
+            if ((preferenceHash(candidate) & 1) != parity) {
+                return candidate;
+            }
+        }
+    }
+
+    /**
+     * 与ES计算preference哈希相同：字符按UTF-16小端拆成字节后做 Murmur3 x86_32（种子0）
+     */
+    static int preferenceHash(String preference) {
+        byte[] bytes = new byte[preference.length() * 2];
+        for (int i = 0; i < preference.length(); i++) {
+            char c = preference.charAt(i);
+            bytes[i * 2] = (byte) c;
+            bytes[i * 2 + 1] = (byte) (c >>> 8);
+        }
+
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+        int h1 = 0;
+        int roundedEnd = bytes.length & 0xfffffffc;
+        for (int i = 0; i < roundedEnd; i += 4) {
+            int k1 = (bytes[i] & 0xff) | ((bytes[i + 1] & 0xff) << 8)
+                | ((bytes[i + 2] & 0xff) << 16) | (bytes[i + 3] << 24);
+            k1 *= c1;
+            k1 = Integer.rotateLeft(k1, 15);
+            k1 *= c2;
+            h1 ^= k1;
+            h1 = Integer.rotateLeft(h1, 13);
+            h1 = h1 * 5 + 0xe6546b64;
+        }
+        int k1 = 0;
+        switch (bytes.length & 0x03) {
+            case 3:
+                k1 = (bytes[roundedEnd + 2] & 0xff) << 16;
+            case 2:
+                k1 |= (bytes[roundedEnd + 1] & 0xff) << 8;
+            case 1:
+                k1 |= bytes[roundedEnd] & 0xff;
+                k1 *= c1;
+                k1 = Integer.rotateLeft(k1, 15);
+                k1 *= c2;
+                h1 ^= k1;
+            default:
+                break;
+        }
+        h1 ^= bytes.length;
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+        return h1;
+    }
+
+    private synchronized void depositBudget() {
+        budgetTokens = Math.min(maxBudgetTokens, budgetTokens + budgetRatio);
+    }
+
+    private synchronized boolean tryConsumeBudget() {
+        if (budgetTokens < 1.0) {
+            return false;
+        }
+        budgetTokens -= 1.0;
+        return true;
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.service;
+
+import com.example.service.HybridSearchService.SearchStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 自适应搜索策略选择器
+ * 在线统计各策略的延迟分位数、错误率和结果质量，
+ * 以带偏好的epsilon-greedy策略在各搜索策略之间分配流量，避免持续选择变慢的后端
+ */
+@Service
+public class AdaptiveStrategySelector {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveStrategySelector.class);
+
+    private final Map<SearchStrategy, StrategyStats> stats = new EnumMap<>(SearchStrategy.class);
+    private final Map<SearchStrategy, Long> latencySlos = new EnumMap<>(SearchStrategy.class);
+
+    private final AtomicLong decisions = new AtomicLong();
+    private final AtomicLong overrides = new AtomicLong();
+    private final AtomicLong explorations = new AtomicLong();
+
+    @Value("${app.search.adaptive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.search.adaptive.epsilon:0.05}")
+    private double epsilon;
+
+    @Value("${app.search.adaptive.preference-bonus:0.3}")
+    private double preferenceBonus;
+
+    @Value("${app.search.adaptive.min-samples:20}")
+    private int minSamples;
+
+    public AdaptiveStrategySelector(
+            @Value("${app.search.adaptive.window-size:256}") int windowSize,
+            @Value("${app.search.adaptive.latency-slo-ms.vector-first:800}") long vectorFirstSlo,
+            @Value("${app.search.adaptive.latency-slo-ms.text-first:300}") long textFirstSlo,
+            @Value("${app.search.adaptive.latency-slo-ms.hybrid-balanced:1000}") long hybridBalancedSlo,
+            @Value("${app.search.adaptive.latency-slo-ms.ai-enhanced:5000}") long aiEnhancedSlo) {
+        for (SearchStrategy strategy : SearchStrategy.values()) {
+            stats.put(strategy, new StrategyStats(windowSize));
+        }
+        latencySlos.put(SearchStrategy.VECTOR_FIRST, vectorFirstSlo);
+        latencySlos.put(SearchStrategy.TEXT_FIRST, textFirstSlo);
+        latencySlos.put(SearchStrategy.HYBRID_BALANCED, hybridBalancedSlo);
+        latencySlos.put(SearchStrategy.AI_ENHANCED, aiEnhancedSlo);
+    }
+
+    /**
+     * 在偏好策略（来自意图分类）的基础上，根据观测到的后端表现选择实际执行的策略
+     */
+    public SearchStrategy select(SearchStrategy preferred) {
+        if (!enabled) {
+            return preferred;
+        }
+        decisions.incrementAndGet();
+
+        // 少量随机探索，保证变慢的策略恢复后能重新被发现
+        if (ThreadLocalRandom.current().nextDouble() < epsilon) {
+            SearchStrategy[] all = SearchStrategy.values();
+            SearchStrategy explored = all[ThreadLocalRandom.current().nextInt(all.length)];
+            explorations.incrementAndGet();
+            stats.get(explored).selections.incrementAndGet();
+            return explored;
+        }
+
+        SearchStrategy best = preferred;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (SearchStrategy strategy : SearchStrategy.values()) {
+            double score = score(strategy) + (strategy == preferred ? preferenceBonus : 0.0);
+            if (score > bestScore) {
+                bestScore = score;
+                best = strategy;
+            }
+        }
+
+        if (best != preferred) {
+            overrides.incrementAndGet();
+            logger.info("自适应选择: 偏好策略 {} 表现不佳，改用 {}", preferred, best);
+        }
+        stats.get(best).selections.incrementAndGet();
+        return best;
+    }
+
+    /**
+     * 记录一次策略执行结果
+     */
+    public void record(SearchStrategy strategy, long latencyMs, boolean success, int resultCount, int requestedSize) {
+        double quality = requestedSize <= 0 ? 0.0 : Math.min(1.0, (double) resultCount / requestedSize);
+        stats.get(strategy).record(latencyMs, success, quality);
+    }
+
+    /**
+     * 记录用户反馈（如点击），作为结果质量信号
+     */
+    public void recordFeedback(SearchStrategy strategy, boolean clicked) {
+        stats.get(strategy).recordFeedback(clicked ? 1.0 : 0.0);
+    }
+
+    /**
+     * 获取选择器指标
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("decisions", decisions.get());
+        metrics.put("overrides", overrides.get());
+        metrics.put("explorations", explorations.get());
+
+        Map<String, Object> strategies = new LinkedHashMap<>();
+        for (SearchStrategy strategy : SearchStrategy.values()) {
+            StrategyStats s = stats.get(strategy);
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("selections", s.selections.get());
+            m.put("samples", s.samples());
+            m.put("p50Ms", s.percentile(0.50));
+            m.put("p95Ms", s.percentile(0.95));
+            m.put("p99Ms", s.percentile(0.99));
+            m.put("sloMs", latencySlos.get(strategy));
+            m.put("errorRate", s.errorRate());
+            m.put("quality", s.quality());
+            m.put("score", score(strategy));
+            strategies.put(strategy.name(), m);
+        }
+        metrics.put("strategies", strategies);
+        return metrics;
+    }
+
+    /**
+     * 策略得分 = 结果质量 - 错误率 - 延迟超出SLO的惩罚；样本不足时视为中性
+     */
+    private double score(SearchStrategy strategy) {
+        StrategyStats s = stats.get(strategy);
+        if (s.samples() < minSamples) {
+            return 0.5 - s.errorRate();
+        }
+        long slo = latencySlos.get(strategy);
+        long p95 = s.percentile(0.95);
+        double latencyPenalty = p95 <= slo ? 0.0 : Math.min(2.0, (double) (p95 - slo) / slo);
+        return s.quality() - s.errorRate() - latencyPenalty;
+    }
+
+    /**
+     * 单个策略的滑动窗口统计
+     */
+    private static class StrategyStats {
+        private static final double ALPHA = 0.1;
+
+        private final long[] latencies;
+        private int cursor = 0;
+        private int count = 0;
+        private double errorRate = 0.0;
+        private double quality = 0.5;
+        private final AtomicLong selections = new AtomicLong();
+
+        StrategyStats(int windowSize) {
+            this.latencies = new long[windowSize];
+        }
+
+        synchronized void record(long latencyMs, boolean success, double resultQuality) {
+            latencies[cursor] = latencyMs;
+            cursor = (cursor + 1) % latencies.length;
+            count = Math.min(count + 1, latencies.length);
+            errorRate = (1 - ALPHA) * errorRate + ALPHA * (success ? 0.0 : 1.0);
+            if (success) {
+                quality = (1 - ALPHA) * quality + ALPHA * resultQuality;
+            }
+        }
+
+        synchronized void recordFeedback(double signal) {
+            quality = (1 - ALPHA) * quality + ALPHA * signal;
+        }
+
+        synchronized int samples() {
+            return count;
+        }
+
+        synchronized double errorRate() {
+            return errorRate;
+        }
+
+        synchronized double quality() {
+            return quality;
+        }
+
+        synchronized long percentile(double p) {
+            if (count == 0) {
+                return 0L;
+            }
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted[Math.min(count - 1, (int) Math.ceil(p * count) - 1)];
+        }
+    }
+}
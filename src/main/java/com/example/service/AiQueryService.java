@@ -1,5 +1,7 @@
 package com.example.service;
 
+import com.example.resilience.CallNotPermittedException;
+import com.example.resilience.CircuitBreaker;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -8,10 +10,14 @@ import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.ChatClient;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * AI查询服务，负责将自然语言转换为Elasticsearch DSL
@@ -22,14 +28,28 @@ public class AiQueryService {
     private static final Logger logger = LoggerFactory.getLogger(AiQueryService.class);
     
     private final ChatClient chatClient;
+    private final SearchTemplateService searchTemplateService;
+    private final DslTemplateLearningService templateLearningService;
+    private final RuleBasedQueryParser ruleBasedQueryParser;
+    private final CircuitBreaker chatCircuitBreaker;
     private final ObjectMapper objectMapper;
+    private final Cache dslCache;
     
     @Value("${app.ai.prompt.system}")
     private String systemPrompt;
     
-    public AiQueryService(ChatClient chatClient) {
+    public AiQueryService(ChatClient chatClient, SearchTemplateService searchTemplateService,
+                         DslTemplateLearningService templateLearningService,
+                         RuleBasedQueryParser ruleBasedQueryParser,
+                         @Qualifier("chatCircuitBreaker") CircuitBreaker chatCircuitBreaker,
+                         CacheManager cacheManager) {
         this.chatClient = chatClient;
+        this.searchTemplateService = searchTemplateService;
+        this.templateLearningService = templateLearningService;
+        this.ruleBasedQueryParser = ruleBasedQueryParser;
+        this.chatCircuitBreaker = chatCircuitBreaker;
         this.objectMapper = new ObjectMapper();
+        this.dslCache = cacheManager.getCache("aiGeneratedDSL");
     }
     
     /**
@@ -41,32 +61,74 @@ public class AiQueryService {
     public String convertToElasticsearchDsl(String naturalLanguageQuery) {
         logger.info("开始转换自然语言查询: {}", naturalLanguageQuery);
         
+        // 常见意图（作者、分类、标签、时间范围）由本地规则直接解析
+        Optional<String> ruleDsl = ruleBasedQueryParser.parse(naturalLanguageQuery);
+        if (ruleDsl.isPresent()) {
+            logger.info("规则解析为DSL: {}", ruleDsl.get());
+            return ruleDsl.get();
+        }
+        
+        // 其次使用已学习的DSL模板，命中时无需调用AI模型
+        Optional<DslTemplateLearningService.TemplateMatch> learned = templateLearningService.match(naturalLanguageQuery);
+        if (learned.isPresent()) {
+            logger.info("使用已学习的DSL模板: {}", learned.get().dsl());
+            templateLearningService.maybeShadowCompare(learned.get(), 
+                () -> generateDslWithModel(naturalLanguageQuery));
+            return learned.get().dsl();
+        }
+        
+        // 模型生成的DSL按查询缓存，热点查询超过软TTL后在后台重新生成；
+        // 加载失败时不缓存，备用查询只用于本次请求
         try {
-            // 构建完整的提示
-            String userPrompt = buildUserPrompt(naturalLanguageQuery);
-            
-            // 创建提示模板
-            PromptTemplate promptTemplate = new PromptTemplate(systemPrompt + "\n\n用户查询: {query}");
-            Prompt prompt = promptTemplate.create(Map.of("query", naturalLanguageQuery));
-            
-            // 调用AI模型
-            String aiResponse = chatClient.call(prompt).getResult().getOutput().getContent();
-            
-            logger.debug("AI模型原始响应: {}", aiResponse);
-            
-            // 清理和验证AI响应
-            String cleanedDsl = cleanAndValidateDsl(aiResponse);
-            
-            logger.info("成功转换为DSL: {}", cleanedDsl);
-            return cleanedDsl;
-            
-        } catch (Exception e) {
-            logger.error("转换自然语言查询失败: {}", e.getMessage(), e);
+            return dslCache.get(naturalLanguageQuery, () -> {
+                String cleanedDsl = generateDslWithModel(naturalLanguageQuery);
+                
+                // 从已验证的输出中学习模板
+                templateLearningService.learn(naturalLanguageQuery, cleanedDsl);
+                
+                logger.info("成功转换为DSL: {}", cleanedDsl);
+                return cleanedDsl;
+            });
+        } catch (Cache.ValueRetrievalException e) {
+            if (e.getCause() instanceof CallNotPermittedException) {
+                logger.warn("AI服务熔断中，直接使用备用查询");
+            } else {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                logger.error("转换自然语言查询失败: {}", cause.getMessage(), cause);
+            }
             // 返回一个默认的查询
             return createFallbackQuery(naturalLanguageQuery);
         }
     }
     
+    /**
+     * 调用AI模型生成并验证DSL
+     */
+    private String generateDslWithModel(String naturalLanguageQuery) throws JsonProcessingException {
+        // 构建完整的提示
+        String userPrompt = buildUserPrompt(naturalLanguageQuery);
+        
+        // 创建提示模板
+        PromptTemplate promptTemplate = new PromptTemplate(systemPrompt + "\n\n用户查询: {query}");
+        Prompt prompt = promptTemplate.create(Map.of("query", naturalLanguageQuery));
+        
+        // 调用AI模型
+        String aiResponse = chatCircuitBreaker.execute(() -> chatClient.call(prompt))
+            .getResult().getOutput().getContent();
+        
+        logger.debug("AI模型原始响应: {}", aiResponse);
+        
+        // 清理和验证AI响应
+        return cleanAndValidateDsl(aiResponse);
+    }
+    
+    /**
+     * AI服务熔断器是否放行调用（不发起实际调用）
+     */
+    public boolean isModelCallPermitted() {
+        return chatCircuitBreaker.isCallPermitted();
+    }
+    
     /**
      * 构建用户提示
      */
@@ -101,9 +163,9 @@ public class AiQueryService {
         // 验证JSON格式
         try {
             JsonNode jsonNode = objectMapper.readTree(cleaned);
-            // 确保包含query字段
-            if (!jsonNode.has("query")) {
-                throw new JsonProcessingException("DSL must contain 'query' field") {};
+            // 确保包含query字段（统计类查询可以只包含聚合）
+            if (!jsonNode.has("query") && !jsonNode.has("aggs") && !jsonNode.has("aggregations")) {
+                throw new JsonProcessingException("DSL must contain 'query' or 'aggs' field") {};
             }
             return objectMapper.writeValueAsString(jsonNode);
         } catch (JsonProcessingException e) {
@@ -118,6 +180,12 @@ public class AiQueryService {
     private String createFallbackQuery(String query) {
         logger.warn("使用备用查询模式");
         
+        // 模板已注册时只生成模板调用（模板ID + 参数），由ES端展开为multi_match查询
+        if (searchTemplateService.isRegistered()) {
+            return searchTemplateService.buildTemplateInvocation(
+                SearchTemplateService.TEXT_MATCH_TEMPLATE, Map.of("query", query));
+        }
+        
         try {
             // 创建一个简单的multi_match查询
             Map<String, Object> multiMatch = Map.of(
@@ -143,7 +211,9 @@ public class AiQueryService {
     public boolean validateDsl(String dsl) {
         try {
             JsonNode jsonNode = objectMapper.readTree(dsl);
-            return jsonNode.has("query");
+            // 普通DSL、聚合DSL或存储模板调用
+            return jsonNode.has("query") || jsonNode.has("aggs") 
+                || jsonNode.has("aggregations") || jsonNode.has("id");
         } catch (Exception e) {
             logger.error("DSL验证失败: {}", e.getMessage());
             return false;
@@ -0,0 +1,311 @@
+package com.example.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Time;
+import co.elastic.clients.elasticsearch.indices.GetIndicesSettingsResponse;
+import co.elastic.clients.elasticsearch.indices.GetMappingResponse;
+import co.elastic.clients.elasticsearch.indices.IndexSettings;
+import co.elastic.clients.elasticsearch.indices.IndexState;
+import co.elastic.clients.elasticsearch.indices.get_mapping.IndexMappingRecord;
+import co.elastic.clients.json.JsonData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 批量导入模式
+ * 大批量写入期间关闭索引刷新（refresh_interval: -1）并将副本数设为0，写入结束后恢复原设置、
+ * 执行一次refresh，并可选地force merge。进入导入模式前把原设置和心跳时间记录在索引映射的
+ * _meta 中（存放在集群上，不依赖实例本地状态）。
+ * 每个正在导入的实例在记录中持有一个租约（实例ID -> 心跳时间），导入期间定时续约；
+ * 实例的最后一个导入任务结束时释放自己的租约，所有实例的租约都释放或过期后才恢复原设置，
+ * 因此一个实例结束导入不会在其他实例仍在导入时恢复刷新。导入实例崩溃后租约不再续约，
+ * 任一实例的定时检查发现租约全部过期即按记录恢复原设置
+ */
+@Service
+public class BulkLoadModeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkLoadModeService.class);
+
+    private static final String META_KEY = "bulkLoad";
+    private static final String DEFAULT_REFRESH_INTERVAL = "1s";
+    private static final String DEFAULT_REPLICAS = "1";
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final IndexGenerationService indexGenerationService;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    // 通过写别名操作当前写入的索引
+    @Value("${app.elasticsearch.write-alias:${app.elasticsearch.index-name:documents}-write}")
+    private String indexName;
+
+    @Value("${app.ingest.bulk-load.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.ingest.bulk-load.min-documents:5000}")
+    private long minDocuments;
+
+    @Value("${app.ingest.bulk-load.force-merge:false}")
+    private boolean forceMerge;
+
+    @Value("${app.ingest.bulk-load.max-num-segments:1}")
+    private long maxNumSegments;
+
+    @Value("${app.ingest.bulk-load.stale-after-ms:300000}")
+    private long staleAfterMs;
+
+    // 本实例正在进行的导入任务数，大于0时本实例持有租约
+    private int activeLoads = 0;
+
+    public BulkLoadModeService(ElasticsearchClient elasticsearchClient, IndexGenerationService indexGenerationService) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.indexGenerationService = indexGenerationService;
+    }
+
+    /**
+     * 按文档数判断是否使用导入模式（文档数未知的流式导入总是使用）
+     */
+    public boolean shouldUse(Long expectedDocuments) {
+        return enabled && (expectedDocuments == null || expectedDocuments >= minDocuments);
+    }
+
+    /**
+     * 进入导入模式并登记本实例的租约；已处于导入模式（本实例的其他任务或其他实例）时沿用已记录的原设置
+     */
+    public synchronized void enter() throws IOException {
+        if (activeLoads++ > 0) {
+            return;
+        }
+
+        Map<String, Object> marker = readMarker();
+        if (marker == null) {
+            String[] original = readCurrentSettings();
+            marker = new LinkedHashMap<>();
+            marker.put("refreshInterval", original[0]);
+            marker.put("replicas", original[1]);
+            marker.put("enteredAt", System.currentTimeMillis());
+        }
+        leases(marker).put(instanceId, System.currentTimeMillis());
+
+        try {
+            // 先持久化原设置和租约再修改，修改过程中崩溃也能恢复
+            writeMarker(marker);
+            elasticsearchClient.indices().putSettings(p -> p
+                .index(indexName)
+                .settings(s -> s
+                    .refreshInterval(t -> t.time("-1"))
+                    .numberOfReplicas("0")
+                )
+            );
+        } catch (IOException | RuntimeException e) {
+            activeLoads--;
+            try {
+                release(marker, false);
+            } catch (Exception restoreError) {
+                e.addSuppressed(restoreError);
+            }
+            throw e;
+        }
+        logger.info("索引 {} 进入批量导入模式（原设置: refresh_interval={}, replicas={}）",
+            indexName, marker.get("refreshInterval"), marker.get("replicas"));
+    }
+
+    /**
+     * 退出导入模式；本实例最后一个导入任务结束时释放租约，没有其他实例持有租约时恢复原设置
+     */
+    public synchronized void exit() {
+        if (activeLoads == 0 || --activeLoads > 0) {
+            return;
+        }
+        try {
+            Map<String, Object> marker = readMarker();
+            if (marker == null) {
+                logger.warn("未找到批量导入记录，索引设置可能已被恢复");
+                return;
+            }
+            release(marker, forceMerge);
+        } catch (Exception e) {
+            // 记录仍在，租约过期后由定时检查恢复
+            logger.error("释放批量导入租约失败，将在 {}ms 后由定时检查恢复: {}", staleAfterMs, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 定时检查：本实例在导入时续约；清除过期的租约（导入实例崩溃的情况），没有有效租约时恢复原设置
+     */
+    @Scheduled(initialDelay = 15000, fixedDelayString = "${app.ingest.bulk-load.check-interval-ms:60000}")
+    public synchronized void heartbeatOrRecover() {
+        try {
+            Map<String, Object> marker = readMarker();
+            if (marker == null) {
+                return;
+            }
+            if (activeLoads > 0) {
+                // 租约可能因并发修改 _meta 丢失，续约时重新登记
+                leases(marker).put(instanceId, System.currentTimeMillis());
+                writeMarker(marker);
+                return;
+            }
+            Map<String, Object> leases = leases(marker);
+            boolean pruned = leases.values().removeIf(this::isExpired);
+            if (leases.isEmpty()) {
+                logger.warn("批量导入记录没有有效租约（导入实例可能已崩溃），恢复索引设置");
+                restore(marker, false);
+            } else if (pruned) {
+                logger.warn("清除过期的批量导入租约，仍有 {} 个实例在导入", leases.size());
+                writeMarker(marker);
+            }
+        } catch (Exception e) {
+            logger.debug("检查批量导入状态失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 从集群读取导入记录，判断是否有实例处于导入模式（移动写别名等需要最新状态的操作使用）
+     */
+    public synchronized boolean checkActive() throws IOException {
+        return readMarker() != null;
+    }
+
+    public synchronized Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("activeLoads", activeLoads);
+        try {
+            status.put("marker", readMarker());
+        } catch (Exception e) {
+            status.put("error", e.getMessage());
+        }
+        return status;
+    }
+
+    /**
+     * 释放本实例的租约（同时清除过期租约）；仍有其他实例持有有效租约时保留导入模式
+     */
+    private void release(Map<String, Object> marker, boolean merge) throws IOException {
+        Map<String, Object> leases = leases(marker);
+        leases.remove(instanceId);
+        leases.values().removeIf(this::isExpired);
+        if (leases.isEmpty()) {
+            restore(marker, merge);
+            return;
+        }
+        writeMarker(marker);
+        logger.info("本实例的批量导入已结束，其他 {} 个实例仍在导入，保留导入模式", leases.size());
+    }
+
+    /**
+     * 记录中的租约（实例ID -> 心跳时间），可直接修改；兼容只有单个 owner/heartbeat 的旧记录
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> leases(Map<String, Object> marker) {
+        Map<String, Object> leases = new LinkedHashMap<>();
+        if (marker.get("leases") instanceof Map<?, ?> existing) {
+            leases.putAll((Map<String, Object>) existing);
+        } else {
+            Object owner = marker.remove("owner");
+            Object heartbeat = marker.remove("heartbeat");
+            if (owner != null && heartbeat != null) {
+                leases.put(String.valueOf(owner), heartbeat);
+            }
+        }
+        marker.put("leases", leases);
+        return leases;
+    }
+
+    private boolean isExpired(Object heartbeat) {
+        long last = heartbeat instanceof Number number ? number.longValue() : 0L;
+        return System.currentTimeMillis() - last > staleAfterMs;
+    }
+
+    /**
+     * 恢复原设置、刷新索引并清除记录
+     */
+    private void restore(Map<String, Object> marker, boolean merge) throws IOException {
+        String refreshInterval = String.valueOf(marker.getOrDefault("refreshInterval", DEFAULT_REFRESH_INTERVAL));
+        String replicas = String.valueOf(marker.getOrDefault("replicas", DEFAULT_REPLICAS));
+
+        elasticsearchClient.indices().putSettings(p -> p
+            .index(indexName)
+            .settings(s -> s
+                .refreshInterval(t -> t.time(refreshInterval))
+                .numberOfReplicas(replicas)
+            )
+        );
+        elasticsearchClient.indices().refresh(r -> r.index(indexName));
+        if (merge) {
+            logger.info("对索引 {} 执行force merge（max_num_segments={}）", indexName, maxNumSegments);
+            elasticsearchClient.indices().forcemerge(f -> f.index(indexName).maxNumSegments(maxNumSegments));
+        }
+        writeMarker(null);
+        // 导入期间写入的文档在刷新后才可见
+        indexGenerationService.bump();
+        logger.info("索引 {} 已退出批量导入模式（refresh_interval={}, replicas={}）", indexName, refreshInterval, replicas);
+    }
+
+    /**
+     * 读取当前的刷新间隔和副本数，未显式设置时取ES默认值
+     */
+    private String[] readCurrentSettings() throws IOException {
+        GetIndicesSettingsResponse response = elasticsearchClient.indices().getSettings(g -> g.index(indexName));
+        // 通过别名查询时结果以具体索引名为键
+        IndexState state = response.result().values().stream().findFirst().orElse(null);
+        IndexSettings settings = state == null ? null : state.settings();
+        if (settings != null && settings.index() != null) {
+            settings = settings.index();
+        }
+
+        String refreshInterval = DEFAULT_REFRESH_INTERVAL;
+        String replicas = DEFAULT_REPLICAS;
+        if (settings != null) {
+            Time time = settings.refreshInterval();
+            if (time != null) {
+                refreshInterval = time.isTime() ? time.time() : String.valueOf(time.offset());
+            }
+            if (settings.numberOfReplicas() != null) {
+                replicas = settings.numberOfReplicas();
+            }
+        }
+        // 上次导入未恢复就重启且记录丢失时，不把导入模式的设置当作原设置
+        if ("-1".equals(refreshInterval)) {
+            refreshInterval = DEFAULT_REFRESH_INTERVAL;
+        }
+        return new String[]{refreshInterval, replicas};
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readMarker() throws IOException {
+        JsonData marker = readMeta().get(META_KEY);
+        return marker == null ? null : new LinkedHashMap<>(marker.to(Map.class));
+    }
+
+    private Map<String, JsonData> readMeta() throws IOException {
+        GetMappingResponse response = elasticsearchClient.indices().getMapping(g -> g.index(indexName));
+        IndexMappingRecord record = response.result().values().stream().findFirst().orElse(null);
+        if (record == null || record.mappings() == null || record.mappings().meta() == null) {
+            return Map.of();
+        }
+        return record.mappings().meta();
+    }
+
+    /**
+     * 写入或清除标记；_meta 是整体替换的，保留重建索引、路由等写入的其他键
+     */
+    private void writeMarker(Map<String, Object> marker) throws IOException {
+        Map<String, JsonData> meta = new HashMap<>(readMeta());
+        if (marker == null) {
+            meta.remove(META_KEY);
+        } else {
+            meta.put(META_KEY, JsonData.of(marker));
+        }
+        elasticsearchClient.indices().putMapping(p -> p.index(indexName).meta(meta));
+    }
+}
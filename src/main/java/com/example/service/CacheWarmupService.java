@@ -0,0 +1,298 @@
+package com.example.service;
+
+import com.example.dto.QueryRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * 启动预热服务
+ * 从本地查询日志（NDJSON，每行一条查询记录）中统计最近一段时间内出现频率最高的前N个查询，
+ * 批量预计算它们的向量，并可选地预生成DSL和首页结果。预热完成或超过时间预算前实例不报告就绪，
+ * 新实例加入负载均衡时即具备热缓存的延迟
+ */
+@Service
+public class CacheWarmupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheWarmupService.class);
+
+    public enum State { PENDING, WARMING, READY }
+
+    private final EmbeddingService embeddingService;
+    private final AiQueryService aiQueryService;
+    private final HybridSearchService hybridSearchService;
+    private final Cache embeddingCache;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${app.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.warmup.query-log-path:data/query-log}")
+    private String queryLogPath;
+
+    @Value("${app.warmup.lookback-hours:24}")
+    private int lookbackHours;
+
+    @Value("${app.warmup.top-n:200}")
+    private int topN;
+
+    @Value("${app.warmup.time-budget-ms:60000}")
+    private long timeBudgetMs;
+
+    @Value("${app.warmup.embedding-batch-size:32}")
+    private int embeddingBatchSize;
+
+    @Value("${app.warmup.concurrency:4}")
+    private int concurrency;
+
+    @Value("${app.warmup.dsl:false}")
+    private boolean warmDsl;
+
+    @Value("${app.warmup.results:true}")
+    private boolean warmResults;
+
+    private volatile State state = State.PENDING;
+    private volatile Map<String, Object> lastRun = Map.of();
+
+    public CacheWarmupService(EmbeddingService embeddingService, AiQueryService aiQueryService,
+                              HybridSearchService hybridSearchService, CacheManager cacheManager) {
+        this.embeddingService = embeddingService;
+        this.aiQueryService = aiQueryService;
+        this.hybridSearchService = hybridSearchService;
+        this.embeddingCache = cacheManager.getCache("textEmbeddings");
+    }
+
+    /**
+     * 热门查询（按查询文本聚合，size取最近一次首页请求的页面大小）
+     */
+    record HotQuery(String query, int size, long count) {}
+
+    /**
+     * 执行预热，在时间预算内尽量完成；无论成功与否，结束后都标记为就绪
+     */
+    public void warmUp() {
+        if (!enabled) {
+            state = State.READY;
+            return;
+        }
+
+        state = State.WARMING;
+        long start = System.currentTimeMillis();
+        long deadline = start + timeBudgetMs;
+        Map<String, Object> summary = new LinkedHashMap<>();
+
+        try {
+            List<HotQuery> hotQueries = loadHotQueries();
+            summary.put("queries", hotQueries.size());
+            if (hotQueries.isEmpty()) {
+                logger.info("查询日志中没有可预热的查询，跳过预热");
+                return;
+            }
+            logger.info("开始预热 {} 个热门查询，时间预算 {}ms", hotQueries.size(), timeBudgetMs);
+
+            summary.put("embeddings", warmEmbeddings(hotQueries, deadline));
+
+            if (warmDsl || warmResults) {
+                ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, concurrency), runnable -> {
+                    Thread thread = new Thread(runnable, "cache-warmup");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                try {
+                    if (warmDsl) {
+                        summary.put("dsl", runUntilDeadline(executor, hotQueries, deadline,
+                            hot -> aiQueryService.convertToElasticsearchDsl(hot.query())));
+                    }
+                    if (warmResults) {
+                        // 未开启DSL预热时结果预热不调用AI模型，选中 AI_ENHANCED 策略的查询跳过（不缓存降级结果）
+                        AtomicInteger skipped = new AtomicInteger();
+                        summary.put("results", runUntilDeadline(executor, hotQueries, deadline, hot -> {
+                            QueryRequest request = new QueryRequest(hot.query(), 0, hot.size());
+                            if (warmDsl) {
+                                hybridSearchService.smartSearch(request);
+                                return;
+                            }
+                            try {
+                                HybridSearchService.withoutModelCalls(() -> hybridSearchService.smartSearch(request));
+                            } catch (HybridSearchService.ModelCallsDisabledException e) {
+                                skipped.incrementAndGet();
+                                throw e;
+                            }
+                        }));
+                        summary.put("resultsSkipped", skipped.get());
+                    }
+                } finally {
+                    executor.shutdownNow();
+                }
+            }
+        } catch (Exception e) {
+            logger.error("缓存预热失败: {}", e.getMessage(), e);
+            summary.put("error", e.getMessage());
+        } finally {
+            long took = System.currentTimeMillis() - start;
+            summary.put("took", took);
+            summary.put("budgetExceeded", System.currentTimeMillis() > deadline);
+            lastRun = summary;
+            state = State.READY;
+            logger.info("缓存预热结束: {}", summary);
+        }
+    }
+
+    public boolean isReady() {
+        return state == State.READY;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", state.name());
+        status.put("enabled", enabled);
+        status.put("lastRun", lastRun);
+        return status;
+    }
+
+    /**
+     * 分批预计算向量并写入向量缓存，返回成功预热的数量
+     */
+    private int warmEmbeddings(List<HotQuery> hotQueries, long deadline) {
+        int warmed = 0;
+        for (int i = 0; i < hotQueries.size(); i += embeddingBatchSize) {
+            if (System.currentTimeMillis() >= deadline) {
+                logger.warn("向量预热超过时间预算，已预热 {} 个", warmed);
+                break;
+            }
+            List<String> texts = hotQueries.subList(i, Math.min(i + embeddingBatchSize, hotQueries.size()))
+                .stream().map(HotQuery::query).toList();
+            List<float[]> embeddings = embeddingService.generateBatchEmbeddings(texts);
+            for (int j = 0; j < texts.size() && j < embeddings.size(); j++) {
+                if (embeddings.get(j).length > 0) {
+                    embeddingCache.put(texts.get(j), embeddings.get(j));
+                    warmed++;
+                }
+            }
+        }
+        return warmed;
+    }
+
+    /**
+     * 并发执行预热任务，到达截止时间后取消未完成的任务，返回成功完成的数量
+     */
+    private int runUntilDeadline(ExecutorService executor, List<HotQuery> hotQueries, long deadline,
+                                 WarmupTask task) throws InterruptedException {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return 0;
+        }
+
+        AtomicInteger completed = new AtomicInteger();
+        List<Callable<Void>> tasks = hotQueries.stream()
+            .map(hot -> (Callable<Void>) () -> {
+                try {
+                    task.run(hot);
+                    completed.incrementAndGet();
+                } catch (Exception e) {
+                    logger.debug("预热查询失败: {} - {}", hot.query(), e.getMessage());
+                }
+                return null;
+            })
+            .toList();
+        executor.invokeAll(tasks, remaining, TimeUnit.MILLISECONDS);
+        return completed.get();
+    }
+
+    @FunctionalInterface
+    private interface WarmupTask {
+        void run(HotQuery hotQuery) throws Exception;
+    }
+
+    /**
+     * 读取查询日志，统计回看窗口内各查询的出现次数，按频率取前N个
+     */
+    List<HotQuery> loadHotQueries() throws IOException {
+        Path path = Paths.get(queryLogPath);
+        if (!Files.exists(path)) {
+            logger.info("查询日志不存在: {}", path.toAbsolutePath());
+            return List.of();
+        }
+
+        long since = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(lookbackHours);
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> listing = Files.list(path)) {
+                listing.filter(file -> file.getFileName().toString().endsWith(".ndjson"))
+                    .filter(file -> lastModified(file) >= since)
+                    .forEach(files::add);
+            }
+        } else {
+            files.add(path);
+        }
+
+        Map<String, long[]> counts = new HashMap<>();
+        Map<String, Integer> sizes = new HashMap<>();
+        for (Path file : files) {
+            try (Stream<String> lines = Files.lines(file)) {
+                lines.forEach(line -> {
+                    JsonNode record = parse(line);
+                    if (record == null) {
+                        return;
+                    }
+                    String query = record.path("query").asText("").trim();
+                    if (query.isEmpty() || record.path("timestamp").asLong(Long.MAX_VALUE) < since) {
+                        return;
+                    }
+                    counts.computeIfAbsent(query, key -> new long[1])[0]++;
+                    if (record.path("page").asInt(0) == 0 && record.has("size")) {
+                        sizes.put(query, record.path("size").asInt(10));
+                    }
+                });
+            }
+        }
+
+        return counts.entrySet().stream()
+            .sorted(Comparator.comparingLong((Map.Entry<String, long[]> entry) -> entry.getValue()[0]).reversed())
+            .limit(topN)
+            .map(entry -> new HotQuery(entry.getKey(), sizes.getOrDefault(entry.getKey(), 10), entry.getValue()[0]))
+            .toList();
+    }
+
+    private JsonNode parse(String line) {
+        if (line.isBlank()) {
+            return null;
+        }
+        try {
+            return objectMapper.readTree(line);
+        } catch (IOException e) {
+            // 跳过写入中断产生的不完整行
+            return null;
+        }
+    }
+
+    private long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+}
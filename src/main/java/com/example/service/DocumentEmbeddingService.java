@@ -0,0 +1,180 @@
+package com.example.service;
+
+import com.example.model.Document;
+import com.example.model.Passage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 文档向量化服务
+ * 入库时将标题和切分后的正文段落合并成批次调用向量模型，
+ * 为文档填充段落向量、正文向量（段落向量均值）和组合向量
+ */
+@Service
+public class DocumentEmbeddingService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(DocumentEmbeddingService.class);
+    
+    private final EmbeddingService embeddingService;
+    private final PassageChunker passageChunker;
+    
+    @Value("${app.ingest.embedding.batch-size:32}")
+    private int batchSize;
+    
+    @Value("${app.ingest.embedding.title-weight:0.3}")
+    private double titleWeight;
+    
+    public DocumentEmbeddingService(EmbeddingService embeddingService, PassageChunker passageChunker) {
+        this.embeddingService = embeddingService;
+        this.passageChunker = passageChunker;
+    }
+    
+    /**
+     * 向量化失败的文档：标题向量未生成，或正文有段落未生成向量。
+     * 失败字段的指纹不应写入索引，以便下次提交同样内容时重试
+     */
+    public record EmbeddingFailures(Set<Document> title, Set<Document> content) {
+        
+        public static final EmbeddingFailures NONE = new EmbeddingFailures(Set.of(), Set.of());
+        
+        public boolean isEmpty() {
+            return title.isEmpty() && content.isEmpty();
+        }
+    }
+    
+    /**
+     * 为一批文档生成向量
+     * 向量生成失败的字段保持为空（不写入零向量），文档仍可通过全文检索找到
+     */
+    public EmbeddingFailures embedDocuments(List<Document> documents) {
+        return embedDocuments(documents, document -> true, document -> true);
+    }
+    
+    /**
+     * 只为发生变化的字段生成向量
+     * 未重新生成的字段沿用文档上已有的向量（由调用方从索引中读取）参与组合向量计算
+     *
+     * @param embedTitle   是否需要为文档标题生成向量
+     * @param embedContent 是否需要切分正文并为段落生成向量
+     * @return 向量化失败的文档
+     */
+    public EmbeddingFailures embedDocuments(List<Document> documents, Predicate<Document> embedTitle, 
+                                            Predicate<Document> embedContent) {
+        List<String> texts = new ArrayList<>();
+        List<Consumer<float[]>> targets = new ArrayList<>();
+        // 每个文本片段所属的文档，以及是否为标题
+        List<Document> owners = new ArrayList<>();
+        List<Boolean> titleTargets = new ArrayList<>();
+        List<Document> changed = new ArrayList<>();
+        
+        for (Document document : documents) {
+            boolean titleChanged = embedTitle.test(document);
+            boolean contentChanged = embedContent.test(document);
+            if (!titleChanged && !contentChanged) {
+                continue;
+            }
+            changed.add(document);
+            
+            if (titleChanged) {
+                // 标题变化后旧的标题向量不再适用，生成失败时保持为空
+                document.setTitleEmbedding(null);
+                if (hasText(document.getTitle())) {
+                    texts.add(document.getTitle());
+                    targets.add(document::setTitleEmbedding);
+                    owners.add(document);
+                    titleTargets.add(true);
+                }
+            }
+            if (contentChanged) {
+                document.setContentEmbedding(null);
+                document.setPassages(passageChunker.chunk(document.getContent()));
+                for (Passage passage : document.getPassages()) {
+                    texts.add(passage.getText());
+                    targets.add(passage::setEmbedding);
+                    owners.add(document);
+                    titleTargets.add(false);
+                }
+            }
+        }
+        
+        // 按批次调用向量模型，控制单次请求的输入数量
+        int embedded = 0;
+        boolean[] succeeded = new boolean[texts.size()];
+        for (int start = 0; start < texts.size(); start += batchSize) {
+            int end = Math.min(start + batchSize, texts.size());
+            List<float[]> vectors = embeddingService.generateBatchEmbeddings(texts.subList(start, end));
+            for (int i = 0; i < vectors.size() && start + i < end; i++) {
+                float[] vector = vectors.get(i);
+                if (vector != null && vector.length > 0) {
+                    targets.get(start + i).accept(vector);
+                    succeeded[start + i] = true;
+                    embedded++;
+                }
+            }
+        }
+        
+        Set<Document> titleFailed = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Document> contentFailed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < succeeded.length; i++) {
+            if (!succeeded[i]) {
+                (titleTargets.get(i) ? titleFailed : contentFailed).add(owners.get(i));
+            }
+        }
+        
+        for (Document document : changed) {
+            if (document.getPassages() != null) {
+                // 没有成功向量化的段落不写入nested字段
+                document.getPassages().removeIf(passage -> passage.getEmbedding() == null);
+                document.setContentEmbedding(averagePassageEmbeddings(document.getPassages()));
+            }
+            document.setCombinedEmbedding(combine(document.getTitleEmbedding(), document.getContentEmbedding()));
+        }
+        
+        logger.info("文档向量化完成: {}/{} 个文档需要向量化，{} 个文本片段，成功 {} 个", 
+            changed.size(), documents.size(), texts.size(), embedded);
+        if (!titleFailed.isEmpty() || !contentFailed.isEmpty()) {
+            logger.warn("向量化失败: {} 个文档的标题、{} 个文档的正文，下次提交时重试", 
+                titleFailed.size(), contentFailed.size());
+        }
+        return new EmbeddingFailures(titleFailed, contentFailed);
+    }
+    
+    private float[] averagePassageEmbeddings(List<Passage> passages) {
+        if (passages.isEmpty()) {
+            return null;
+        }
+        
+        float[] average = new float[passages.get(0).getEmbedding().length];
+        for (Passage passage : passages) {
+            float[] embedding = passage.getEmbedding();
+            for (int i = 0; i < average.length; i++) {
+                average[i] += embedding[i] / passages.size();
+            }
+        }
+        return average;
+    }
+    
+    private float[] combine(float[] titleEmbedding, float[] contentEmbedding) {
+        if (titleEmbedding == null) {
+            return contentEmbedding;
+        }
+        if (contentEmbedding == null) {
+            return titleEmbedding;
+        }
+        return embeddingService.combineEmbeddings(titleEmbedding, titleWeight, contentEmbedding, 1.0 - titleWeight);
+    }
+    
+    private boolean hasText(String value) {
+        return value != null && !value.isBlank();
+    }
+}
@@ -0,0 +1,379 @@
+package com.example.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * DSL模板学习服务
+ * 从AI模型已验证的输出中提取参数化模板和槽位抽取规则，
+ * 后续同形态的查询直接在本地填充模板，无需调用AI模型
+ */
+@Service
+public class DslTemplateLearningService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DslTemplateLearningService.class);
+
+    private static final String SLOT_PREFIX = "{{slot";
+    private static final String SLOT_SUFFIX = "}}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ConcurrentMap<String, LearnedTemplate> templates = new ConcurrentHashMap<>();
+
+    private final ExecutorService shadowExecutor = new ThreadPoolExecutor(
+        1, 1, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(16),
+        runnable -> {
+            Thread thread = new Thread(runnable, "dsl-template-shadow");
+            thread.setDaemon(true);
+            return thread;
+        },
+        new ThreadPoolExecutor.DiscardPolicy()
+    );
+
+    private final AtomicLong templateHits = new AtomicLong();
+    private final AtomicLong templateMisses = new AtomicLong();
+    private final AtomicLong shadowComparisons = new AtomicLong();
+    private final AtomicLong shadowMismatches = new AtomicLong();
+
+    @Value("${app.ai.template-learning.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.ai.template-learning.min-observations:3}")
+    private int minObservations;
+
+    @Value("${app.ai.template-learning.min-confidence:0.9}")
+    private double minConfidence;
+
+    @Value("${app.ai.template-learning.shadow-sample-rate:0.05}")
+    private double shadowSampleRate;
+
+    @Value("${app.ai.template-learning.max-templates:500}")
+    private int maxTemplates;
+
+    @Value("${app.ai.template-learning.min-slot-length:2}")
+    private int minSlotLength;
+
+    /**
+     * 尝试使用已学习的模板生成DSL
+     */
+    public Optional<TemplateMatch> match(String query) {
+        if (!enabled || query == null) {
+            return Optional.empty();
+        }
+
+        String normalized = query.trim();
+        for (LearnedTemplate template : templates.values()) {
+            if (!template.isActive(minObservations, minConfidence)) {
+                continue;
+            }
+
+            Matcher matcher = template.pattern.matcher(normalized);
+            if (!matcher.matches()) {
+                continue;
+            }
+
+            List<String> slotValues = new ArrayList<>();
+            for (int i = 1; i <= matcher.groupCount(); i++) {
+                slotValues.add(matcher.group(i).trim());
+            }
+            if (slotValues.stream().anyMatch(value -> value.length() < minSlotLength)) {
+                continue;
+            }
+
+            try {
+                String dsl = objectMapper.writeValueAsString(fillSlots(template.dslTemplate, slotValues));
+                templateHits.incrementAndGet();
+                logger.debug("命中已学习的DSL模板: {}", template.pattern.pattern());
+                return Optional.of(new TemplateMatch(template.pattern.pattern(), dsl));
+            } catch (Exception e) {
+                logger.warn("填充DSL模板失败: {}", e.getMessage());
+            }
+        }
+
+        templateMisses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    /**
+     * 从AI模型已验证的DSL中学习模板
+     */
+    public void learn(String query, String validatedDsl) {
+        if (!enabled || query == null || validatedDsl == null) {
+            return;
+        }
+
+        try {
+            String normalized = query.trim();
+            JsonNode dsl = objectMapper.readTree(validatedDsl);
+
+            List<Slot> slots = findSlots(normalized, dsl);
+            if (slots.isEmpty()) {
+                return;
+            }
+
+            Pattern pattern = buildPattern(normalized, slots);
+            if (pattern == null) {
+                return;
+            }
+
+            JsonNode dslTemplate = replaceSlots(dsl, slots);
+            String key = pattern.pattern();
+
+            LearnedTemplate existing = templates.get(key);
+            if (existing == null) {
+                if (templates.size() >= maxTemplates) {
+                    evictWeakestTemplate();
+                }
+                templates.putIfAbsent(key, new LearnedTemplate(pattern, dslTemplate));
+                logger.debug("学习到新的DSL模板: {}", key);
+            } else {
+                existing.observe(dslTemplate);
+            }
+        } catch (Exception e) {
+            logger.debug("DSL模板学习失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 按采样率异步调用AI模型，与模板生成的DSL进行影子对比
+     */
+    public void maybeShadowCompare(TemplateMatch match, Callable<String> modelCall) {
+        if (ThreadLocalRandom.current().nextDouble() >= shadowSampleRate) {
+            return;
+        }
+
+        shadowExecutor.execute(() -> {
+            try {
+                String modelDsl = modelCall.call();
+                boolean agreed = objectMapper.readTree(modelDsl).equals(objectMapper.readTree(match.dsl()));
+
+                shadowComparisons.incrementAndGet();
+                LearnedTemplate template = templates.get(match.templateKey());
+                if (template != null) {
+                    template.recordShadowResult(agreed);
+                }
+
+                if (!agreed) {
+                    shadowMismatches.incrementAndGet();
+                    logger.info("DSL模板影子对比不一致: {}", match.templateKey());
+                }
+            } catch (Exception e) {
+                logger.debug("DSL模板影子对比失败: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 获取模板学习统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        long active = templates.values().stream()
+            .filter(t -> t.isActive(minObservations, minConfidence))
+            .count();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("templates", templates.size());
+        stats.put("activeTemplates", active);
+        stats.put("templateHits", templateHits.get());
+        stats.put("templateMisses", templateMisses.get());
+        stats.put("shadowComparisons", shadowComparisons.get());
+        stats.put("shadowMismatches", shadowMismatches.get());
+        return stats;
+    }
+
+    /**
+     * 在DSL的字符串叶子节点中查找与查询原文完全一致的片段作为槽位
+     */
+    private List<Slot> findSlots(String query, JsonNode dsl) {
+        Set<String> candidates = new TreeSet<>(Comparator.comparingInt(String::length).reversed()
+            .thenComparing(Comparator.naturalOrder()));
+        collectTextValues(dsl, candidates);
+
+        // 优先匹配较长的值，避免槽位重叠
+        List<Slot> slots = new ArrayList<>();
+        boolean[] occupied = new boolean[query.length()];
+        for (String value : candidates) {
+            if (value.length() < minSlotLength) {
+                continue;
+            }
+            int start = query.indexOf(value);
+            if (start < 0 || query.indexOf(value, start + 1) >= 0) {
+                continue;  // 不存在或出现多次（位置不确定）
+            }
+            boolean overlaps = false;
+            for (int i = start; i < start + value.length(); i++) {
+                if (occupied[i]) {
+                    overlaps = true;
+                    break;
+                }
+            }
+            if (overlaps) {
+                continue;
+            }
+            Arrays.fill(occupied, start, start + value.length(), true);
+            slots.add(new Slot(value, start));
+        }
+
+        slots.sort(Comparator.comparingInt(Slot::start));
+        return slots;
+    }
+
+    private void collectTextValues(JsonNode node, Set<String> values) {
+        if (node.isTextual()) {
+            values.add(node.asText());
+        } else if (node.isContainerNode()) {
+            node.forEach(child -> collectTextValues(child, values));
+        }
+    }
+
+    /**
+     * 构建槽位抽取正则：字面部分原样匹配，槽位部分非贪婪捕获
+     */
+    private Pattern buildPattern(String query, List<Slot> slots) {
+        StringBuilder regex = new StringBuilder();
+        int cursor = 0;
+        for (Slot slot : slots) {
+            String literal = query.substring(cursor, slot.start());
+            // 相邻槽位之间没有字面分隔时无法确定边界
+            if (literal.isEmpty() && cursor > 0) {
+                return null;
+            }
+            regex.append(Pattern.quote(literal)).append("(.+?)");
+            cursor = slot.start() + slot.value().length();
+        }
+        regex.append(Pattern.quote(query.substring(cursor)));
+
+        // 纯槽位的模板没有任何约束，不予学习
+        int literalLength = query.length() - slots.stream().mapToInt(s -> s.value().length()).sum();
+        if (literalLength < minSlotLength) {
+            return null;
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private JsonNode replaceSlots(JsonNode node, List<Slot> slots) {
+        if (node.isTextual()) {
+            for (int i = 0; i < slots.size(); i++) {
+                if (slots.get(i).value().equals(node.asText())) {
+                    return TextNode.valueOf(SLOT_PREFIX + i + SLOT_SUFFIX);
+                }
+            }
+            return node;
+        }
+        if (node.isObject()) {
+            ObjectNode copy = objectMapper.createObjectNode();
+            node.fields().forEachRemaining(e -> copy.set(e.getKey(), replaceSlots(e.getValue(), slots)));
+            return copy;
+        }
+        if (node.isArray()) {
+            ArrayNode copy = objectMapper.createArrayNode();
+            node.forEach(child -> copy.add(replaceSlots(child, slots)));
+            return copy;
+        }
+        return node;
+    }
+
+    private JsonNode fillSlots(JsonNode node, List<String> slotValues) {
+        if (node.isTextual()) {
+            String text = node.asText();
+            if (text.startsWith(SLOT_PREFIX) && text.endsWith(SLOT_SUFFIX)) {
+                int index = Integer.parseInt(text.substring(SLOT_PREFIX.length(), text.length() - SLOT_SUFFIX.length()));
+                return TextNode.valueOf(slotValues.get(index));
+            }
+            return node;
+        }
+        if (node.isObject()) {
+            ObjectNode copy = objectMapper.createObjectNode();
+            node.fields().forEachRemaining(e -> copy.set(e.getKey(), fillSlots(e.getValue(), slotValues)));
+            return copy;
+        }
+        if (node.isArray()) {
+            ArrayNode copy = objectMapper.createArrayNode();
+            node.forEach(child -> copy.add(fillSlots(child, slotValues)));
+            return copy;
+        }
+        return node;
+    }
+
+    /**
+     * 模板数量达到上限时淘汰置信度最低的模板
+     */
+    private void evictWeakestTemplate() {
+        templates.entrySet().stream()
+            .min(Comparator.comparingDouble((Map.Entry<String, LearnedTemplate> e) -> e.getValue().confidence())
+                .thenComparingLong(e -> e.getValue().confirmations))
+            .ifPresent(e -> templates.remove(e.getKey()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shadowExecutor.shutdownNow();
+    }
+
+    /**
+     * 模板匹配结果
+     */
+    public record TemplateMatch(String templateKey, String dsl) {}
+
+    private record Slot(String value, int start) {}
+
+    /**
+     * 已学习的模板及其置信度统计
+     */
+    private static class LearnedTemplate {
+        private final Pattern pattern;
+        private volatile JsonNode dslTemplate;
+        private long confirmations = 1;
+        private long mismatches = 0;
+
+        LearnedTemplate(Pattern pattern, JsonNode dslTemplate) {
+            this.pattern = pattern;
+            this.dslTemplate = dslTemplate;
+        }
+
+        synchronized void observe(JsonNode observed) {
+            if (observed.equals(dslTemplate)) {
+                confirmations++;
+                return;
+            }
+            mismatches++;
+            // 不一致的观测占多数时改用最新的模板重新积累置信度
+            if (mismatches > confirmations) {
+                dslTemplate = observed;
+                confirmations = 1;
+                mismatches = 0;
+            }
+        }
+
+        synchronized void recordShadowResult(boolean agreed) {
+            if (agreed) {
+                confirmations++;
+            } else {
+                mismatches++;
+            }
+        }
+
+        synchronized double confidence() {
+            return (double) confirmations / (confirmations + mismatches);
+        }
+
+        synchronized boolean isActive(int minObservations, double minConfidence) {
+            return confirmations >= minObservations && confidence() >= minConfidence;
+        }
+    }
+}
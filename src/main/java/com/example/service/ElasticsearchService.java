@@ -1,16 +1,37 @@
 package com.example.service;
 
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
 import co.elastic.clients.elasticsearch._types.query_dsl.Query;
-import co.elastic.clients.elasticsearch.core.IndexRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.MgetResponse;
 import co.elastic.clients.elasticsearch.core.SearchRequest;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.SearchTemplateResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.mget.MultiGetResponseItem;
 import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.indices.Alias;
 import co.elastic.clients.elasticsearch.indices.CreateIndexRequest;
 import co.elastic.clients.elasticsearch.indices.ExistsRequest;
+import co.elastic.clients.elasticsearch.indices.GetAliasResponse;
 import co.elastic.clients.json.JsonData;
+import co.elastic.clients.json.JsonpMapper;
+import com.example.dto.SearchFilters;
 import com.example.model.Document;
+import com.example.resilience.HedgedRequestExecutor;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.annotation.PostConstruct;
+import jakarta.json.stream.JsonGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -18,53 +39,310 @@ import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * Elasticsearch搜索服务
+ * 查询通过读别名（app.elasticsearch.index-name）、写入通过写别名进行，
+ * 别名指向带版本号的具体索引（如 documents-v1），重建索引后原子切换别名即可上线或回滚。
+ * 开启按月分区时，读别名下挂多个 {index-name}-yyyy.MM 分区，文档按 createTime 写入对应分区，
+ * 带时间范围的查询只查询重叠的分区。
+ * 开启自定义路由时，文档按路由字段的值写入，带该字段等值条件的查询只查询一个分片
  */
 @Service
 public class ElasticsearchService {
     
     private static final Logger logger = LoggerFactory.getLogger(ElasticsearchService.class);
     
+    private static final DateTimeFormatter CREATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    
+    // 删除文档中指定字段（局部更新中的null值在序列化时被省略，无法用于清除字段）
+    private static final String REMOVE_FIELDS_SCRIPT = "for (String field : params.fields) { ctx._source.remove(field); }";
+    
     private final ElasticsearchClient elasticsearchClient;
+    private final ElasticsearchAsyncClient elasticsearchAsyncClient;
+    private final HedgedRequestExecutor hedgedRequestExecutor;
+    private final DocumentEmbeddingService documentEmbeddingService;
+    private final IndexGenerationService indexGenerationService;
+    private final ShardRoutingService shardRoutingService;
     private final ObjectMapper objectMapper;
+    private final ObjectMapper sourceMapper;
+    
+    // 正常写入持读锁，别名切换期间持写锁暂停写入
+    private final ReentrantReadWriteLock writeGate = new ReentrantReadWriteLock();
+    private final List<Consumer<Collection<String>>> writeListeners = new CopyOnWriteArrayList<>();
     
+    // 读别名（旧版本部署中也可能是具体索引名）
     @Value("${app.elasticsearch.index-name:documents}")
     private String indexName;
     
-    public ElasticsearchService(ElasticsearchClient elasticsearchClient) {
+    @Value("${app.elasticsearch.write-alias:${app.elasticsearch.index-name:documents}-write}")
+    private String writeAlias;
+    
+    @Value("${spring.ai.openai.embedding.options.dimensions:1536}")
+    private int dimensions;
+    
+    @Value("${app.elasticsearch.partitioning.enabled:false}")
+    private boolean partitioned;
+    
+    private TimePartitions timePartitions;
+    
+    // 读别名下的全部具体索引（分区模式下用于查询路由）
+    private volatile Set<String> knownIndices = Set.of();
+    
+    @Value("${app.ingest.bulk-size:200}")
+    private int bulkSize;
+    
+    @Value("${app.elasticsearch.index.shards:1}")
+    private int numberOfShards;
+    
+    @Value("${app.elasticsearch.index.replicas:1}")
+    private int numberOfReplicas;
+    
+    public ElasticsearchService(ElasticsearchClient elasticsearchClient,
+                               ElasticsearchAsyncClient elasticsearchAsyncClient,
+                               HedgedRequestExecutor hedgedRequestExecutor,
+                               DocumentEmbeddingService documentEmbeddingService,
+                               IndexGenerationService indexGenerationService,
+                               ShardRoutingService shardRoutingService) {
         this.elasticsearchClient = elasticsearchClient;
+        this.elasticsearchAsyncClient = elasticsearchAsyncClient;
+        this.hedgedRequestExecutor = hedgedRequestExecutor;
+        this.documentEmbeddingService = documentEmbeddingService;
+        this.indexGenerationService = indexGenerationService;
+        this.shardRoutingService = shardRoutingService;
         this.objectMapper = new ObjectMapper();
+        this.sourceMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    }
+    
+    @PostConstruct
+    public void init() {
+        timePartitions = new TimePartitions(indexName);
     }
     
     /**
-     * 确保索引存在
+     * 确保索引和读写别名存在
+     * 首次启动时创建 {index-name}-v1 并挂上读写别名；已有别名但缺少写别名时补上。
+     * 旧版本直接以具体索引名部署的，写别名指向该索引，可正常读写，但需先迁移到带版本号的索引才能在线重建
      */
     public void ensureIndexExists() throws IOException {
+        ensureIndexLayout();
+        shardRoutingService.checkReadiness();
+    }
+    
+    private void ensureIndexLayout() throws IOException {
         logger.info("检查索引是否存在: {}", indexName);
         
+        boolean aliasExists = elasticsearchClient.indices().existsAlias(e -> e.name(indexName)).value();
+        if (partitioned) {
+            if (aliasExists || !elasticsearchClient.indices().exists(e -> e.index(indexName)).value()) {
+                ensurePartitionLayout(aliasExists);
+                return;
+            }
+            logger.warn("索引 {} 是具体索引而非别名，无法按时间分区，按单索引运行", indexName);
+            partitioned = false;
+        }
+        
+        if (aliasExists) {
+            if (!elasticsearchClient.indices().existsAlias(e -> e.name(writeAlias)).value()) {
+                String current = resolveAlias(indexName);
+                elasticsearchClient.indices().updateAliases(u -> u
+                    .actions(a -> a.add(add -> add.index(current).alias(writeAlias).isWriteIndex(true))));
+                logger.info("已为索引 {} 添加写别名 {}", current, writeAlias);
+            }
+            logger.info("索引已存在: {} -> {}", indexName, resolveAliasIndices(indexName));
+            return;
+        }
+        
         ExistsRequest existsRequest = ExistsRequest.of(e -> e.index(indexName));
-        boolean exists = elasticsearchClient.indices().exists(existsRequest).value();
+        if (elasticsearchClient.indices().exists(existsRequest).value()) {
+            if (!elasticsearchClient.indices().existsAlias(e -> e.name(writeAlias)).value()) {
+                elasticsearchClient.indices().updateAliases(u -> u
+                    .actions(a -> a.add(add -> add.index(indexName).alias(writeAlias).isWriteIndex(true))));
+            }
+            logger.warn("索引 {} 是具体索引而非别名，在线重建前需先迁移到带版本号的索引", indexName);
+            return;
+        }
         
-        if (!exists) {
-            logger.info("索引不存在，正在创建: {}", indexName);
-            createIndex();
+        String initialIndex = indexName + "-v1";
+        logger.info("索引不存在，正在创建: {}", initialIndex);
+        createIndex(initialIndex, true, true);
+    }
+    
+    /**
+     * 分区模式：确保当前月份的分区存在，写别名（批量导入模式等按索引设置的操作使用）指向当月分区。
+     * 已有的版本索引保留在读别名下继续参与查询，其中的文档更新时仍写回原索引
+     */
+    private void ensurePartitionLayout(boolean aliasExists) throws IOException {
+        String currentPartition = timePartitions.partitionFor(LocalDateTime.now());
+        if (!aliasExists) {
+            logger.info("索引不存在，正在创建分区: {}", currentPartition);
+            createIndex(currentPartition, true, true);
         } else {
-            logger.info("索引已存在: {}", indexName);
+            ensurePartition(currentPartition);
+            if (!elasticsearchClient.indices().existsAlias(e -> e.name(writeAlias)).value()) {
+                elasticsearchClient.indices().updateAliases(u -> u
+                    .actions(a -> a.add(add -> add.index(currentPartition).alias(writeAlias).isWriteIndex(true))));
+            }
+        }
+        refreshPartitions();
+        logger.info("按月分区已开启: {} -> {}", indexName, knownIndices);
+    }
+    
+    /**
+     * 查询的routing：带路由字段唯一等值条件时返回该值，否则返回null（查询全部分片）
+     */
+    public String searchRouting(JsonNode query, SearchFilters filters) {
+        return shardRoutingService.routingFor(query, filters);
+    }
+    
+    /**
+     * 确保分区存在（挂上读别名）；多个写入线程或实例同时创建时以先创建者为准
+     */
+    synchronized void ensurePartition(String partition) throws IOException {
+        if (knownIndices.contains(partition)) {
+            return;
         }
+        if (!elasticsearchClient.indices().exists(e -> e.index(partition)).value()) {
+            try {
+                createIndex(partition, true, false);
+            } catch (ElasticsearchException e) {
+                if (!"resource_already_exists_exception".equals(e.error().type())) {
+                    throw e;
+                }
+            }
+        }
+        refreshPartitions();
+    }
+    
+    /**
+     * 重新读取读别名下的具体索引
+     */
+    public void refreshPartitions() throws IOException {
+        knownIndices = Set.copyOf(elasticsearchClient.indices().getAlias(g -> g.name(indexName)).result().keySet());
+    }
+    
+    public boolean isPartitioned() {
+        return partitioned;
+    }
+    
+    public TimePartitions getTimePartitions() {
+        return timePartitions;
+    }
+    
+    public Set<String> getKnownIndices() {
+        return knownIndices;
+    }
+    
+    /**
+     * 按过滤条件中的时间范围确定查询的索引
+     */
+    public List<String> searchIndices(SearchFilters filters) {
+        return searchIndices(null, filters);
+    }
+    
+    /**
+     * 按查询DSL和过滤条件中的 createTime 范围确定查询的索引：
+     * 未分区或没有时间范围时查询读别名，否则只查询与范围重叠的分区
+     */
+    public List<String> searchIndices(JsonNode query, SearchFilters filters) {
+        if (!partitioned || knownIndices.isEmpty()) {
+            return List.of(indexName);
+        }
+        TimePartitions.Bounds bounds = TimePartitions.extractRange(query, "createTime");
+        if (filters != null) {
+            bounds = bounds.intersect(TimePartitions.fromFilters(filters.getCreateTimeFrom(), filters.getCreateTimeTo()));
+        }
+        if (bounds.isUnbounded()) {
+            return List.of(indexName);
+        }
+        
+        List<String> targets = timePartitions.overlapping(bounds, knownIndices);
+        if (targets.isEmpty()) {
+            // 范围内没有任何分区，查询任一分区即可得到空结果
+            targets = List.of(knownIndices.iterator().next());
+        }
+        logger.debug("时间范围 {} ~ {} 路由到 {}/{} 个索引: {}",
+            bounds.from(), bounds.to(), targets.size(), knownIndices.size(), targets);
+        return targets;
+    }
+    
+    /**
+     * 读别名（查询使用的索引名）
+     */
+    public String getReadAlias() {
+        return indexName;
+    }
+    
+    public String getWriteAlias() {
+        return writeAlias;
+    }
+    
+    /**
+     * 解析别名当前指向的具体索引；传入的是具体索引名时原样返回
+     */
+    public String resolveAlias(String alias) throws IOException {
+        if (!elasticsearchClient.indices().existsAlias(e -> e.name(alias)).value()) {
+            return alias;
+        }
+        GetAliasResponse response = elasticsearchClient.indices().getAlias(g -> g.name(alias));
+        if (response.result().size() != 1) {
+            throw new IllegalStateException("别名 " + alias + " 指向多个索引: " + response.result().keySet());
+        }
+        return response.result().keySet().iterator().next();
+    }
+    
+    /**
+     * 别名当前指向的全部具体索引（按名称排序）；传入的是具体索引名时返回其本身
+     */
+    public List<String> resolveAliasIndices(String alias) throws IOException {
+        if (!elasticsearchClient.indices().existsAlias(e -> e.name(alias)).value()) {
+            return List.of(alias);
+        }
+        return elasticsearchClient.indices().getAlias(g -> g.name(alias)).result().keySet().stream()
+            .sorted()
+            .toList();
     }
     
     /**
      * 创建索引
+     *
+     * @param name          具体索引名
+     * @param withReadAlias  是否挂上读别名（重建索引时切换前不挂别名）
+     * @param withWriteAlias 是否挂上写别名
      */
-    private void createIndex() throws IOException {
+    void createIndex(String name, boolean withReadAlias, boolean withWriteAlias) throws IOException {
         // 定义索引映射（包含向量字段）
         String mapping = """
             {
               "properties": {
+                "id": {
+                  "type": "keyword"
+                },
                 "title": {
                   "type": "text",
                   "analyzer": "standard",
@@ -91,54 +369,128 @@ public class ElasticsearchService {
                 "author": {
                   "type": "keyword"
                 },
+                "titleHash": {
+                  "type": "keyword",
+                  "index": false
+                },
+                "contentHash": {
+                  "type": "keyword",
+                  "index": false
+                },
                 "titleEmbedding": {
                   "type": "dense_vector",
-                  "dims": 1536,
+                  "dims": %1$d,
                   "index": true,
                   "similarity": "cosine"
                 },
                 "contentEmbedding": {
                   "type": "dense_vector",
-                  "dims": 1536,
+                  "dims": %1$d,
                   "index": true,
                   "similarity": "cosine"
                 },
                 "combinedEmbedding": {
                   "type": "dense_vector",
-                  "dims": 1536,
+                  "dims": %1$d,
                   "index": true,
                   "similarity": "cosine"
+                },
+                "passages": {
+                  "type": "nested",
+                  "properties": {
+                    "text": {
+                      "type": "text",
+                      "analyzer": "standard"
+                    },
+                    "offset": {
+                      "type": "integer"
+                    },
+                    "embedding": {
+                      "type": "dense_vector",
+                      "dims": %1$d,
+                      "index": true,
+                      "similarity": "cosine"
+                    }
+                  }
                 }
               }
             }
-            """;
+            """.formatted(dimensions);
         
-        CreateIndexRequest createIndexRequest = CreateIndexRequest.of(c -> c
-            .index(indexName)
-            .mappings(m -> m.withJson(new StringReader(mapping)))
-        );
+        CreateIndexRequest createIndexRequest = CreateIndexRequest.of(c -> {
+            c.index(name)
+                .settings(s -> s
+                    .numberOfShards(String.valueOf(numberOfShards))
+                    .numberOfReplicas(String.valueOf(numberOfReplicas))
+                )
+                .mappings(m -> {
+                    m.withJson(new StringReader(mapping));
+                    // 按路由写入的索引在 _meta 中标记，全部索引都有标记后查询才使用路由
+                    return shardRoutingService.isEnabled() ? m.meta(shardRoutingService.indexMeta()) : m;
+                });
+            if (withReadAlias) {
+                c.aliases(indexName, Alias.of(a -> a));
+            }
+            if (withWriteAlias) {
+                c.aliases(writeAlias, Alias.of(a -> a.isWriteIndex(true)));
+            }
+            return c;
+        });
         
         elasticsearchClient.indices().create(createIndexRequest);
-        logger.info("索引创建成功: {}", indexName);
+        indexGenerationService.bump();
+        logger.info("索引创建成功: {}（分片 {}，副本 {}，向量维度 {}）", name, numberOfShards, numberOfReplicas, dimensions);
     }
     
     /**
      * 执行DSL查询
      */
     public SearchResponse<Document> searchWithDsl(String dslJson, int from, int size) throws IOException {
+        return searchWithDsl(dslJson, from, size, null);
+    }
+    
+    /**
+     * 执行DSL查询，并将结构化过滤条件作为filter上下文附加到查询上
+     */
+    public SearchResponse<Document> searchWithDsl(String dslJson, int from, int size, 
+                                                  SearchFilters filters) throws IOException {
         logger.info("执行DSL查询: {}", dslJson);
+        List<Query> filterQueries = buildFilterQueries(filters);
+        
+        // 存储模板调用（{"id": ..., "params": {...}}）走search template API
+        JsonNode dslNode = objectMapper.readTree(dslJson);
+        if (dslNode.has("id") && !dslNode.has("query")) {
+            Map<String, Object> params = dslNode.has("params")
+                ? objectMapper.convertValue(dslNode.get("params"), new TypeReference<Map<String, Object>>() {})
+                : new HashMap<>();
+            return searchWithTemplate(dslNode.get("id").asText(), params, from, size, filters);
+        }
         
-        // 解析DSL查询
-        Query query = Query.of(q -> q.withJson(new StringReader(dslJson)));
+        // 分区模式下按DSL和过滤条件中的时间范围只查询重叠的分区
+        JsonNode queryNode = dslNode.has("query") ? dslNode.get("query") : dslNode;
+        List<String> indices = searchIndices(queryNode, filters);
+        // 带路由字段等值条件时只查询该值所在的分片
+        String routing = shardRoutingService.routingFor(queryNode, filters);
         
-        SearchRequest searchRequest = SearchRequest.of(s -> s
-            .index(indexName)
+        // 包含聚合的统计类查询
+        JsonNode aggsNode = dslNode.has("aggs") ? dslNode.get("aggs") : dslNode.get("aggregations");
+        if (aggsNode != null && aggsNode.isObject() && aggsNode.size() > 0) {
+            return searchAggregations(dslNode, aggsNode, filterQueries, indices, routing);
+        }
+        
+        // 解析DSL中的query部分
+        String queryJson = dslNode.has("query") ? dslNode.get("query").toString() : dslJson;
+        Query query = applyFilters(Query.of(q -> q.withJson(new StringReader(queryJson))), filterQueries);
+        
+        SearchResponse<Document> response = hedgedSearch(preference -> SearchRequest.of(s -> s
+            .index(indices)
+            .routing(routing)
             .query(query)
             .from(from)
             .size(size)
-        );
-        
-        SearchResponse<Document> response = elasticsearchClient.search(searchRequest, Document.class);
+            .source(source -> source.filter(f -> f.excludes("*Embedding", "passages")))
+            .preference(preference)
+        ));
         
         logger.info("查询完成，找到 {} 个结果，耗时: {}ms", 
             response.hits().total().value(), response.took());
@@ -146,6 +498,178 @@ public class ElasticsearchService {
         return response;
     }
     
+    /**
+     * 执行聚合查询
+     * 只返回聚合结果（size=0），开启分片请求缓存，并使用由DSL决定的稳定preference，
+     * 使相同的统计问题总是落到相同的分片副本上，从而命中请求缓存
+     */
+    private SearchResponse<Document> searchAggregations(JsonNode dslNode, JsonNode aggsNode, 
+                                                        List<Query> filterQueries,
+                                                        List<String> indices, String routing) throws IOException {
+        Map<String, Aggregation> aggregations = new LinkedHashMap<>();
+        aggsNode.fields().forEachRemaining(entry -> aggregations.put(entry.getKey(),
+            Aggregation.of(a -> a.withJson(new StringReader(entry.getValue().toString())))));
+        
+        Query query = applyFilters(dslNode.has("query")
+            ? Query.of(q -> q.withJson(new StringReader(dslNode.get("query").toString())))
+            : Query.of(q -> q.matchAll(m -> m)), filterQueries);
+        
+        String preference = "agg-" + Integer.toHexString((dslNode.toString() + filterQueries).hashCode());
+        
+        // 不走对冲：对冲请求使用不同的preference，会绕过请求缓存
+        SearchResponse<Document> response = elasticsearchClient.search(s -> s
+            .index(indices)
+            .routing(routing)
+            .query(query)
+            .aggregations(aggregations)
+            .size(0)
+            .requestCache(true)
+            .preference(preference)
+        , Document.class);
+        
+        logger.info("聚合查询完成，匹配 {} 个文档，{} 个聚合，耗时: {}ms", 
+            response.hits().total().value(), response.aggregations().size(), response.took());
+        
+        return response;
+    }
+    
+    /**
+     * 将结构化过滤条件转换为filter子句（不参与打分，ES可缓存过滤位图）
+     */
+    public List<Query> buildFilterQueries(SearchFilters filters) {
+        List<Query> filterQueries = new ArrayList<>();
+        if (filters == null || filters.isEmpty()) {
+            return filterQueries;
+        }
+        
+        if (hasText(filters.getCategory())) {
+            filterQueries.add(Query.of(q -> q.term(t -> t.field("category").value(filters.getCategory()))));
+        }
+        if (hasText(filters.getAuthor())) {
+            filterQueries.add(Query.of(q -> q.term(t -> t.field("author").value(filters.getAuthor()))));
+        }
+        if (filters.getTags() != null && !filters.getTags().isEmpty()) {
+            List<FieldValue> tagValues = filters.getTags().stream()
+                .map(FieldValue::of)
+                .collect(Collectors.toList());
+            filterQueries.add(Query.of(q -> q.terms(t -> t.field("tags").terms(tv -> tv.value(tagValues)))));
+        }
+        if (hasText(filters.getCreateTimeFrom()) || hasText(filters.getCreateTimeTo())) {
+            filterQueries.add(Query.of(q -> q.range(r -> {
+                r.field("createTime");
+                if (hasText(filters.getCreateTimeFrom())) {
+                    r.gte(JsonData.of(filters.getCreateTimeFrom()));
+                }
+                if (hasText(filters.getCreateTimeTo())) {
+                    r.lte(JsonData.of(filters.getCreateTimeTo()));
+                }
+                return r;
+            })));
+        }
+        return filterQueries;
+    }
+    
+    /**
+     * 将过滤条件以filter上下文包装到查询外层
+     */
+    public Query applyFilters(Query query, List<Query> filterQueries) {
+        if (filterQueries == null || filterQueries.isEmpty()) {
+            return query;
+        }
+        return Query.of(q -> q.bool(b -> b.must(query).filter(filterQueries)));
+    }
+    
+    private boolean hasText(String value) {
+        return value != null && !value.isBlank();
+    }
+    
+    /**
+     * 将搜索响应中的聚合结果转换为普通Map，无聚合时返回null
+     */
+    public Map<String, Object> extractAggregations(SearchResponse<Document> searchResponse) {
+        if (searchResponse == null || searchResponse.aggregations() == null 
+                || searchResponse.aggregations().isEmpty()) {
+            return null;
+        }
+        
+        JsonpMapper mapper = elasticsearchClient._jsonpMapper();
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = mapper.jsonProvider().createGenerator(writer)) {
+            generator.writeStartObject();
+            searchResponse.aggregations().forEach((name, aggregate) -> {
+                generator.writeKey(name);
+                aggregate.serialize(generator, mapper);
+            });
+            generator.writeEnd();
+        }
+        
+        try {
+            return objectMapper.readValue(writer.toString(), new TypeReference<Map<String, Object>>() {});
+        } catch (IOException e) {
+            logger.error("解析聚合结果失败: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 使用存储搜索模板执行查询，只传输模板ID和参数
+     */
+    public SearchResponse<Document> searchWithTemplate(String templateId, Map<String, Object> params,
+                                                       int from, int size) throws IOException {
+        return searchWithTemplate(templateId, params, from, size, null);
+    }
+    
+    /**
+     * 使用存储搜索模板执行查询，结构化过滤条件通过模板的filters参数传入
+     */
+    public SearchResponse<Document> searchWithTemplate(String templateId, Map<String, Object> params,
+                                                       int from, int size, SearchFilters filters) throws IOException {
+        Map<String, JsonData> templateParams = new HashMap<>();
+        params.forEach((key, value) -> templateParams.put(key, JsonData.of(value)));
+        templateParams.put("from", JsonData.of(from));
+        templateParams.put("size", JsonData.of(size));
+        templateParams.put("filters", JsonData.of(toJsonValues(buildFilterQueries(filters))));
+        
+        List<String> indices = searchIndices(filters);
+        String routing = shardRoutingService.routingFor(null, filters);
+        SearchTemplateResponse<Document> templateResponse = hedgedRequestExecutor.execute(preference -> 
+            elasticsearchAsyncClient.searchTemplate(s -> s
+                .index(indices)
+                .routing(routing)
+                .id(templateId)
+                .params(templateParams)
+                .preference(preference)
+            , Document.class)
+        );
+        
+        logger.info("模板查询完成 [{}]，找到 {} 个结果，耗时: {}ms", 
+            templateId, templateResponse.hits().total().value(), templateResponse.took());
+        
+        // 转换为普通搜索响应，调用方无需区分两种查询方式
+        return SearchResponse.of(r -> r
+            .took(templateResponse.took())
+            .timedOut(templateResponse.timedOut())
+            .shards(templateResponse.shards())
+            .hits(templateResponse.hits())
+        );
+    }
+    
+    /**
+     * 将查询对象序列化为普通JSON结构，用于作为模板参数传递
+     */
+    private List<Object> toJsonValues(List<Query> queries) throws IOException {
+        JsonpMapper mapper = elasticsearchClient._jsonpMapper();
+        List<Object> values = new ArrayList<>();
+        for (Query query : queries) {
+            StringWriter writer = new StringWriter();
+            try (JsonGenerator generator = mapper.jsonProvider().createGenerator(writer)) {
+                query.serialize(generator, mapper);
+            }
+            values.add(objectMapper.readValue(writer.toString(), Object.class));
+        }
+        return values;
+    }
+    
     /**
      * 将搜索结果转换为文档列表
      */
@@ -158,43 +682,578 @@ public class ElasticsearchService {
     /**
      * 索引单个文档
      */
-    public void indexDocument(Document document) throws IOException {
+    public Map<String, Object> indexDocument(Document document) throws IOException {
         logger.info("索引文档: {}", document.getTitle());
+        return indexDocuments(List.of(document));
+    }
+    
+    /**
+     * 批量幂等写入文档
+     * 文档ID取请求中给定的ID，未给定时取标题和正文的内容哈希，重复提交同一批文档不会产生重复数据。
+     * 写入前通过 _mget 批量读取已存储的标题/正文哈希，只为发生变化的字段调用向量模型；
+     * 写入使用 update + doc_as_upsert + detect_noop，内容未变化的文档在ES端为空操作
+     *
+     * @return 写入统计（新建、更新、未变化、重新向量化的文档数）
+     */
+    public Map<String, Object> indexDocuments(List<Document> documents) throws IOException {
+        logger.info("批量写入 {} 个文档", documents.size());
         
-        IndexRequest<Document> indexRequest = IndexRequest.of(i -> i
-            .index(indexName)
-            .document(document)
-        );
+        long created = 0;
+        long updated = 0;
+        long noop = 0;
+        long embedded = 0;
+        
+        for (int start = 0; start < documents.size(); start += bulkSize) {
+            List<Document> batch = documents.subList(start, Math.min(start + bulkSize, documents.size()));
+            BatchResult result = writeBatch(prepareBatch(batch));
+            if (result.failed() > 0) {
+                throw new IOException("批量写入失败 " + result.failed() + " 个文档");
+            }
+            created += result.created();
+            updated += result.updated();
+            noop += result.noop();
+            embedded += result.embedded();
+        }
         
-        var response = elasticsearchClient.index(indexRequest);
-        logger.info("文档索引成功，ID: {}", response.id());
+        logger.info("批量写入完成: 新建 {}，更新 {}，未变化 {}，重新向量化 {}", created, updated, noop, embedded);
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("created", created);
+        result.put("updated", updated);
+        result.put("noop", noop);
+        result.put("embedded", embedded);
+        return result;
+    }
+    
+    public int getBulkSize() {
+        return bulkSize;
     }
     
     /**
-     * 批量索引文档
+     * 已完成向量化、等待写入的一批文档（failures 为向量化失败的字段，其指纹不写入）
      */
-    public void indexDocuments(List<Document> documents) throws IOException {
-        logger.info("批量索引 {} 个文档", documents.size());
+    record PreparedBatch(List<Document> documents, Map<Document, String[]> fingerprints,
+                         Map<String, JsonNode> stored, Set<Document> titleChanged, Set<Document> contentChanged,
+                         DocumentEmbeddingService.EmbeddingFailures failures) {
         
-        for (Document document : documents) {
-            indexDocument(document);
+        boolean reembedded(Document document) {
+            return titleChanged.contains(document) || contentChanged.contains(document);
+        }
+    }
+    
+    /**
+     * 批量请求中的操作类型：文档写入、路由变化时删除原分片的副本、清除过期字段
+     */
+    private enum BulkItemKind { DOCUMENT, REMOVE_PREVIOUS_COPY, CLEAR_FIELDS }
+    
+    /**
+     * 一批文档的写入结果
+     */
+    record BatchResult(long created, long updated, long noop, long embedded, long failed, String firstError) {}
+    
+    /**
+     * 写入准备阶段：分配稳定ID、比对已存储的字段指纹，并只为变化的字段生成向量
+     */
+    PreparedBatch prepareBatch(List<Document> batch) throws IOException {
+        return prepareBatch(batch, writeAlias, true);
+    }
+    
+    /**
+     * 针对指定索引准备写入
+     *
+     * @param index 比对指纹的目标索引
+     * @param embed 是否为变化的字段生成向量；为false时沿用文档上已有的向量（重建索引时复制向量）
+     */
+    PreparedBatch prepareBatch(List<Document> batch, String index, boolean embed) throws IOException {
+        // 1. 分配稳定ID并计算字段指纹
+        Map<Document, String[]> fingerprints = new IdentityHashMap<>();
+        for (Document document : batch) {
+            String titleHash = sha256(document.getTitle());
+            String contentHash = sha256(document.getContent());
+            if (document.getId() == null || document.getId().isBlank()) {
+                document.setId(sha256(titleHash + contentHash));
+            }
+            fingerprints.put(document, new String[]{titleHash, contentHash});
+        }
+        
+        // 2. 批量读取已存储的指纹，判断哪些字段需要重新向量化
+        Map<String, String> routings = new HashMap<>();
+        for (Document document : batch) {
+            routings.put(document.getId(), shardRoutingService.routingFor(document));
+        }
+        Map<String, JsonNode> stored = fetchSources(index, batch.stream().map(Document::getId).distinct().toList(),
+            shardRoutingService.isEnabled()
+                ? List.of("titleHash", "contentHash", "createTime")
+                : List.of("titleHash", "contentHash"), routings);
+        Set<Document> titleChanged = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Document> contentChanged = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Document document : batch) {
+            JsonNode existing = stored.get(document.getId());
+            String[] hashes = fingerprints.get(document);
+            if (existing == null || !hashes[0].equals(existing.path("titleHash").asText())) {
+                titleChanged.add(document);
+            }
+            if (existing == null || !hashes[1].equals(existing.path("contentHash").asText())) {
+                contentChanged.add(document);
+            }
+            // 路由字段变化的文档要整体写入新分片，向量和段落一并写入（向量存储命中，不调用模型）
+            if (shardRoutingService.routingChanged(existing, document)) {
+                titleChanged.add(document);
+                contentChanged.add(document);
+            }
         }
         
-        logger.info("批量索引完成");
+        if (!embed) {
+            return new PreparedBatch(batch, fingerprints, stored, titleChanged, contentChanged,
+                DocumentEmbeddingService.EmbeddingFailures.NONE);
+        }
+        
+        // 3. 只有一个字段变化时，读取另一字段的已有向量用于计算组合向量
+        List<String> partialIds = batch.stream()
+            .filter(document -> stored.containsKey(document.getId()))
+            .filter(document -> titleChanged.contains(document) != contentChanged.contains(document))
+            .map(Document::getId)
+            .distinct()
+            .toList();
+        Map<String, JsonNode> storedVectors = fetchSources(index, partialIds,
+            List.of("titleEmbedding", "contentEmbedding"), routings);
+        for (Document document : batch) {
+            JsonNode vectors = storedVectors.get(document.getId());
+            if (vectors == null) {
+                continue;
+            }
+            if (!titleChanged.contains(document)) {
+                document.setTitleEmbedding(toVector(vectors.get("titleEmbedding")));
+            }
+            if (!contentChanged.contains(document)) {
+                document.setContentEmbedding(toVector(vectors.get("contentEmbedding")));
+            }
+        }
+        
+        DocumentEmbeddingService.EmbeddingFailures failures =
+            documentEmbeddingService.embedDocuments(batch, titleChanged::contains, contentChanged::contains);
+        return new PreparedBatch(batch, fingerprints, stored, titleChanged, contentChanged, failures);
+    }
+    
+    /**
+     * 写入阶段：以局部更新方式写入（新文档upsert，已有文档保留原创建时间），
+     * 返回逐条统计，单个文档失败不影响同批其他文档
+     */
+    BatchResult writeBatch(PreparedBatch prepared) throws IOException {
+        writeGate.readLock().lock();
+        try {
+            BatchResult result = writeBatch(prepared, writeAlias);
+            List<String> ids = prepared.documents().stream().map(Document::getId).toList();
+            writeListeners.forEach(listener -> listener.accept(ids));
+            return result;
+        } finally {
+            writeGate.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 写入指定索引（重建索引时直接写入新索引，不经过写别名）
+     */
+    BatchResult writeBatch(PreparedBatch prepared, String index) throws IOException {
+        boolean routeByTime = partitioned && index.equals(writeAlias);
+        List<BulkOperation> operations = new ArrayList<>();
+        // 与 operations 一一对应的操作类型，用于逐条统计结果
+        List<BulkItemKind> kinds = new ArrayList<>();
+        Set<String> partitions = new HashSet<>();
+        Set<String> moved = new HashSet<>();
+        for (Document document : prepared.documents()) {
+            JsonNode existing = prepared.stored().get(document.getId());
+            boolean exists = existing != null;
+            boolean routingChanged = shardRoutingService.routingChanged(existing, document);
+            Map<String, Object> source = toIndexSource(document, prepared.reembedded(document));
+            String[] hashes = prepared.fingerprints().get(document);
+            // 向量化失败的字段不写入指纹，下次提交同样内容时会重新向量化
+            boolean titleFailed = prepared.failures().title().contains(document);
+            boolean contentFailed = prepared.failures().content().contains(document);
+            if (!titleFailed) {
+                source.put("titleHash", hashes[0]);
+            }
+            if (!contentFailed) {
+                source.put("contentHash", hashes[1]);
+            }
+            if (routingChanged) {
+                // 移到新分片的文档保留原创建时间
+                if (existing.hasNonNull("createTime")) {
+                    source.put("createTime", existing.get("createTime").asText());
+                }
+            } else if (exists) {
+                source.remove("createTime");
+            } else if (!source.containsKey("createTime")) {
+                source.put("createTime", LocalDateTime.now().format(CREATE_TIME_FORMAT));
+            }
+            
+            // 分区模式：已有文档写回所在索引，新文档写入 createTime 所在月份的分区
+            String target = index;
+            if (routeByTime) {
+                target = existing != null && existing.hasNonNull("_index")
+                    ? existing.get("_index").asText()
+                    : timePartitions.partitionFor(parseCreateTime(source.get("createTime")));
+                partitions.add(target);
+            }
+            String documentIndex = target;
+            
+            // 路由字段变化：从原分片删除，再写入新值对应的分片
+            String routing = shardRoutingService.routingFor(document);
+            if (routingChanged) {
+                String previousRouting = existing.hasNonNull("_routing") ? existing.get("_routing").asText() : null;
+                operations.add(BulkOperation.of(op -> op.delete(d -> d
+                    .index(documentIndex)
+                    .id(document.getId())
+                    .routing(previousRouting)
+                )));
+                kinds.add(BulkItemKind.REMOVE_PREVIOUS_COPY);
+                moved.add(document.getId());
+            }
+            
+            operations.add(BulkOperation.of(op -> op.update(u -> u
+                .index(documentIndex)
+                .id(document.getId())
+                .routing(routing)
+                .action(action -> action
+                    .doc(source)
+                    .docAsUpsert(true)
+                    .detectNoop(true)
+                )
+            )));
+            kinds.add(BulkItemKind.DOCUMENT);
+            
+            // 已有文档：清除失败字段的旧指纹，以及重新向量化后为空的旧向量
+            List<String> staleFields = exists && !routingChanged
+                ? staleFields(document, prepared, titleFailed, contentFailed) : List.of();
+            if (!staleFields.isEmpty()) {
+                operations.add(BulkOperation.of(op -> op.update(u -> u
+                    .index(documentIndex)
+                    .id(document.getId())
+                    .routing(routing)
+                    .action(action -> action.script(script -> script
+                        .source(REMOVE_FIELDS_SCRIPT)
+                        .params("fields", JsonData.of(staleFields))
+                    ))
+                )));
+                kinds.add(BulkItemKind.CLEAR_FIELDS);
+            }
+        }
+        
+        for (String partition : partitions) {
+            ensurePartition(partition);
+        }
+        
+        BulkResponse response;
+        try {
+            response = elasticsearchClient.bulk(b -> b.operations(operations));
+        } finally {
+            // 写入可能已部分生效，无论成败都使结果缓存失效；写入的文档在索引刷新后才可见，
+            // 在一个刷新间隔之后递增代数，否则刷新前的查询会把旧结果缓存在新代数下。
+            // 重建时写入的目标索引尚不可读，切换别名时统一递增
+            if (index.equals(writeAlias)) {
+                indexGenerationService.bumpAfterRefresh();
+            }
+        }
+        
+        long created = 0;
+        long updated = 0;
+        long noop = 0;
+        long failed = 0;
+        String firstError = null;
+        Set<String> staleCopies = new HashSet<>();
+        for (int i = 0; i < response.items().size(); i++) {
+            BulkResponseItem item = response.items().get(i);
+            BulkItemKind kind = kinds.get(i);
+            if (kind == BulkItemKind.CLEAR_FIELDS) {
+                if (item.error() != null) {
+                    logger.warn("清除文档 {} 的过期字段失败: {}", item.id(), item.error().reason());
+                }
+                continue;
+            }
+            if (kind == BulkItemKind.REMOVE_PREVIOUS_COPY) {
+                // 原分片的副本未删除时文档在两个分片上各有一份，计为失败，重新提交同一文档时会再次删除
+                if (item.error() != null) {
+                    staleCopies.add(item.id());
+                    failed++;
+                    String error = "文档 " + item.id() + " 从原分片删除失败: " + item.error().reason();
+                    logger.error(error);
+                    if (firstError == null) {
+                        firstError = error;
+                    }
+                }
+                continue;
+            }
+            if (staleCopies.contains(item.id())) {
+                continue;
+            }
+            if (item.error() != null) {
+                failed++;
+                if (firstError == null) {
+                    firstError = item.error().reason();
+                }
+                continue;
+            }
+            switch (String.valueOf(item.result())) {
+                case "created" -> {
+                    if (moved.contains(item.id())) {
+                        updated++;
+                    } else {
+                        created++;
+                    }
+                }
+                case "noop" -> noop++;
+                default -> updated++;
+            }
+        }
+        if (failed > 0) {
+            logger.error("批量写入失败 {} 个文档，首个错误: {}", failed, firstError);
+        }
+        
+        long embedded = prepared.documents().stream().filter(prepared::reembedded).count();
+        return new BatchResult(created, updated, noop, embedded, failed, firstError);
+    }
+    
+    /**
+     * 需要从已有文档中删除的字段：向量化失败字段的指纹，以及重新向量化的字段中结果为空的向量
+     */
+    private List<String> staleFields(Document document, PreparedBatch prepared, boolean titleFailed, boolean contentFailed) {
+        List<String> fields = new ArrayList<>();
+        if (titleFailed) {
+            fields.add("titleHash");
+        }
+        if (contentFailed) {
+            fields.add("contentHash");
+        }
+        if (prepared.titleChanged().contains(document) && document.getTitleEmbedding() == null) {
+            fields.add("titleEmbedding");
+        }
+        if (prepared.contentChanged().contains(document) && document.getContentEmbedding() == null) {
+            fields.add("contentEmbedding");
+        }
+        if (prepared.reembedded(document) && document.getCombinedEmbedding() == null) {
+            fields.add("combinedEmbedding");
+        }
+        return fields;
+    }
+    
+    private LocalDateTime parseCreateTime(Object value) {
+        if (value != null) {
+            try {
+                return LocalDateTime.parse(value.toString(), CREATE_TIME_FORMAT);
+            } catch (DateTimeParseException e) {
+                logger.debug("无法解析创建时间 {}，写入当月分区", value);
+            }
+        }
+        return LocalDateTime.now();
+    }
+    
+    /**
+     * 注册写入监听：通过写别名写入的每一批文档ID都会通知监听者（重建索引期间追踪增量写入）
+     */
+    public void addWriteListener(Consumer<Collection<String>> listener) {
+        writeListeners.add(listener);
+    }
+    
+    /**
+     * 暂停写入执行操作：等待进行中的批次完成，操作期间新的写入阻塞等待
+     */
+    public <T> T pauseWrites(IOCallable<T> action) throws IOException {
+        writeGate.writeLock().lock();
+        try {
+            return action.call();
+        } finally {
+            writeGate.writeLock().unlock();
+        }
+    }
+    
+    @FunctionalInterface
+    public interface IOCallable<T> {
+        T call() throws IOException;
+    }
+    
+    /**
+     * 通过 _mget 批量读取文档的部分字段，返回 ID -> _source，不存在的文档不在结果中。
+     * 分区模式或开启路由时改为按ID搜索，结果中附带所在索引（_index）和路由（_routing）
+     */
+    Map<String, JsonNode> fetchSources(String index, List<String> ids, List<String> fields) throws IOException {
+        return fetchSources(index, ids, fields, Map.of());
+    }
+    
+    /**
+     * 读取文档的部分字段
+     *
+     * @param routings 文档ID -> 按当前字段值计算的routing，按ID搜索未找到的文档用它做实时读取
+     */
+    Map<String, JsonNode> fetchSources(String index, List<String> ids, List<String> fields,
+                                       Map<String, String> routings) throws IOException {
+        Map<String, JsonNode> sources = new HashMap<>();
+        if (ids.isEmpty()) {
+            return sources;
+        }
+        
+        // 分区模式下文档可能位于任一分区，通过读别名按ID搜索，并记下所在索引；
+        // 开启路由时文档所在分片取决于路由值（字段值可能已变化），同样按ID搜索全部分片，并记下原路由
+        boolean acrossPartitions = partitioned && index.equals(writeAlias);
+        if (acrossPartitions || shardRoutingService.isEnabled()) {
+            String searchIndex = acrossPartitions ? indexName : index;
+            searchByIds(searchIndex, ids, fields, sources);
+            
+            // 搜索只能看到已刷新的文档：未找到的ID再用实时的 _mget 查找（分区模式下在各分区中查找，
+            // 开启路由时使用按当前字段值计算的routing），避免刚写入（或导入模式下尚未刷新）的文档
+            // 被当作新文档写入另一个分区或分片。刷新间隔内路由字段又发生变化的文档仍无法找到
+            List<String> missing = ids.stream().filter(id -> !sources.containsKey(id)).toList();
+            if (!missing.isEmpty()) {
+                getFromIndices(acrossPartitions ? knownIndices : List.of(index), missing, fields, routings, sources);
+            }
+            return sources;
+        }
+        
+        MgetResponse<JsonNode> response = elasticsearchClient.mget(m -> m
+            .index(index)
+            .ids(ids)
+            .sourceIncludes(fields)
+        , JsonNode.class);
+        
+        for (MultiGetResponseItem<JsonNode> item : response.docs()) {
+            if (item.isResult() && item.result().found() && item.result().source() != null) {
+                sources.put(item.result().id(), item.result().source());
+            }
+        }
+        return sources;
+    }
+    
+    /**
+     * 按ID搜索，结果附带所在索引（_index）和路由（_routing）
+     */
+    private void searchByIds(String index, List<String> ids, List<String> fields,
+                             Map<String, JsonNode> sources) throws IOException {
+        SearchResponse<JsonNode> response = elasticsearchClient.search(s -> s
+            .index(index)
+            .query(q -> q.ids(i -> i.values(ids)))
+            .size(ids.size())
+            .source(source -> source.filter(f -> f.includes(fields)))
+        , JsonNode.class);
+        for (Hit<JsonNode> hit : response.hits().hits()) {
+            ObjectNode source = hit.source() instanceof ObjectNode node ? node : objectMapper.createObjectNode();
+            source.put("_index", hit.index());
+            if (hit.routing() != null) {
+                source.put("_routing", hit.routing());
+            }
+            sources.put(hit.id(), source);
+        }
+    }
+    
+    /**
+     * 通过实时的 _mget 在每个索引中查找文档（没有routing的按文档ID路由），结果附带所在索引（_index）和路由（_routing）
+     */
+    private void getFromIndices(Collection<String> indices, List<String> ids, List<String> fields,
+                                Map<String, String> routings, Map<String, JsonNode> sources) throws IOException {
+        if (indices.isEmpty()) {
+            return;
+        }
+        MgetResponse<JsonNode> response = elasticsearchClient.mget(m -> {
+            for (String target : indices) {
+                for (String id : ids) {
+                    m.docs(d -> d.index(target).id(id).routing(routings.get(id)));
+                }
+            }
+            return m.sourceIncludes(fields);
+        }, JsonNode.class);
+        
+        for (MultiGetResponseItem<JsonNode> item : response.docs()) {
+            if (item.isResult() && item.result().found()) {
+                ObjectNode source = item.result().source() instanceof ObjectNode node
+                    ? node : objectMapper.createObjectNode();
+                source.put("_index", item.result().index());
+                if (item.result().routing() != null) {
+                    source.put("_routing", item.result().routing());
+                }
+                sources.putIfAbsent(item.result().id(), source);
+            }
+        }
+    }
+    
+    float[] toVector(JsonNode node) {
+        if (node == null || !node.isArray() || node.isEmpty()) {
+            return null;
+        }
+        float[] vector = new float[node.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) node.get(i).asDouble();
+        }
+        return vector;
+    }
+    
+    private String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((text == null ? "" : text.trim()).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+    
+    /**
+     * 构建写入索引的文档内容（包含API响应中隐藏的向量和段落字段，空值字段不写入）
+     *
+     * @param withVectors 是否写入向量字段（字段未变化时不重复传输向量）
+     */
+    private Map<String, Object> toIndexSource(Document document, boolean withVectors) {
+        Map<String, Object> source = sourceMapper.convertValue(document, new TypeReference<Map<String, Object>>() {});
+        if (!withVectors) {
+            return source;
+        }
+        
+        putIfPresent(source, "titleEmbedding", document.getTitleEmbedding());
+        putIfPresent(source, "contentEmbedding", document.getContentEmbedding());
+        putIfPresent(source, "combinedEmbedding", document.getCombinedEmbedding());
+        
+        // 正文重新切分后整体替换段落（局部更新对数组字段是整体覆盖）
+        if (document.getPassages() != null) {
+            source.put("passages", sourceMapper.convertValue(document.getPassages(), 
+                new TypeReference<List<Map<String, Object>>>() {}));
+        }
+        return source;
+    }
+    
+    private void putIfPresent(Map<String, Object> source, String field, float[] vector) {
+        if (vector != null && vector.length > 0) {
+            source.put(field, vector);
+        }
     }
     
     /**
      * 执行原始查询（用于测试）
      */
     public SearchResponse<Document> searchAll(int from, int size) throws IOException {
-        SearchRequest searchRequest = SearchRequest.of(s -> s
-            .index(indexName)
-            .query(q -> q.matchAll(m -> m))
+        return searchAll(from, size, null);
+    }
+    
+    /**
+     * 按结构化过滤条件列出文档
+     */
+    public SearchResponse<Document> searchAll(int from, int size, SearchFilters filters) throws IOException {
+        Query query = applyFilters(Query.of(q -> q.matchAll(m -> m)), buildFilterQueries(filters));
+        List<String> indices = searchIndices(filters);
+        String routing = shardRoutingService.routingFor(null, filters);
+        return hedgedSearch(preference -> SearchRequest.of(s -> s
+            .index(indices)
+            .routing(routing)
+            .query(query)
             .from(from)
             .size(size)
-        );
-        
-        return elasticsearchClient.search(searchRequest, Document.class);
+            .source(source -> source.filter(f -> f.excludes("*Embedding", "passages")))
+            .preference(preference)
+        ));
+    }
+    
+    /**
+     * 执行可对冲的搜索请求：主请求超过延迟阈值未返回时，以不同的preference发送副本请求
+     */
+    private SearchResponse<Document> hedgedSearch(Function<String, SearchRequest> requestFactory) throws IOException {
+        return hedgedRequestExecutor.execute(preference -> 
+            elasticsearchAsyncClient.search(requestFactory.apply(preference), Document.class));
     }
     
     /**
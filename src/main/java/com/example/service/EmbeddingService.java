@@ -1,15 +1,21 @@
 package com.example.service;
 
+import com.example.resilience.CallNotPermittedException;
+import com.example.resilience.CircuitBreaker;
+import com.example.util.VectorMath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.embedding.EmbeddingRequest;
 import org.springframework.ai.embedding.EmbeddingResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
@@ -25,16 +31,35 @@ public class EmbeddingService {
     @Autowired
     private EmbeddingModel embeddingModel;
     
+    @Autowired
+    @Qualifier("embeddingCircuitBreaker")
+    private CircuitBreaker embeddingCircuitBreaker;
+    
+    @Autowired
+    private MappedEmbeddingStore embeddingStore;
+    
     /**
      * 生成文本的向量表示（带缓存）
+     * 优先读取持久化向量存储，未命中时调用向量模型并写回存储；
+     * 失败或熔断时返回空数组（不缓存），调用方据此降级为全文搜索
      */
-    @Cacheable(value = "textEmbeddings", key = "#text")
+    @Cacheable(value = "textEmbeddings", key = "#text", unless = "#result.length == 0")
     public float[] generateEmbedding(String text) {
         if (text == null || text.trim().isEmpty()) {
             logger.warn("尝试为空文本生成向量");
             return new float[0];
         }
         
+        float[] stored = embeddingStore.get(text);
+        if (stored != null) {
+            return stored;
+        }
+        
+        if (!embeddingCircuitBreaker.isCallPermitted()) {
+            logger.debug("向量服务熔断中，跳过向量生成");
+            return new float[0];
+        }
+        
         try {
             logger.debug("生成文本向量: {}", text.substring(0, Math.min(text.length(), 50)));
             
@@ -42,7 +67,7 @@ public class EmbeddingService {
                 .input(List.of(text))
                 .build();
                 
-            EmbeddingResponse response = embeddingModel.call(request);
+            EmbeddingResponse response = embeddingCircuitBreaker.execute(() -> embeddingModel.call(request));
             
             if (response.getResults().isEmpty()) {
                 logger.error("向量生成失败，返回空结果");
@@ -52,12 +77,16 @@ public class EmbeddingService {
             float[] embedding = response.getResult().getOutput().toFloatArray();
             logger.debug("成功生成 {} 维向量", embedding.length);
             
+            embeddingStore.put(text, embedding);
             return embedding;
             
+        } catch (CallNotPermittedException e) {
+            logger.debug("向量服务熔断中，跳过向量生成");
+            return new float[0];
         } catch (Exception e) {
             logger.error("生成文本向量失败: {}", e.getMessage(), e);
-            // 返回零向量作为降级方案
-            return new float[1536]; // OpenAI embedding 默认维度
+            // 返回空向量，避免零向量触发全量script_score打分
+            return new float[0];
         }
     }
     
@@ -72,21 +101,61 @@ public class EmbeddingService {
     
     /**
      * 批量生成向量
+     * 持久化向量存储中已有的文本不再调用向量模型
      */
     public List<float[]> generateBatchEmbeddings(List<String> texts) {
+        float[][] results = new float[texts.size()][];
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            results[i] = embeddingStore.get(texts.get(i));
+            if (results[i] == null) {
+                missing.add(i);
+            }
+        }
+        
+        if (missing.isEmpty()) {
+            return Arrays.asList(results);
+        }
+        
+        List<String> missingTexts = missing.stream().map(texts::get).toList();
+        List<float[]> generated = callBatchEmbeddings(missingTexts);
+        for (int i = 0; i < missing.size() && i < generated.size(); i++) {
+            float[] embedding = generated.get(i);
+            results[missing.get(i)] = embedding;
+            if (embedding.length > 0) {
+                embeddingStore.put(missingTexts.get(i), embedding);
+            }
+        }
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                results[i] = new float[0];
+            }
+        }
+        return Arrays.asList(results);
+    }
+    
+    private List<float[]> callBatchEmbeddings(List<String> texts) {
         logger.info("批量生成 {} 个文本的向量", texts.size());
         
+        if (!embeddingCircuitBreaker.isCallPermitted()) {
+            logger.warn("向量服务熔断中，跳过批量向量生成");
+            return texts.stream().map(text -> new float[0]).toList();
+        }
+        
         try {
             EmbeddingRequest request = EmbeddingRequest.builder()
                 .input(texts)
                 .build();
                 
-            EmbeddingResponse response = embeddingModel.call(request);
+            EmbeddingResponse response = embeddingCircuitBreaker.execute(() -> embeddingModel.call(request));
             
             return response.getResults().stream()
                 .map(result -> result.getOutput().toFloatArray())
                 .toList();
                 
+        } catch (CallNotPermittedException e) {
+            logger.warn("向量服务熔断中，跳过批量向量生成");
+            return texts.stream().map(text -> new float[0]).toList();
         } catch (Exception e) {
             logger.error("批量生成向量失败: {}", e.getMessage(), e);
             // 降级为单个生成
@@ -100,25 +169,7 @@ public class EmbeddingService {
      * 计算两个向量的余弦相似度
      */
     public double calculateCosineSimilarity(float[] vector1, float[] vector2) {
-        if (vector1.length != vector2.length) {
-            throw new IllegalArgumentException("向量维度不匹配");
-        }
-        
-        double dotProduct = 0.0;
-        double norm1 = 0.0;
-        double norm2 = 0.0;
-        
-        for (int i = 0; i < vector1.length; i++) {
-            dotProduct += vector1[i] * vector2[i];
-            norm1 += vector1[i] * vector1[i];
-            norm2 += vector2[i] * vector2[i];
-        }
-        
-        if (norm1 == 0.0 || norm2 == 0.0) {
-            return 0.0;
-        }
-        
-        return dotProduct / (Math.sqrt(norm1) * Math.sqrt(norm2));
+        return VectorMath.cosineSimilarity(vector1, vector2);
     }
     
     /**
@@ -145,11 +196,17 @@ public class EmbeddingService {
      */
     public boolean isServiceAvailable() {
         try {
-            generateEmbedding("test");
-            return true;
+            return generateEmbedding("test").length > 0;
         } catch (Exception e) {
             logger.error("向量服务不可用: {}", e.getMessage());
             return false;
         }
     }
-}
\ No newline at end of file
+    
+    /**
+     * 向量服务熔断器是否放行调用（不发起实际调用）
+     */
+    public boolean isCallPermitted() {
+        return embeddingCircuitBreaker.isCallPermitted();
+    }
+}
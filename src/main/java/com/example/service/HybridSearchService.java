@@ -2,14 +2,17 @@ package com.example.service;
 
 import co.elastic.clients.elasticsearch.core.SearchResponse;
 import com.example.dto.QueryRequest;
+import com.example.dto.SearchFilters;
 import com.example.model.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
 /**
@@ -21,6 +24,9 @@ public class HybridSearchService {
     
     private static final Logger logger = LoggerFactory.getLogger(HybridSearchService.class);
     
+    // 当前线程的搜索不调用对话模型（启动预热时设置），选中 AI_ENHANCED 策略时放弃本次搜索
+    private static final ThreadLocal<Boolean> MODEL_CALLS_DISABLED = ThreadLocal.withInitial(() -> false);
+    
     @Autowired
     private VectorSearchService vectorSearchService;
     
@@ -33,30 +39,63 @@ public class HybridSearchService {
     @Autowired
     private EmbeddingService embeddingService;
     
+    @Autowired
+    private SearchTemplateService searchTemplateService;
+    
+    @Autowired
+    private QueryIntentClassifier queryIntentClassifier;
+    
+    @Autowired
+    private AdaptiveStrategySelector adaptiveStrategySelector;
+    
+    @Autowired
+    private QueryRecorder queryRecorder;
+    
+    /**
+     * 各策略的候选/重排窗口大小
+     */
+    @Value("${app.search.rescore.window.vector-first:100}")
+    private int vectorFirstWindow;
+    
+    @Value("${app.search.rescore.window.hybrid-balanced:50}")
+    private int hybridBalancedWindow;
+    
+    @Value("${app.search.rescore.window.ai-enhanced:50}")
+    private int aiEnhancedWindow;
+    
     /**
      * 智能混合搜索
      * 根据查询复杂度选择最优搜索策略
      */
-    @Cacheable(value = "hybridSearchResults", key = "#queryRequest.query + '_' + #queryRequest.page + '_' + #queryRequest.size")
+    @Cacheable(value = "hybridSearchResults", sync = true, key = "@indexGenerationService.current() + '_' + #queryRequest.query + '_' + #queryRequest.page + '_' + #queryRequest.size + '_' + #queryRequest.filters")
     public com.example.dto.SearchResponse smartSearch(QueryRequest queryRequest) {
         logger.info("开始智能混合搜索: {}", queryRequest.getQuery());
         
         long startTime = System.currentTimeMillis();
         String query = queryRequest.getQuery();
         
+        SearchStrategy strategy = null;
         try {
-            // 1. 分析查询复杂度和意图
-            SearchStrategy strategy = determineSearchStrategy(query);
-            logger.info("选择搜索策略: {}", strategy);
+            // 1. 分析查询复杂度和意图，再根据各策略的实时表现确定最终策略
+            SearchStrategy preferred = determineSearchStrategy(query);
+            strategy = applyCircuitBreakers(adaptiveStrategySelector.select(preferred));
+            logger.info("选择搜索策略: {} (偏好: {})", strategy, preferred);
             
             // 2. 执行相应的搜索策略
-            List<Document> results = executeSearchStrategy(strategy, queryRequest);
+            long strategyStart = System.currentTimeMillis();
+            StrategyResult strategyResult = executeSearchStrategy(strategy, queryRequest);
+            List<Document> results = strategyResult.documents();
+            int resultCount = strategyResult.aggregations() != null 
+                ? queryRequest.getSize() : results.size();  // 聚合查询不返回文档，按满额计算质量
+            long strategyTook = System.currentTimeMillis() - strategyStart;
+            adaptiveStrategySelector.record(strategy, strategyTook, true, resultCount, queryRequest.getSize());
+            queryRecorder.stage("strategy." + strategy.name().toLowerCase(), strategyTook);
             
             // 3. 计算耗时
             long took = System.currentTimeMillis() - startTime;
             
             // 4. 构建响应
-            return new com.example.dto.SearchResponse(
+            com.example.dto.SearchResponse response = new com.example.dto.SearchResponse(
                 query,
                 "Hybrid Search - " + strategy.name(),
                 results,
@@ -65,10 +104,19 @@ public class HybridSearchService {
                 queryRequest.getSize(),
                 took
             );
+            response.setAggregations(strategyResult.aggregations());
+            return response;
             
+        } catch (ModelCallsDisabledException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("混合搜索失败: {}", e.getMessage(), e);
             
+            if (strategy != null) {
+                adaptiveStrategySelector.record(strategy, System.currentTimeMillis() - startTime, 
+                    false, 0, queryRequest.getSize());
+            }
+            
             // 降级到基础搜索
             return fallbackSearch(queryRequest);
         }
@@ -78,7 +126,12 @@ public class HybridSearchService {
      * 确定搜索策略
      */
     private SearchStrategy determineSearchStrategy(String query) {
-        // 简单的策略选择逻辑，可以用AI增强
+        // 优先使用意图分类模型，模型未加载或置信度不足时回退到启发式规则
+        Optional<SearchStrategy> classified = queryIntentClassifier.classify(query);
+        if (classified.isPresent()) {
+            return classified.get();
+        }
+        
         if (isComplexQuery(query)) {
             return SearchStrategy.AI_ENHANCED;
         } else if (isSemanticQuery(query)) {
@@ -88,28 +141,66 @@ public class HybridSearchService {
         }
     }
     
+    /**
+     * 在当前线程执行搜索，期间不调用对话模型。
+     * 选中 AI_ENHANCED 策略的搜索抛出 ModelCallsDisabledException，不执行也不缓存结果
+     * （降级结果若写入结果缓存，其他用户在索引版本变化前都会拿到非AI的结果）
+     */
+    public static <T> T withoutModelCalls(Callable<T> action) throws Exception {
+        MODEL_CALLS_DISABLED.set(true);
+        try {
+            return action.call();
+        } finally {
+            MODEL_CALLS_DISABLED.remove();
+        }
+    }
+    
+    /**
+     * 外部AI服务熔断时直接切换到全文搜索，不再调用服务提供方
+     */
+    private SearchStrategy applyCircuitBreakers(SearchStrategy strategy) {
+        if (strategy == SearchStrategy.AI_ENHANCED && MODEL_CALLS_DISABLED.get()) {
+            throw new ModelCallsDisabledException();
+        }
+        boolean needsEmbedding = strategy == SearchStrategy.VECTOR_FIRST 
+            || strategy == SearchStrategy.HYBRID_BALANCED;
+        if (needsEmbedding && !embeddingService.isCallPermitted()) {
+            logger.warn("向量服务熔断中，策略 {} 降级为 TEXT_FIRST", strategy);
+            return SearchStrategy.TEXT_FIRST;
+        }
+        if (strategy == SearchStrategy.AI_ENHANCED && !aiQueryService.isModelCallPermitted()) {
+            logger.warn("AI服务熔断中，策略 {} 降级为 TEXT_FIRST", strategy);
+            return SearchStrategy.TEXT_FIRST;
+        }
+        return strategy;
+    }
+    
     /**
      * 执行选定的搜索策略
      */
-    private List<Document> executeSearchStrategy(SearchStrategy strategy, QueryRequest queryRequest) throws Exception {
+    private StrategyResult executeSearchStrategy(SearchStrategy strategy, QueryRequest queryRequest) throws Exception {
         int from = queryRequest.getPage() * queryRequest.getSize();
+        String query = queryRequest.getQuery();
+        int size = queryRequest.getSize();
+        SearchFilters filters = queryRequest.getFilters();
         
         return switch (strategy) {
-            case VECTOR_FIRST -> executeVectorFirstSearch(queryRequest.getQuery(), from, queryRequest.getSize());
-            case TEXT_FIRST -> executeTextFirstSearch(queryRequest.getQuery(), from, queryRequest.getSize());
-            case HYBRID_BALANCED -> executeHybridBalancedSearch(queryRequest.getQuery(), from, queryRequest.getSize());
-            case AI_ENHANCED -> executeAIEnhancedSearch(queryRequest.getQuery(), from, queryRequest.getSize());
+            case VECTOR_FIRST -> StrategyResult.of(executeVectorFirstSearch(query, from, size, filters));
+            case TEXT_FIRST -> StrategyResult.of(executeTextFirstSearch(query, from, size, filters));
+            case HYBRID_BALANCED -> StrategyResult.of(executeHybridBalancedSearch(query, from, size, filters));
+            case AI_ENHANCED -> executeAIEnhancedSearch(query, from, size, filters);
         };
     }
     
     /**
      * 向量优先搜索
      */
-    private List<Document> executeVectorFirstSearch(String query, int from, int size) throws Exception {
+    private List<Document> executeVectorFirstSearch(String query, int from, int size, 
+                                                    SearchFilters filters) throws Exception {
         logger.debug("执行向量优先搜索");
         
         // 1. 向量搜索
-        SearchResponse<Document> vectorResponse = vectorSearchService.vectorSearch(query, size * 2);
+        SearchResponse<Document> vectorResponse = vectorSearchService.vectorSearch(query, size * 2, vectorFirstWindow, filters);
         List<Document> vectorResults = extractDocuments(vectorResponse);
         
         if (vectorResults.size() >= size) {
@@ -117,7 +208,7 @@ public class HybridSearchService {
         }
         
         // 2. 如果向量搜索结果不足，补充传统搜索
-        SearchResponse<Document> textResponse = elasticsearchService.searchAll(from, size - vectorResults.size());
+        SearchResponse<Document> textResponse = elasticsearchService.searchAll(from, size - vectorResults.size(), filters);
         List<Document> textResults = elasticsearchService.extractDocuments(textResponse);
         
         // 3. 去重并合并
@@ -127,10 +218,18 @@ public class HybridSearchService {
     /**
      * 传统搜索优先
      */
-    private List<Document> executeTextFirstSearch(String query, int from, int size) throws Exception {
+    private List<Document> executeTextFirstSearch(String query, int from, int size, 
+                                                  SearchFilters filters) throws Exception {
         logger.debug("执行传统搜索优先");
         
-        // 构建简单的全文搜索查询
+        // 优先使用存储的全文检索模板，只发送模板ID和参数
+        if (searchTemplateService.isRegistered()) {
+            SearchResponse<Document> response = elasticsearchService.searchWithTemplate(
+                SearchTemplateService.TEXT_MATCH_TEMPLATE, Map.of("query", query), from, size, filters);
+            return elasticsearchService.extractDocuments(response);
+        }
+        
+        // 模板未注册时构建简单的全文搜索查询
         String dsl = String.format("""
             {
               "query": {
@@ -142,42 +241,51 @@ public class HybridSearchService {
             }
             """, query.replace("\"", "\\\""));
         
-        SearchResponse<Document> response = elasticsearchService.searchWithDsl(dsl, from, size);
+        SearchResponse<Document> response = elasticsearchService.searchWithDsl(dsl, from, size, filters);
         return elasticsearchService.extractDocuments(response);
     }
     
     /**
      * 平衡混合搜索
      */
-    private List<Document> executeHybridBalancedSearch(String query, int from, int size) throws Exception {
+    private List<Document> executeHybridBalancedSearch(String query, int from, int size, 
+                                                       SearchFilters filters) throws Exception {
         logger.debug("执行平衡混合搜索");
         
-        SearchResponse<Document> response = vectorSearchService.hybridSearch(query, size);
+        SearchResponse<Document> response = vectorSearchService.hybridSearch(query, size, hybridBalancedWindow, filters);
         return extractDocuments(response);
     }
     
     /**
      * AI增强搜索
      */
-    private List<Document> executeAIEnhancedSearch(String query, int from, int size) throws Exception {
+    private StrategyResult executeAIEnhancedSearch(String query, int from, int size, 
+                                                   SearchFilters filters) throws Exception {
         logger.debug("执行AI增强搜索");
         
         // 1. 使用AI生成DSL
         String aiGeneratedDsl = aiQueryService.convertToElasticsearchDsl(query);
         
         // 2. 执行AI生成的查询
-        SearchResponse<Document> aiResponse = elasticsearchService.searchWithDsl(aiGeneratedDsl, from, size);
+        SearchResponse<Document> aiResponse = elasticsearchService.searchWithDsl(aiGeneratedDsl, from, size, filters);
+        
+        // 统计类查询直接返回聚合结果，不再补充文档
+        Map<String, Object> aggregations = elasticsearchService.extractAggregations(aiResponse);
+        if (aggregations != null) {
+            return new StrategyResult(Collections.emptyList(), aggregations);
+        }
+        
         List<Document> aiResults = elasticsearchService.extractDocuments(aiResponse);
         
         if (aiResults.size() >= size) {
-            return aiResults;
+            return StrategyResult.of(aiResults);
         }
         
         // 3. 如果AI查询结果不足，补充向量搜索
-        SearchResponse<Document> vectorResponse = vectorSearchService.vectorSearch(query, size - aiResults.size());
+        SearchResponse<Document> vectorResponse = vectorSearchService.vectorSearch(query, size - aiResults.size(), aiEnhancedWindow, filters);
         List<Document> vectorResults = extractDocuments(vectorResponse);
         
-        return mergeAndDeduplicateResults(aiResults, vectorResults, size);
+        return StrategyResult.of(mergeAndDeduplicateResults(aiResults, vectorResults, size));
     }
     
     /**
@@ -251,7 +359,7 @@ public class HybridSearchService {
         
         try {
             int from = queryRequest.getPage() * queryRequest.getSize();
-            SearchResponse<Document> response = elasticsearchService.searchAll(from, queryRequest.getSize());
+            SearchResponse<Document> response = elasticsearchService.searchAll(from, queryRequest.getSize(), queryRequest.getFilters());
             List<Document> documents = elasticsearchService.extractDocuments(response);
             
             return new com.example.dto.SearchResponse(
@@ -293,6 +401,24 @@ public class HybridSearchService {
             .collect(Collectors.toList());
     }
     
+    /**
+     * 策略执行结果（文档列表，以及统计类查询的聚合结果）
+     */
+    private record StrategyResult(List<Document> documents, Map<String, Object> aggregations) {
+        static StrategyResult of(List<Document> documents) {
+            return new StrategyResult(documents, null);
+        }
+    }
+    
+    /**
+     * 不允许调用对话模型时选中了 AI_ENHANCED 策略（搜索未执行）
+     */
+    public static class ModelCallsDisabledException extends RuntimeException {
+        public ModelCallsDisabledException() {
+            super("当前不允许调用AI模型，放弃 AI_ENHANCED 搜索");
+        }
+    }
+    
     /**
      * 搜索策略枚举
      */
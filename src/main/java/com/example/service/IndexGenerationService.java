@@ -0,0 +1,134 @@
+package com.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 索引代数服务
+ * 每次写入索引后递增代数（多实例通过Redis计数器共享），结果缓存的键包含当前代数，
+ * 写入后旧的缓存项不再被命中，无需扫描删除，因此可以使用较长的TTL。
+ * 各实例定期从Redis同步代数，Redis不可用时退化为进程内计数，并在定时任务中重试共享计数器的递增，
+ * 恢复后其他实例随之失效。
+ * <p>
+ * 写入的文档在索引刷新后才可见，写入后通过 bumpAfterRefresh 在一个刷新间隔之后递增（连续写入合并为
+ * 每个间隔最多一次），避免刷新前的查询把写入前的结果缓存在新代数下
+ */
+@Service
+public class IndexGenerationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexGenerationService.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final AtomicLong generation = new AtomicLong();
+
+    @Value("${app.cache.redis.enabled:false}")
+    private boolean redisEnabled;
+
+    @Value("${app.cache.generation.key:chat2db-es:index-generation}")
+    private String generationKey;
+
+    // 写入到文档可见的等待时间（索引 refresh_interval 加余量）
+    @Value("${app.cache.generation.visibility-delay-ms:1500}")
+    private long visibilityDelayMs;
+
+    // 尚未被递增覆盖的最早一次写入时间，0表示没有
+    private long pendingWriteAt = 0;
+    private long latestWriteAt = 0;
+
+    // 共享计数器递增失败，等待重试
+    private final AtomicBoolean sharedBumpPending = new AtomicBoolean();
+
+    public IndexGenerationService(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 当前索引代数（用于缓存键）
+     */
+    public long current() {
+        return generation.get();
+    }
+
+    /**
+     * 索引内容发生变化后调用，使所有实例的结果缓存失效
+     */
+    public long bump() {
+        if (redisEnabled) {
+            try {
+                Long next = redisTemplate.opsForValue().increment(generationKey);
+                if (next != null) {
+                    generation.accumulateAndGet(next, Math::max);
+                    logger.debug("索引代数递增为 {}", next);
+                    return generation.get();
+                }
+            } catch (Exception e) {
+                sharedBumpPending.set(true);
+                logger.warn("递增共享索引代数失败，使用本地代数并稍后重试: {}", e.getMessage());
+            }
+        }
+        return generation.incrementAndGet();
+    }
+
+    /**
+     * 写入后调用：在一个刷新间隔之后递增代数（由定时任务执行）
+     */
+    public synchronized void bumpAfterRefresh() {
+        latestWriteAt = System.currentTimeMillis();
+        if (pendingWriteAt == 0) {
+            pendingWriteAt = latestWriteAt;
+        }
+    }
+
+    /**
+     * 最早的未覆盖写入已过一个刷新间隔时递增代数；之后的写入等待下一次
+     */
+    private void bumpDueWrites() {
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (pendingWriteAt == 0 || now - pendingWriteAt < visibilityDelayMs) {
+                return;
+            }
+            pendingWriteAt = latestWriteAt > now - visibilityDelayMs ? latestWriteAt : 0;
+        }
+        bump();
+    }
+
+    /**
+     * 定期执行到期的递增、重试失败的共享递增，并同步其他实例写入后递增的代数
+     */
+    @Scheduled(fixedDelayString = "${app.cache.generation.refresh-interval-ms:1000}")
+    public void refresh() {
+        bumpDueWrites();
+        if (!redisEnabled) {
+            return;
+        }
+        if (sharedBumpPending.getAndSet(false)) {
+            try {
+                Long next = redisTemplate.opsForValue().increment(generationKey);
+                if (next != null) {
+                    generation.accumulateAndGet(next, Math::max);
+                }
+                logger.info("共享索引代数递增已重试成功");
+            } catch (Exception e) {
+                sharedBumpPending.set(true);
+                logger.debug("重试递增共享索引代数失败: {}", e.getMessage());
+                return;
+            }
+        }
+        try {
+            String value = redisTemplate.opsForValue().get(generationKey);
+            if (value != null) {
+                generation.accumulateAndGet(Long.parseLong(value), Math::max);
+            }
+        } catch (Exception e) {
+            logger.debug("同步共享索引代数失败: {}", e.getMessage());
+        }
+    }
+}
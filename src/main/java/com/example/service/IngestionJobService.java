@@ -0,0 +1,384 @@
+package com.example.service;
+
+import com.example.model.Document;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步写入任务服务
+ * 提交后立即返回任务ID，由后台线程通过 IngestionPipeline 分批向量化并写入。
+ * 同时运行的任务数受限，超出时排队，排队也满时拒绝提交；
+ * 任务状态包含进度、吞吐量、失败数和预计剩余时间，结束的任务保留一段时间供查询。
+ * 也支持在请求线程内流式读取NDJSON上传，内存占用与上传大小无关
+ */
+@Service
+public class IngestionJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionJobService.class);
+
+    public enum JobState { PENDING, RUNNING, COMPLETED, FAILED, CANCELLED }
+
+    /**
+     * 向流水线提交文档的数据源
+     */
+    @FunctionalInterface
+    public interface DocumentFeeder {
+        void feed(IngestionPipeline pipeline) throws Exception;
+    }
+
+    private final ElasticsearchService elasticsearchService;
+    private final BulkLoadModeService bulkLoadModeService;
+    private final ObjectMapper objectMapper;
+    private final ConcurrentHashMap<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor jobExecutor;
+
+    @Value("${app.ingest.jobs.embed-workers:2}")
+    private int embedWorkers;
+
+    @Value("${app.ingest.jobs.bulk-workers:2}")
+    private int bulkWorkers;
+
+    @Value("${app.ingest.jobs.queue-capacity:4}")
+    private int queueCapacity;
+
+    @Value("${app.ingest.jobs.retention-minutes:60}")
+    private long retentionMinutes;
+
+    public IngestionJobService(ElasticsearchService elasticsearchService, BulkLoadModeService bulkLoadModeService,
+                               ObjectMapper objectMapper,
+                               @Value("${app.ingest.jobs.max-concurrent:2}") int maxConcurrentJobs,
+                               @Value("${app.ingest.jobs.max-pending:10}") int maxPendingJobs) {
+        this.elasticsearchService = elasticsearchService;
+        this.bulkLoadModeService = bulkLoadModeService;
+        this.objectMapper = objectMapper;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.jobExecutor = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(maxPendingJobs), runnable -> {
+                Thread thread = new Thread(runnable, "ingest-job-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    /**
+     * 提交一批文档作为异步写入任务
+     *
+     * @throws RejectedExecutionException 运行和排队的任务都已满
+     */
+    public IngestionJob submitDocuments(List<Document> documents) {
+        return submit("batch", (long) documents.size(), pipeline -> {
+            for (Document document : documents) {
+                if (!pipeline.submit(document)) {
+                    break;
+                }
+            }
+        });
+    }
+
+    /**
+     * 流式写入NDJSON（每行一个文档）
+     * 使用Jackson流式解析器逐个读取文档并送入流水线：解析、向量化和批量写入三者并行，
+     * 流水线队列满时解析随之暂停，内存中只保留有限个批次。
+     * 单条记录字段无效时跳过并计入rejected；JSON语法错误无法定位下一条记录，停止解析，
+     * 已提交的文档写入完成后任务以失败结束（标记为输入无效）
+     */
+    public IngestionJob ingestNdjson(InputStream input) {
+        return runInline("ndjson-stream", pipeline -> {
+            try (JsonParser parser = objectMapper.getFactory().createParser(input)) {
+                JsonToken token;
+                while ((token = nextToken(parser)) != null) {
+                    long line = parser.currentLocation().getLineNr();
+                    if (token != JsonToken.START_OBJECT) {
+                        throw new IllegalArgumentException("第 " + line + " 行不是JSON对象");
+                    }
+                    JsonNode node;
+                    try {
+                        node = objectMapper.readTree(parser);
+                    } catch (JsonProcessingException e) {
+                        throw new IllegalArgumentException("第 " + line + " 行JSON语法错误: " + e.getOriginalMessage(), e);
+                    }
+                    Document document;
+                    try {
+                        document = objectMapper.treeToValue(node, Document.class);
+                    } catch (JsonProcessingException e) {
+                        pipeline.reject("第 " + line + " 行字段无效: " + e.getOriginalMessage());
+                        continue;
+                    }
+                    if (!pipeline.submit(document)) {
+                        break;
+                    }
+                }
+            }
+        });
+    }
+
+    private JsonToken nextToken(JsonParser parser) throws IOException {
+        try {
+            return parser.nextToken();
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("第 " + parser.currentLocation().getLineNr() + " 行JSON语法错误: "
+                + e.getOriginalMessage(), e);
+        }
+    }
+
+    /**
+     * 提交写入任务
+     *
+     * @param source 数据来源描述
+     * @param total  文档总数，未知时为null（不计算预计剩余时间）
+     */
+    public IngestionJob submit(String source, Long total, DocumentFeeder feeder) {
+        IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), source, total);
+        jobs.put(job.id, job);
+        try {
+            jobExecutor.execute(() -> run(job, feeder));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            throw new RejectedExecutionException("写入任务过多，请稍后重试");
+        }
+        logger.info("已提交写入任务 {}（来源: {}，文档数: {}）", job.id, source, total);
+        return job;
+    }
+
+    /**
+     * 在调用线程上运行写入任务（用于必须在请求线程内读取数据的场景，如流式上传），
+     * 同样登记任务状态，可查询进度和取消
+     */
+    public IngestionJob runInline(String source, DocumentFeeder feeder) {
+        IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), source, null);
+        jobs.put(job.id, job);
+        run(job, feeder);
+        return job;
+    }
+
+    public Optional<IngestionJob> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public List<IngestionJob> listJobs() {
+        return jobs.values().stream()
+            .sorted(Comparator.comparingLong((IngestionJob job) -> job.createdAt).reversed())
+            .toList();
+    }
+
+    /**
+     * 取消任务；已结束的任务返回false
+     */
+    public boolean cancel(String id) {
+        IngestionJob job = jobs.get(id);
+        if (job == null || job.isFinished()) {
+            return false;
+        }
+        job.cancelRequested = true;
+        IngestionPipeline pipeline = job.pipeline;
+        if (pipeline != null) {
+            pipeline.cancel();
+        }
+        if (job.state == JobState.PENDING) {
+            job.finish(JobState.CANCELLED, null);
+        }
+        logger.info("已取消写入任务 {}", id);
+        return true;
+    }
+
+    private void run(IngestionJob job, DocumentFeeder feeder) {
+        if (job.cancelRequested) {
+            return;
+        }
+        IngestionPipeline pipeline = new IngestionPipeline(elasticsearchService, job.id.substring(0, 8),
+            elasticsearchService.getBulkSize(), embedWorkers, bulkWorkers, queueCapacity);
+        job.pipeline = pipeline;
+        job.startedAt = System.currentTimeMillis();
+        job.state = JobState.RUNNING;
+
+        // 大批量或文档数未知的导入在批量导入模式下进行，结束后恢复索引设置
+        boolean bulkLoad = false;
+        if (bulkLoadModeService.shouldUse(job.total)) {
+            try {
+                bulkLoadModeService.enter();
+                bulkLoad = true;
+            } catch (Exception e) {
+                logger.warn("进入批量导入模式失败，按普通模式写入: {}", e.getMessage());
+            }
+        }
+        job.bulkLoad = bulkLoad;
+
+        try {
+            if (job.cancelRequested) {
+                pipeline.cancel();
+            }
+            feeder.feed(pipeline);
+            pipeline.complete();
+            while (!pipeline.awaitCompletion(1, TimeUnit.SECONDS)) {
+                // 等待剩余批次写入完成
+            }
+            if (pipeline.isCancelled()) {
+                job.finish(JobState.CANCELLED, null);
+            } else if (pipeline.getFailed() > 0 && pipeline.getFailed() == pipeline.getSubmitted()) {
+                job.finish(JobState.FAILED, "全部文档写入失败");
+            } else {
+                job.finish(JobState.COMPLETED, null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pipeline.cancel();
+            job.finish(JobState.CANCELLED, null);
+        } catch (IllegalArgumentException e) {
+            // 输入无效：停止读取，已提交的批次照常写完再结束
+            logger.warn("写入任务 {} 输入无效，写完已提交的文档后结束: {}", job.id, e.getMessage());
+            job.invalidInput = true;
+            try {
+                pipeline.complete();
+                while (!pipeline.awaitCompletion(1, TimeUnit.SECONDS)) {
+                    // 等待已提交的批次写入完成
+                }
+                job.finish(pipeline.isCancelled() && job.cancelRequested ? JobState.CANCELLED : JobState.FAILED,
+                    e.getMessage());
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                pipeline.cancel();
+                job.finish(JobState.CANCELLED, null);
+            }
+        } catch (Exception e) {
+            logger.error("写入任务 {} 失败: {}", job.id, e.getMessage(), e);
+            pipeline.cancel();
+            job.finish(pipeline.isCancelled() && job.cancelRequested ? JobState.CANCELLED : JobState.FAILED,
+                e.getMessage());
+        } finally {
+            if (bulkLoad) {
+                bulkLoadModeService.exit();
+            }
+        }
+        logger.info("写入任务 {} 结束: {}", job.id, job.toStatus());
+    }
+
+    /**
+     * 清理超过保留时间的已结束任务
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictFinishedJobs() {
+        long threshold = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(retentionMinutes);
+        jobs.values().removeIf(job -> job.isFinished() && job.finishedAt < threshold);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobs.values().stream()
+            .filter(job -> !job.isFinished())
+            .forEach(job -> cancel(job.id));
+        jobExecutor.shutdownNow();
+    }
+
+    /**
+     * 写入任务
+     */
+    public static class IngestionJob {
+
+        private final String id;
+        private final String source;
+        private final Long total;
+        private final long createdAt = System.currentTimeMillis();
+
+        private volatile JobState state = JobState.PENDING;
+        private volatile IngestionPipeline pipeline;
+        private volatile boolean cancelRequested = false;
+        private volatile boolean bulkLoad = false;
+        private volatile boolean invalidInput = false;
+        private volatile long startedAt;
+        private volatile long finishedAt;
+        private volatile String error;
+
+        IngestionJob(String id, String source, Long total) {
+            this.id = id;
+            this.source = source;
+            this.total = total;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public JobState getState() {
+            return state;
+        }
+
+        /**
+         * 任务是否因输入无效（而非写入失败）而失败
+         */
+        public boolean isInvalidInput() {
+            return invalidInput;
+        }
+
+        public boolean isFinished() {
+            return state == JobState.COMPLETED || state == JobState.FAILED || state == JobState.CANCELLED;
+        }
+
+        void finish(JobState finalState, String error) {
+            this.error = error;
+            this.finishedAt = System.currentTimeMillis();
+            this.state = finalState;
+        }
+
+        /**
+         * 任务状态：进度、吞吐量（文档/秒）和预计剩余时间
+         */
+        public Map<String, Object> toStatus() {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("jobId", id);
+            status.put("state", state.name());
+            status.put("source", source);
+            status.put("total", total);
+            status.put("bulkLoad", bulkLoad);
+
+            IngestionPipeline current = pipeline;
+            long processed = current == null ? 0 : current.getProcessed();
+            if (current != null) {
+                status.putAll(current.getProgress());
+            }
+
+            long end = isFinished() ? finishedAt : System.currentTimeMillis();
+            long elapsedMs = startedAt == 0 ? 0 : end - startedAt;
+            double throughput = elapsedMs > 0 ? processed * 1000.0 / elapsedMs : 0.0;
+            status.put("elapsedMs", elapsedMs);
+            status.put("docsPerSecond", Math.round(throughput * 10) / 10.0);
+            if (total != null && total > 0) {
+                status.put("percent", Math.round(processed * 1000.0 / total) / 10.0);
+                if (!isFinished() && throughput > 0) {
+                    status.put("etaSeconds", Math.round((total - processed) / throughput));
+                }
+            }
+            status.put("createdAt", createdAt);
+            if (error != null) {
+                status.put("error", error);
+            }
+            if (invalidInput) {
+                status.put("invalidInput", true);
+            }
+            return status;
+        }
+    }
+}
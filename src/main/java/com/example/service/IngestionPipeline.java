@@ -0,0 +1,300 @@
+package com.example.service;
+
+import com.example.model.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 文档写入流水线
+ * 生产者逐个提交文档，按批大小组批后依次经过"向量化"和"批量写入"两个阶段，
+ * 每个阶段由独立的工作线程处理，阶段之间使用有界队列：下游变慢时上游的提交会阻塞，
+ * 内存中最多保留 (2 × 队列容量 + 工作线程数) 个批次。
+ * 单批失败只计入失败数，不会中断整个流水线；取消后丢弃尚未处理的批次（计入discarded）
+ */
+public class IngestionPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionPipeline.class);
+
+    private static final int MAX_RECENT_ERRORS = 10;
+
+    // 队列结束标记
+    private static final List<Document> END_OF_INPUT = new ArrayList<>(0);
+    private static final ElasticsearchService.PreparedBatch END_OF_BATCHES =
+        new ElasticsearchService.PreparedBatch(List.of(), Map.of(), Map.of(), Set.of(), Set.of(),
+            DocumentEmbeddingService.EmbeddingFailures.NONE);
+
+    private final ElasticsearchService elasticsearchService;
+    private final String name;
+    private final int batchSize;
+    private final int embedWorkers;
+    private final int bulkWorkers;
+
+    private final BlockingQueue<List<Document>> embedQueue;
+    private final BlockingQueue<ElasticsearchService.PreparedBatch> bulkQueue;
+    private final ExecutorService workers;
+    private final CountDownLatch finished;
+    private final AtomicInteger activeEmbedWorkers;
+
+    private List<Document> currentBatch = new ArrayList<>();
+    private volatile boolean cancelled = false;
+    private volatile boolean completed = false;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong embedded = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong updated = new AtomicLong();
+    private final AtomicLong noop = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final LinkedList<String> recentErrors = new LinkedList<>();
+
+    public IngestionPipeline(ElasticsearchService elasticsearchService, String name, int batchSize,
+                             int embedWorkers, int bulkWorkers, int queueCapacity) {
+        this.elasticsearchService = elasticsearchService;
+        this.name = name;
+        this.batchSize = batchSize;
+        this.embedWorkers = embedWorkers;
+        this.bulkWorkers = bulkWorkers;
+        this.embedQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.bulkQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.finished = new CountDownLatch(bulkWorkers);
+        this.activeEmbedWorkers = new AtomicInteger(embedWorkers);
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(embedWorkers + bulkWorkers, runnable -> {
+            Thread thread = new Thread(runnable, "ingest-" + name + "-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < embedWorkers; i++) {
+            workers.execute(this::embedLoop);
+        }
+        for (int i = 0; i < bulkWorkers; i++) {
+            workers.execute(this::bulkLoop);
+        }
+    }
+
+    /**
+     * 提交一个文档；队列已满时阻塞等待（背压）
+     *
+     * @return 流水线已取消时返回false，调用方应停止提交
+     */
+    public boolean submit(Document document) throws InterruptedException {
+        if (cancelled) {
+            return false;
+        }
+        if (completed) {
+            throw new IllegalStateException("流水线已结束提交");
+        }
+        currentBatch.add(document);
+        submitted.incrementAndGet();
+        if (currentBatch.size() >= batchSize) {
+            List<Document> batch = currentBatch;
+            currentBatch = new ArrayList<>();
+            return enqueue(embedQueue, batch);
+        }
+        return true;
+    }
+
+    /**
+     * 结束提交：写出最后一个不满的批次，并通知各阶段在处理完剩余批次后退出
+     */
+    public void complete() throws InterruptedException {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        if (!currentBatch.isEmpty()) {
+            if (!enqueue(embedQueue, currentBatch)) {
+                discarded.addAndGet(currentBatch.size());
+            }
+            currentBatch = new ArrayList<>();
+        }
+        for (int i = 0; i < embedWorkers; i++) {
+            enqueue(embedQueue, END_OF_INPUT);
+        }
+    }
+
+    /**
+     * 取消流水线：丢弃排队中的批次（文档数计入discarded），正在处理的批次完成后各线程退出
+     */
+    public void cancel() {
+        cancelled = true;
+        List<List<Document>> pendingBatches = new ArrayList<>();
+        embedQueue.drainTo(pendingBatches);
+        List<ElasticsearchService.PreparedBatch> preparedBatches = new ArrayList<>();
+        bulkQueue.drainTo(preparedBatches);
+        long dropped = pendingBatches.stream().mapToLong(List::size).sum()
+            + preparedBatches.stream().mapToLong(batch -> batch.documents().size()).sum();
+        if (dropped > 0) {
+            discarded.addAndGet(dropped);
+            logger.warn("写入流水线 [{}] 已取消，丢弃 {} 个排队中的文档", name, dropped);
+        }
+        workers.shutdownNow();
+    }
+
+    /**
+     * 等待所有批次处理完成（需先调用 complete）
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        boolean done = cancelled || finished.await(timeout, unit);
+        if (done) {
+            workers.shutdown();
+        }
+        return done;
+    }
+
+    /**
+     * 记录一个未进入流水线的无效输入（如无法解析的记录）
+     */
+    public void reject(String reason) {
+        rejected.incrementAndGet();
+        addError(reason);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    /**
+     * 已处理完成（成功或失败）的文档数
+     */
+    public long getProcessed() {
+        return created.get() + updated.get() + noop.get() + failed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public Map<String, Object> getProgress() {
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("submitted", submitted.get());
+        progress.put("processed", getProcessed());
+        progress.put("created", created.get());
+        progress.put("updated", updated.get());
+        progress.put("noop", noop.get());
+        progress.put("embedded", embedded.get());
+        progress.put("failed", failed.get());
+        progress.put("rejected", rejected.get());
+        progress.put("discarded", discarded.get());
+        progress.put("queuedBatches", embedQueue.size() + bulkQueue.size());
+        synchronized (recentErrors) {
+            progress.put("recentErrors", List.copyOf(recentErrors));
+        }
+        return progress;
+    }
+
+    private void embedLoop() {
+        try {
+            while (!cancelled) {
+                List<Document> batch = embedQueue.take();
+                if (batch == END_OF_INPUT) {
+                    break;
+                }
+                try {
+                    if (!enqueue(bulkQueue, elasticsearchService.prepareBatch(batch))) {
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    recordFailure(batch.size(), "向量化失败: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // 最后一个向量化线程退出时通知写入阶段结束
+            if (activeEmbedWorkers.decrementAndGet() == 0) {
+                signalEndOfBatches();
+            }
+        }
+    }
+
+    private void bulkLoop() {
+        try {
+            while (!cancelled) {
+                ElasticsearchService.PreparedBatch prepared = bulkQueue.take();
+                if (prepared == END_OF_BATCHES) {
+                    break;
+                }
+                try {
+                    ElasticsearchService.BatchResult result = elasticsearchService.writeBatch(prepared);
+                    created.addAndGet(result.created());
+                    updated.addAndGet(result.updated());
+                    noop.addAndGet(result.noop());
+                    embedded.addAndGet(result.embedded());
+                    if (result.failed() > 0) {
+                        recordFailure(result.failed(), "写入失败: " + result.firstError());
+                    }
+                } catch (Exception e) {
+                    recordFailure(prepared.documents().size(), "写入失败: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * 放入有界队列，队列满时等待；等待期间被取消则返回false
+     */
+    private <T> boolean enqueue(BlockingQueue<T> queue, T item) throws InterruptedException {
+        while (!cancelled) {
+            if (queue.offer(item, 500, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void signalEndOfBatches() {
+        try {
+            for (int i = 0; i < bulkWorkers; i++) {
+                if (!enqueue(bulkQueue, END_OF_BATCHES)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void recordFailure(long count, String error) {
+        failed.addAndGet(count);
+        logger.warn("写入流水线 [{}] {} 个文档失败: {}", name, count, error);
+        addError(error);
+    }
+
+    private void addError(String error) {
+        synchronized (recentErrors) {
+            recentErrors.addLast(error);
+            if (recentErrors.size() > MAX_RECENT_ERRORS) {
+                recentErrors.removeFirst();
+            }
+        }
+    }
+}
@@ -20,11 +20,17 @@ public class IntelligentSearchService {
     
     private final AiQueryService aiQueryService;
     private final ElasticsearchService elasticsearchService;
+    private final SearchTemplateService searchTemplateService;
+    private final QueryRecorder queryRecorder;
     
     public IntelligentSearchService(AiQueryService aiQueryService, 
-                                   ElasticsearchService elasticsearchService) {
+                                   ElasticsearchService elasticsearchService,
+                                   SearchTemplateService searchTemplateService,
+                                   QueryRecorder queryRecorder) {
         this.aiQueryService = aiQueryService;
         this.elasticsearchService = elasticsearchService;
+        this.searchTemplateService = searchTemplateService;
+        this.queryRecorder = queryRecorder;
     }
     
     /**
@@ -41,12 +47,15 @@ public class IntelligentSearchService {
         try {
             // 1. 使用AI将自然语言转换为DSL
             String generatedDsl = aiQueryService.convertToElasticsearchDsl(queryRequest.getQuery());
+            long dslTook = System.currentTimeMillis() - startTime;
+            queryRecorder.stage("dsl", dslTook);
             
             // 2. 执行Elasticsearch查询
             int from = queryRequest.getPage() * queryRequest.getSize();
             SearchResponse<Document> esResponse = elasticsearchService.searchWithDsl(
-                generatedDsl, from, queryRequest.getSize()
+                generatedDsl, from, queryRequest.getSize(), queryRequest.getFilters()
             );
+            queryRecorder.stage("elasticsearch", System.currentTimeMillis() - startTime - dslTook);
             
             // 3. 提取文档结果
             List<Document> documents = elasticsearchService.extractDocuments(esResponse);
@@ -65,6 +74,9 @@ public class IntelligentSearchService {
                 took
             );
             
+            // 6. 统计类查询附带聚合结果
+            response.setAggregations(elasticsearchService.extractAggregations(esResponse));
+            
             logger.info("智能搜索完成: 找到{}个结果，耗时{}ms", 
                 response.getTotalHits(), response.getTook());
             
@@ -109,10 +121,22 @@ public class IntelligentSearchService {
         try {
             logger.info("初始化智能搜索系统...");
             elasticsearchService.ensureIndexExists();
+            registerSearchTemplates();
             logger.info("智能搜索系统初始化完成");
         } catch (Exception e) {
             logger.error("智能搜索系统初始化失败: {}", e.getMessage(), e);
             throw new RuntimeException("搜索系统初始化失败", e);
         }
     }
+    
+    /**
+     * 注册存储模板和脚本，失败时查询降级为内联DSL，不影响系统启动
+     */
+    private void registerSearchTemplates() {
+        try {
+            searchTemplateService.registerTemplates();
+        } catch (Exception e) {
+            logger.warn("存储模板注册失败，将使用内联查询: {}", e.getMessage());
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,434 @@
+package com.example.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * 持久化向量存储
+ * 向量以定长记录（32字节键 + dims个float）追加写入内存映射的段文件，重启后无需重新调用向量模型。
+ * 键为"模型名 + 规范化文本"的SHA-256；内存中只保留堆外的开放寻址索引（启动时扫描段文件重建）。
+ * 段数达到上限时淘汰最旧的段，其中被访问过的记录会复制到新段，从而限制磁盘占用
+ */
+@Service
+public class MappedEmbeddingStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedEmbeddingStore.class);
+
+    private static final int MAGIC = 0x454D4231;  // "EMB1"
+    private static final int HEADER_SIZE = 16;    // magic(4) + dims(4) + count(4) + 保留(4)
+    private static final int COUNT_OFFSET = 8;
+    private static final int KEY_SIZE = 32;
+    private static final int SLOT_SIZE = 16;      // 键前缀(8) + 段ID(4) + 记录序号(4)，段ID为0表示空槽
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    @Value("${app.embedding-store.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.embedding-store.path:data/embeddings}")
+    private String storePath;
+
+    @Value("${spring.ai.openai.embedding.options.model:text-embedding-3-large}")
+    private String modelName;
+
+    @Value("${app.embedding-store.dimensions:1536}")
+    private int dimensions;
+
+    @Value("${app.embedding-store.segment-size-mb:64}")
+    private int segmentSizeMb;
+
+    @Value("${app.embedding-store.max-size-mb:1024}")
+    private int maxSizeMb;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private Segment active;
+
+    private ByteBuffer index;       // 堆外索引
+    // 每个槽位的访问标记，淘汰时用于保留热点记录；读取在读锁下并发设置，因此使用原子数组
+    private AtomicIntegerArray referenced;
+    private int indexMask;
+
+    private int recordSize;
+    private int recordsPerSegment;
+    private int maxSegments;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+
+    private record Segment(int id, Path file, FileChannel channel, MappedByteBuffer buffer) {
+        int count() {
+            return buffer.getInt(COUNT_OFFSET);
+        }
+    }
+
+    @PostConstruct
+    public void open() {
+        if (!enabled) {
+            return;
+        }
+
+        recordSize = KEY_SIZE + dimensions * Float.BYTES;
+        recordsPerSegment = (int) (((long) segmentSizeMb * 1024 * 1024 - HEADER_SIZE) / recordSize);
+        maxSegments = Math.max(2, maxSizeMb / segmentSizeMb);
+        int capacity = Integer.highestOneBit(Math.max(1024, maxSegments * recordsPerSegment * 2) - 1) << 1;
+        indexMask = capacity - 1;
+
+        try {
+            Path directory = Paths.get(storePath);
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.filter(this::isSegmentFile).sorted().toList()) {
+                    Segment segment = openSegment(file, segmentId(file), false);
+                    if (segment != null) {
+                        segments.put(segment.id(), segment);
+                    }
+                }
+            }
+            rebuildIndex();
+
+            if (segments.isEmpty() || segments.lastEntry().getValue().count() >= recordsPerSegment) {
+                active = createSegment(segments.isEmpty() ? 1 : segments.lastKey() + 1);
+            } else {
+                active = segments.lastEntry().getValue();
+            }
+
+            logger.info("向量存储已加载: {} 个段，{} 条记录 ({})", segments.size(), recordCount(), directory.toAbsolutePath());
+        } catch (IOException e) {
+            logger.error("向量存储初始化失败，已禁用: {}", e.getMessage(), e);
+            enabled = false;
+        }
+    }
+
+    /**
+     * 读取向量，不存在时返回null
+     */
+    public float[] get(String text) {
+        if (!enabled || text == null) {
+            return null;
+        }
+
+        byte[] key = hashKey(text);
+        lock.readLock().lock();
+        try {
+            int slot = find(key);
+            if (slot < 0) {
+                misses.incrementAndGet();
+                return null;
+            }
+            if (referenced.get(slot) == 0) {
+                referenced.set(slot, 1);
+            }
+            hits.incrementAndGet();
+
+            Segment segment = segments.get(index.getInt(slot * SLOT_SIZE + 8));
+            int position = recordPosition(index.getInt(slot * SLOT_SIZE + 12)) + KEY_SIZE;
+            float[] vector = new float[dimensions];
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] = segment.buffer().getFloat(position + i * Float.BYTES);
+            }
+            return vector;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 追加写入向量（已存在或维度不符时忽略）
+     */
+    public void put(String text, float[] vector) {
+        if (!enabled || text == null || vector == null || vector.length != dimensions) {
+            return;
+        }
+
+        byte[] key = hashKey(text);
+        lock.writeLock().lock();
+        try {
+            if (find(key) >= 0) {
+                return;
+            }
+            ByteBuffer record = ByteBuffer.allocate(recordSize);
+            record.put(key);
+            for (float value : vector) {
+                record.putFloat(value);
+            }
+            append(record.array());
+            writes.incrementAndGet();
+        } catch (IOException e) {
+            logger.error("写入向量存储失败: {}", e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 获取存储统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        if (!enabled) {
+            return stats;
+        }
+
+        lock.readLock().lock();
+        try {
+            stats.put("records", recordCount());
+            stats.put("segments", segments.size());
+            stats.put("maxSegments", maxSegments);
+            stats.put("diskBytes", (long) segments.size() * (HEADER_SIZE + (long) recordsPerSegment * recordSize));
+        } finally {
+            lock.readLock().unlock();
+        }
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("writes", writes.get());
+        stats.put("compactions", compactions.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.buffer().force();
+                segment.channel().close();
+            }
+        } catch (IOException e) {
+            logger.warn("关闭向量存储失败: {}", e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 追加一条原始记录；当前段已满时切换到新段，段数达到上限时先淘汰最旧的段
+     */
+    private void append(byte[] record) throws IOException {
+        if (active.count() >= recordsPerSegment) {
+            // 保留的热点记录最多占新段的 recordsPerSegment - 1 条，为当前记录留出位置
+            List<byte[]> carried = segments.size() >= maxSegments
+                ? evictOldestSegment(recordsPerSegment - 1) : List.of();
+            active = createSegment(segments.lastKey() + 1);
+            for (byte[] hot : carried) {
+                write(hot);
+            }
+        }
+        write(record);
+    }
+
+    /**
+     * 将记录写入当前段（调用方保证当前段未满）
+     */
+    private void write(byte[] record) {
+        int count = active.count();
+        active.buffer().put(recordPosition(count), record);
+        // 先写记录再更新计数，进程崩溃时最多丢失最后一条未计数的记录
+        active.buffer().putInt(COUNT_OFFSET, count + 1);
+        insert(ByteBuffer.wrap(record).getLong(0), active.id(), count);
+    }
+
+    /**
+     * 淘汰最旧的段，返回其中被访问过、需要保留的记录（超过limit条时只保留最后写入的limit条）
+     */
+    private List<byte[]> evictOldestSegment(int limit) throws IOException {
+        Segment oldest = segments.firstEntry().getValue();
+        List<byte[]> hot = new ArrayList<>();
+
+        for (int i = 0; i < oldest.count(); i++) {
+            byte[] record = new byte[recordSize];
+            oldest.buffer().get(recordPosition(i), record);
+            int slot = find(Arrays.copyOf(record, KEY_SIZE));
+            if (slot >= 0 && referenced.get(slot) == 1
+                    && index.getInt(slot * SLOT_SIZE + 8) == oldest.id()
+                    && index.getInt(slot * SLOT_SIZE + 12) == i) {
+                hot.add(record);
+            }
+        }
+
+        segments.remove(oldest.id());
+        oldest.channel().close();
+        Files.deleteIfExists(oldest.file());
+        rebuildIndex();
+        compactions.incrementAndGet();
+
+        if (hot.size() > limit) {
+            hot = hot.subList(hot.size() - limit, hot.size());
+        }
+        logger.info("向量存储淘汰段 {}，保留 {}/{} 条热点记录", oldest.id(), hot.size(), oldest.count());
+        return hot;
+    }
+
+    /**
+     * 按现有段重建索引；保留存活记录的访问标记，否则淘汰一个段后其他段的热点记录在下次淘汰时不会被保留
+     */
+    private void rebuildIndex() {
+        Set<Long> marked = new HashSet<>();
+        if (index != null) {
+            for (int slot = 0; slot <= indexMask; slot++) {
+                int segmentId = index.getInt(slot * SLOT_SIZE + 8);
+                if (segmentId != 0 && referenced.get(slot) == 1 && segments.containsKey(segmentId)) {
+                    marked.add(recordRef(segmentId, index.getInt(slot * SLOT_SIZE + 12)));
+                }
+            }
+        }
+
+        index = ByteBuffer.allocateDirect((indexMask + 1) * SLOT_SIZE);
+        referenced = new AtomicIntegerArray(indexMask + 1);
+        for (Segment segment : segments.values()) {
+            for (int i = 0; i < segment.count(); i++) {
+                int slot = insert(segment.buffer().getLong(recordPosition(i)), segment.id(), i);
+                if (marked.contains(recordRef(segment.id(), i))) {
+                    referenced.set(slot, 1);
+                }
+            }
+        }
+    }
+
+    private static long recordRef(int segmentId, int recordIndex) {
+        return ((long) segmentId << 32) | (recordIndex & 0xFFFFFFFFL);
+    }
+
+    private int insert(long prefix, int segmentId, int recordIndex) {
+        int slot = (int) (prefix ^ (prefix >>> 32)) & indexMask;
+        while (index.getInt(slot * SLOT_SIZE + 8) != 0) {
+            slot = (slot + 1) & indexMask;
+        }
+        index.putLong(slot * SLOT_SIZE, prefix);
+        index.putInt(slot * SLOT_SIZE + 8, segmentId);
+        index.putInt(slot * SLOT_SIZE + 12, recordIndex);
+        referenced.set(slot, 0);
+        return slot;
+    }
+
+    /**
+     * 在索引中查找键，返回槽位，不存在时返回-1
+     */
+    private int find(byte[] key) {
+        long prefix = ByteBuffer.wrap(key).getLong(0);
+        int slot = (int) (prefix ^ (prefix >>> 32)) & indexMask;
+        while (true) {
+            int segmentId = index.getInt(slot * SLOT_SIZE + 8);
+            if (segmentId == 0) {
+                return -1;
+            }
+            if (index.getLong(slot * SLOT_SIZE) == prefix
+                    && keyMatches(segments.get(segmentId), index.getInt(slot * SLOT_SIZE + 12), key)) {
+                return slot;
+            }
+            slot = (slot + 1) & indexMask;
+        }
+    }
+
+    private boolean keyMatches(Segment segment, int recordIndex, byte[] key) {
+        int position = recordPosition(recordIndex);
+        for (int i = 0; i < KEY_SIZE; i++) {
+            if (segment.buffer().get(position + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int recordPosition(int recordIndex) {
+        return HEADER_SIZE + recordIndex * recordSize;
+    }
+
+    private int recordCount() {
+        return segments.values().stream().mapToInt(Segment::count).sum();
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        Path file = Paths.get(storePath, String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        Segment segment = openSegment(file, id, true);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private Segment openSegment(Path file, int id, boolean create) throws IOException {
+        long size = HEADER_SIZE + (long) recordsPerSegment * recordSize;
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (!create && (channel.size() != size || readHeader(channel) == null)) {
+            // 段大小或向量维度与当前配置不一致，丢弃旧段
+            logger.warn("向量存储段 {} 与当前配置不兼容，已删除", file.getFileName());
+            channel.close();
+            Files.deleteIfExists(file);
+            return null;
+        }
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (create) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, dimensions);
+            buffer.putInt(COUNT_OFFSET, 0);
+        }
+        return new Segment(id, file, channel, buffer);
+    }
+
+    private ByteBuffer readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != dimensions
+                || header.getInt(COUNT_OFFSET) > recordsPerSegment) {
+            return null;
+        }
+        return header;
+    }
+
+    private boolean isSegmentFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private int segmentId(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * 键：模型名 + 规范化文本（NFKC、去首尾空白、合并连续空白）的SHA-256
+     */
+    private byte[] hashKey(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).trim().replaceAll("\\s+", " ");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return digest.digest((modelName + "\u0000" + normalized).getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+}
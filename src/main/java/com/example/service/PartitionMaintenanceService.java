@@ -0,0 +1,199 @@
+package com.example.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.indices.IndicesStatsResponse;
+import co.elastic.clients.elasticsearch.indices.stats.IndicesStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 时间分区维护（仅在开启按月分区时生效）
+ * 定期重新读取读别名下的分区（其他实例创建的分区在下一次读取后参与查询路由）；
+ * 每日维护时预建下个月的分区、把写别名移到当月分区（写入分区处于批量导入模式时推迟到导入结束后），
+ * 并对已结束月份中段数仍多于每分片 max-num-segments 的分区执行force merge（不再写入的分区合并后查询更快）
+ */
+@Service
+public class PartitionMaintenanceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionMaintenanceService.class);
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final ElasticsearchService elasticsearchService;
+    private final BulkLoadModeService bulkLoadModeService;
+
+    @Value("${app.elasticsearch.partitioning.force-merge.enabled:true}")
+    private boolean forceMergeEnabled;
+
+    @Value("${app.elasticsearch.partitioning.force-merge.min-age-months:1}")
+    private int minAgeMonths;
+
+    @Value("${app.elasticsearch.partitioning.force-merge.max-num-segments:1}")
+    private int maxNumSegments;
+
+    @Value("${app.elasticsearch.partitioning.force-merge.max-per-run:2}")
+    private int maxMergesPerRun;
+
+    @Value("${app.elasticsearch.index.shards:1}")
+    private int numberOfShards;
+
+    public PartitionMaintenanceService(ElasticsearchClient elasticsearchClient,
+                                       ElasticsearchService elasticsearchService,
+                                       BulkLoadModeService bulkLoadModeService) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.elasticsearchService = elasticsearchService;
+        this.bulkLoadModeService = bulkLoadModeService;
+    }
+
+    @Scheduled(initialDelay = 30000, fixedDelayString = "${app.elasticsearch.partitioning.refresh-interval-ms:30000}")
+    public void refreshPartitions() {
+        if (!elasticsearchService.isPartitioned()) {
+            return;
+        }
+        try {
+            elasticsearchService.refreshPartitions();
+        } catch (Exception e) {
+            logger.debug("读取分区列表失败: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(cron = "${app.elasticsearch.partitioning.maintenance-cron:0 15 2 * * *}")
+    public void scheduledMaintenance() {
+        if (!elasticsearchService.isPartitioned()) {
+            return;
+        }
+        try {
+            maintain();
+        } catch (Exception e) {
+            logger.error("分区维护失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 执行一次分区维护：预建分区、移动写别名、合并旧分区
+     *
+     * @throws IllegalStateException 未开启按月分区
+     */
+    public synchronized Map<String, Object> maintain() throws IOException {
+        if (!elasticsearchService.isPartitioned()) {
+            throw new IllegalStateException("未开启按月分区");
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("writeIndex", rollover());
+        result.put("forceMerged", forceMergeOldPartitions());
+        return result;
+    }
+
+    /**
+     * 预建当月和下个月的分区，并将写别名移到当月分区。
+     * 导入模式的设置和恢复都通过写别名作用于当前写入分区，导入期间移动写别名会把原设置恢复到另一个分区，
+     * 因此有实例处于导入模式时不移动，返回当前的写入分区
+     */
+    private String rollover() throws IOException {
+        TimePartitions partitions = elasticsearchService.getTimePartitions();
+        YearMonth now = YearMonth.now();
+        String current = partitions.partitionFor(now.atDay(1).atStartOfDay());
+        elasticsearchService.ensurePartition(current);
+        elasticsearchService.ensurePartition(partitions.partitionFor(now.plusMonths(1).atDay(1).atStartOfDay()));
+
+        String writeAlias = elasticsearchService.getWriteAlias();
+        boolean aliasExists = elasticsearchClient.indices().existsAlias(e -> e.name(writeAlias)).value();
+        String writeIndex = aliasExists ? elasticsearchService.resolveAlias(writeAlias) : null;
+        if (!current.equals(writeIndex)) {
+            if (writeIndex != null && bulkLoadModeService.checkActive()) {
+                logger.warn("分区 {} 处于批量导入模式，暂不将写别名 {} 移到 {}，导入结束后的下次维护时移动",
+                    writeIndex, writeAlias, current);
+                return writeIndex;
+            }
+            elasticsearchClient.indices().updateAliases(u -> {
+                if (writeIndex != null) {
+                    u.actions(a -> a.remove(r -> r.index(writeIndex).alias(writeAlias)));
+                }
+                return u.actions(a -> a.add(add -> add.index(current).alias(writeAlias).isWriteIndex(true)));
+            });
+            logger.info("写别名 {} 已移到分区 {}", writeAlias, current);
+        }
+        return current;
+    }
+
+    /**
+     * 合并已结束月份中段数过多的分区，每次最多 max-per-run 个（最近结束的优先）
+     */
+    private List<String> forceMergeOldPartitions() throws IOException {
+        List<String> merged = new ArrayList<>();
+        if (!forceMergeEnabled) {
+            return merged;
+        }
+        TimePartitions partitions = elasticsearchService.getTimePartitions();
+        YearMonth cutoff = YearMonth.now().minusMonths(minAgeMonths);
+
+        List<String> candidates = new ArrayList<>();
+        readStats().forEach((index, stats) -> {
+            YearMonth month = partitions.monthOf(index);
+            if (month != null && !month.isAfter(cutoff)
+                    && stats.primaries().segments().count() > (long) numberOfShards * maxNumSegments) {
+                candidates.add(index);
+            }
+        });
+        candidates.sort(Comparator.reverseOrder());
+
+        for (String index : candidates.subList(0, Math.min(maxMergesPerRun, candidates.size()))) {
+            // 不等待合并完成，避免阻塞维护线程和请求超时
+            elasticsearchClient.indices().forcemerge(f -> f
+                .index(index)
+                .maxNumSegments((long) maxNumSegments)
+                .waitForCompletion(false));
+            merged.add(index);
+            logger.info("已对分区 {} 发起force merge（max_num_segments={}）", index, maxNumSegments);
+        }
+        return merged;
+    }
+
+    /**
+     * 分区列表：月份、文档数、段数和是否为写入分区
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", elasticsearchService.isPartitioned());
+        if (!elasticsearchService.isPartitioned()) {
+            return status;
+        }
+        try {
+            String writeIndex = elasticsearchService.resolveAlias(elasticsearchService.getWriteAlias());
+            TimePartitions partitions = elasticsearchService.getTimePartitions();
+            Map<String, Object> indices = new TreeMap<>();
+            readStats().forEach((index, stats) -> {
+                Map<String, Object> info = new LinkedHashMap<>();
+                YearMonth month = partitions.monthOf(index);
+                info.put("month", month == null ? null : month.toString());
+                info.put("docs", stats.primaries().docs().count());
+                info.put("segments", stats.primaries().segments().count());
+                info.put("write", index.equals(writeIndex));
+                indices.put(index, info);
+            });
+            status.put("writeIndex", writeIndex);
+            status.put("indices", indices);
+        } catch (Exception e) {
+            status.put("error", e.getMessage());
+        }
+        return status;
+    }
+
+    private Map<String, IndicesStats> readStats() throws IOException {
+        IndicesStatsResponse response = elasticsearchClient.indices().stats(s -> s
+            .index(elasticsearchService.getReadAlias())
+            .metric("docs", "segments"));
+        return response.indices();
+    }
+}
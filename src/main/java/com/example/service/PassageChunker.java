@@ -0,0 +1,150 @@
+package com.example.service;
+
+import com.example.model.Passage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 段落切分服务
+ * 按句子边界将长文本切分为不超过token预算的段落，相邻段落保留一定重叠，
+ * 使每次向量化的输入都在模型token上限内，同时避免语义在切分点被截断
+ */
+@Service
+public class PassageChunker {
+    
+    @Value("${app.ingest.chunking.max-tokens:512}")
+    private int maxTokens;
+    
+    @Value("${app.ingest.chunking.overlap-tokens:64}")
+    private int overlapTokens;
+    
+    @Value("${app.ingest.chunking.max-passages:64}")
+    private int maxPassages;
+    
+    /**
+     * 切分文本为段落
+     */
+    public List<Passage> chunk(String text) {
+        List<Passage> passages = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return passages;
+        }
+        
+        List<int[]> sentences = splitSentences(text);
+        
+        int index = 0;
+        while (index < sentences.size() && passages.size() < maxPassages) {
+            // 从当前句子开始累积，直到达到token预算
+            int end = index;
+            int tokens = 0;
+            while (end < sentences.size()) {
+                int sentenceTokens = estimateTokens(text, sentences.get(end));
+                if (end > index && tokens + sentenceTokens > maxTokens) {
+                    break;
+                }
+                tokens += sentenceTokens;
+                end++;
+            }
+            
+            int start = sentences.get(index)[0];
+            int stop = sentences.get(end - 1)[1];
+            String passageText = text.substring(start, stop).trim();
+            if (!passageText.isEmpty()) {
+                passages.add(new Passage(passageText, start));
+            }
+            
+            if (end >= sentences.size()) {
+                break;
+            }
+            
+            // 下一段从末尾若干句开始，保留重叠部分
+            int next = end;
+            int overlap = 0;
+            while (next - 1 > index && overlap + estimateTokens(text, sentences.get(next - 1)) <= overlapTokens) {
+                next--;
+                overlap += estimateTokens(text, sentences.get(next));
+            }
+            index = next;
+        }
+        
+        return passages;
+    }
+    
+    /**
+     * 估算文本的token数：中日韩字符按每字1个token，其他字符按约4个字符1个token
+     */
+    public int estimateTokens(String text) {
+        return estimateTokens(text, new int[]{0, text.length()});
+    }
+    
+    private int estimateTokens(String text, int[] range) {
+        int cjk = 0;
+        int other = 0;
+        for (int i = range[0]; i < range[1]; i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            Character.UnicodeScript script = Character.UnicodeScript.of(c);
+            if (script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                    || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL) {
+                cjk++;
+            } else {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
+    }
+    
+    /**
+     * 按句末标点和换行切分句子，超过token预算的长句再按长度硬切分
+     */
+    private List<int[]> splitSentences(String text) {
+        List<int[]> sentences = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '。' || c == '！' || c == '？' || c == '；' || c == '\n'
+                    || ((c == '.' || c == '!' || c == '?') && (i + 1 == text.length() || Character.isWhitespace(text.charAt(i + 1))))) {
+                addSentence(text, start, i + 1, sentences);
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            addSentence(text, start, text.length(), sentences);
+        }
+        return sentences;
+    }
+    
+    private void addSentence(String text, int start, int end, List<int[]> sentences) {
+        if (text.substring(start, end).isBlank()) {
+            return;
+        }
+        
+        int[] range = {start, end};
+        if (estimateTokens(text, range) <= maxTokens) {
+            sentences.add(range);
+            return;
+        }
+        
+        // 超长句子：按每个非空白字符1个token保守估算，逐段切分
+        int pieceStart = start;
+        int tokens = 0;
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                tokens++;
+            }
+            if (tokens >= maxTokens) {
+                sentences.add(new int[]{pieceStart, i + 1});
+                pieceStart = i + 1;
+                tokens = 0;
+            }
+        }
+        if (pieceStart < end) {
+            sentences.add(new int[]{pieceStart, end});
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.example.service;
+
+import com.example.service.HybridSearchService.SearchStrategy;
+import com.example.util.VectorMath;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * 查询意图分类器
+ * 基于查询向量和词法特征的最近质心分类，为混合搜索选择搜索策略。
+ * 模型由带标注的查询日志离线训练，保存为JSON文件，文件变化时自动热加载
+ */
+@Service
+public class QueryIntentClassifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryIntentClassifier.class);
+
+    private static final String[] SEMANTIC_WORDS = {"相似", "类似", "相关", "相近", "如何", "什么", "为什么", "怎么"};
+    private static final String[] ANALYTIC_WORDS = {"统计", "聚合", "分析", "对比", "比较", "分布", "趋势", "多少"};
+    private static final String[] BOOLEAN_WORDS = {"AND", "OR", "NOT", "并且", "或者", "但不"};
+    private static final String[] TIME_WORDS = {"最近", "今天", "昨天", "本周", "上周", "本月", "今年", "去年", "年", "月"};
+
+    private final EmbeddingService embeddingService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private volatile ClassifierModel model;
+    private volatile long loadedModelTimestamp = -1L;
+
+    @Value("${app.search.intent-classifier.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.search.intent-classifier.model-path:data/intent-classifier.json}")
+    private String modelPath;
+
+    @Value("${app.search.intent-classifier.lexical-weight:0.3}")
+    private double lexicalWeight;
+
+    @Value("${app.search.intent-classifier.min-margin:0.05}")
+    private double minMargin;
+
+    @Value("${app.search.intent-classifier.training-batch-size:64}")
+    private int trainingBatchSize;
+
+    @Value("${app.search.intent-classifier.training-log-dir:data/intent-logs}")
+    private String trainingLogDir;
+
+    public QueryIntentClassifier(EmbeddingService embeddingService) {
+        this.embeddingService = embeddingService;
+    }
+
+    /**
+     * 对查询进行分类，模型未加载或置信度（第一与第二名的差距）不足时返回空
+     */
+    public Optional<SearchStrategy> classify(String query) {
+        ClassifierModel current = model;
+        if (!enabled || current == null || query == null || query.isBlank()) {
+            return Optional.empty();
+        }
+
+        float[] embedding = embeddingService.generateEmbedding(query);
+        if (embedding.length != current.dimensions()) {
+            return Optional.empty();
+        }
+        double[] lexical = lexicalFeatures(query);
+
+        SearchStrategy best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        double secondScore = Double.NEGATIVE_INFINITY;
+        for (Centroid centroid : current.centroids()) {
+            double score = (1 - lexicalWeight) * VectorMath.cosineSimilarity(embedding, centroid.embedding())
+                + lexicalWeight * VectorMath.cosineSimilarity(lexical, centroid.lexical());
+            if (score > bestScore) {
+                secondScore = bestScore;
+                bestScore = score;
+                best = centroid.strategy();
+            } else if (score > secondScore) {
+                secondScore = score;
+            }
+        }
+
+        if (best == null || bestScore - secondScore < minMargin) {
+            return Optional.empty();
+        }
+
+        logger.debug("意图分类: {} -> {} (score={}, margin={})", query, best, bestScore, bestScore - secondScore);
+        return Optional.of(best);
+    }
+
+    /**
+     * 检查模型文件是否更新，有更新时热加载
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.search.intent-classifier.reload-interval-ms:30000}")
+    public void reloadIfChanged() {
+        if (!enabled) {
+            return;
+        }
+
+        Path path = Paths.get(modelPath);
+        try {
+            if (!Files.exists(path)) {
+                return;
+            }
+            long timestamp = Files.getLastModifiedTime(path).toMillis();
+            if (timestamp == loadedModelTimestamp) {
+                return;
+            }
+
+            model = readModel(path);
+            loadedModelTimestamp = timestamp;
+            logger.info("意图分类模型已加载: {} ({}个类别, {}维)",
+                path, model.centroids().size(), model.dimensions());
+        } catch (Exception e) {
+            logger.warn("加载意图分类模型失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 从带标注的查询日志训练模型
+     * 日志为NDJSON格式，每行包含 query 和 strategy 字段，只能读取训练日志目录（training-log-dir）下的文件；
+     * 无法解析或策略名无效的行跳过并计数
+     *
+     * @param logFile 训练日志目录下的文件名（可含子目录）
+     * @throws IllegalArgumentException 文件不在训练日志目录下、不存在或没有有效样本
+     */
+    public Map<String, Object> train(String logFile) throws IOException {
+        Path labelledLog = resolveTrainingLog(logFile);
+        logger.info("开始训练意图分类模型: {}", labelledLog);
+
+        List<String> queries = new ArrayList<>();
+        List<SearchStrategy> labels = new ArrayList<>();
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(labelledLog, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    JsonNode node = objectMapper.readTree(line);
+                    if (!node.hasNonNull("query") || !node.hasNonNull("strategy")) {
+                        skipped++;
+                        continue;
+                    }
+                    SearchStrategy label = SearchStrategy.valueOf(node.get("strategy").asText());
+                    queries.add(node.get("query").asText());
+                    labels.add(label);
+                } catch (JsonProcessingException | IllegalArgumentException e) {
+                    skipped++;
+                }
+            }
+        }
+        if (skipped > 0) {
+            logger.warn("标注日志中有 {} 行无效，已跳过", skipped);
+        }
+
+        if (queries.isEmpty()) {
+            throw new IllegalArgumentException("标注日志中没有有效样本");
+        }
+
+        Map<SearchStrategy, double[]> embeddingSums = new EnumMap<>(SearchStrategy.class);
+        Map<SearchStrategy, double[]> lexicalSums = new EnumMap<>(SearchStrategy.class);
+        Map<SearchStrategy, Integer> counts = new EnumMap<>(SearchStrategy.class);
+        int dimensions = -1;
+
+        for (int start = 0; start < queries.size(); start += trainingBatchSize) {
+            List<String> batch = queries.subList(start, Math.min(start + trainingBatchSize, queries.size()));
+            List<float[]> embeddings = embeddingService.generateBatchEmbeddings(batch);
+
+            for (int i = 0; i < batch.size(); i++) {
+                float[] embedding = embeddings.get(i);
+                if (embedding.length == 0) {
+                    continue;
+                }
+                if (dimensions < 0) {
+                    dimensions = embedding.length;
+                } else if (embedding.length != dimensions) {
+                    continue;
+                }
+
+                SearchStrategy label = labels.get(start + i);
+                double[] embeddingSum = embeddingSums.computeIfAbsent(label, k -> new double[embedding.length]);
+                double[] normalized = VectorMath.normalize(embedding);
+                for (int d = 0; d < normalized.length; d++) {
+                    embeddingSum[d] += normalized[d];
+                }
+
+                double[] lexical = lexicalFeatures(batch.get(i));
+                double[] lexicalSum = lexicalSums.computeIfAbsent(label, k -> new double[lexical.length]);
+                for (int d = 0; d < lexical.length; d++) {
+                    lexicalSum[d] += lexical[d];
+                }
+                counts.merge(label, 1, Integer::sum);
+            }
+        }
+
+        List<Map<String, Object>> centroids = new ArrayList<>();
+        for (Map.Entry<SearchStrategy, Integer> entry : counts.entrySet()) {
+            int count = entry.getValue();
+            double[] embeddingCentroid = Arrays.stream(embeddingSums.get(entry.getKey())).map(v -> v / count).toArray();
+            double[] lexicalCentroid = Arrays.stream(lexicalSums.get(entry.getKey())).map(v -> v / count).toArray();
+
+            Map<String, Object> centroid = new LinkedHashMap<>();
+            centroid.put("strategy", entry.getKey().name());
+            centroid.put("count", count);
+            centroid.put("embedding", embeddingCentroid);
+            centroid.put("lexical", lexicalCentroid);
+            centroids.add(centroid);
+        }
+
+        Map<String, Object> modelJson = new LinkedHashMap<>();
+        modelJson.put("dimensions", dimensions);
+        modelJson.put("trainedAt", System.currentTimeMillis());
+        modelJson.put("centroids", centroids);
+
+        // 先写临时文件再原子替换，避免热加载读到半个文件
+        Path target = Paths.get(modelPath);
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        objectMapper.writeValue(temp.toFile(), modelJson);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        reloadIfChanged();
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("samples", queries.size());
+        summary.put("skipped", skipped);
+        summary.put("classes", counts);
+        summary.put("dimensions", dimensions);
+        summary.put("modelPath", target.toString());
+        logger.info("意图分类模型训练完成: {}", summary);
+        return summary;
+    }
+
+    /**
+     * 解析训练日志路径，拒绝越出训练日志目录的路径（包括经由符号链接）
+     */
+    private Path resolveTrainingLog(String logFile) {
+        try {
+            Path directory = Paths.get(trainingLogDir).toRealPath();
+            Path path = directory.resolve(logFile).normalize();
+            if (path.startsWith(directory) && Files.isRegularFile(path) && path.toRealPath().startsWith(directory)) {
+                return path;
+            }
+        } catch (IOException | InvalidPathException e) {
+            logger.debug("训练日志路径无效: {}", e.getMessage());
+        }
+        throw new IllegalArgumentException("训练日志须为训练日志目录下的已有文件: " + logFile);
+    }
+
+    /**
+     * 获取分类器状态
+     */
+    public Map<String, Object> getStatus() {
+        ClassifierModel current = model;
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("loaded", current != null);
+        status.put("modelPath", modelPath);
+        if (current != null) {
+            status.put("dimensions", current.dimensions());
+            status.put("classes", current.centroids().stream().map(c -> c.strategy().name()).toList());
+        }
+        return status;
+    }
+
+    private ClassifierModel readModel(Path path) throws IOException {
+        JsonNode root = objectMapper.readTree(path.toFile());
+        int dimensions = root.get("dimensions").asInt();
+
+        List<Centroid> centroids = new ArrayList<>();
+        for (JsonNode node : root.get("centroids")) {
+            float[] embedding = new float[node.get("embedding").size()];
+            for (int i = 0; i < embedding.length; i++) {
+                embedding[i] = (float) node.get("embedding").get(i).asDouble();
+            }
+            double[] lexical = new double[node.get("lexical").size()];
+            for (int i = 0; i < lexical.length; i++) {
+                lexical[i] = node.get("lexical").get(i).asDouble();
+            }
+            centroids.add(new Centroid(SearchStrategy.valueOf(node.get("strategy").asText()), embedding, lexical));
+        }
+        return new ClassifierModel(dimensions, centroids);
+    }
+
+    /**
+     * 词法特征：长度、语义/分析/布尔/时间词、数字和英文占比
+     */
+    private double[] lexicalFeatures(String query) {
+        int length = query.length();
+        long digits = query.chars().filter(Character::isDigit).count();
+        long latin = query.chars().filter(c -> (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')).count();
+
+        return new double[]{
+            Math.min(length / 100.0, 1.0),
+            containsAny(query, SEMANTIC_WORDS),
+            containsAny(query, ANALYTIC_WORDS),
+            containsAny(query, BOOLEAN_WORDS),
+            containsAny(query, TIME_WORDS),
+            query.contains("?") || query.contains("？") ? 1.0 : 0.0,
+            length == 0 ? 0.0 : (double) digits / length,
+            length == 0 ? 0.0 : (double) latin / length
+        };
+    }
+
+    private double containsAny(String query, String[] words) {
+        for (String word : words) {
+            if (query.contains(word)) {
+                return 1.0;
+            }
+        }
+        return 0.0;
+    }
+
+    private record Centroid(SearchStrategy strategy, float[] embedding, double[] lexical) {}
+
+    private record ClassifierModel(int dimensions, List<Centroid> centroids) {}
+}
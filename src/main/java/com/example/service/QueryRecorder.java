@@ -0,0 +1,260 @@
+package com.example.service;
+
+import com.example.dto.QueryRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 查询录制服务（默认关闭）
+ * 将搜索请求的类型、查询、分页、时间戳和各阶段耗时以NDJSON追加到按大小滚动的日志文件。
+ * 请求线程只把记录放入有界队列（队列满时直接丢弃并计数），由后台线程批量写盘，
+ * 不阻塞搜索请求。日志可用于启动预热和 scripts/replay-queries.sh 回放压测
+ */
+@Service
+public class QueryRecorder {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryRecorder.class);
+
+    private static final DateTimeFormatter FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    /**
+     * 当前请求的录制上下文：开始时间和各阶段耗时
+     */
+    private record Recording(long startNanos, Map<String, Long> stages) {}
+
+    private final ThreadLocal<Recording> current = new ThreadLocal<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${app.query-log.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.query-log.path:data/query-log}")
+    private String logPath;
+
+    @Value("${app.query-log.max-file-size-mb:64}")
+    private long maxFileSizeMb;
+
+    @Value("${app.query-log.max-files:10}")
+    private int maxFiles;
+
+    @Value("${app.query-log.queue-capacity:10000}")
+    private int queueCapacity;
+
+    private BlockingQueue<String> queue;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    private BufferedWriter writer;
+    private long currentFileSize;
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        writerThread = new Thread(this::writeLoop, "query-recorder");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        logger.info("查询录制已开启，日志目录: {}", Paths.get(logPath).toAbsolutePath());
+    }
+
+    /**
+     * 开始录制当前线程上的请求
+     */
+    public void begin() {
+        if (enabled) {
+            current.set(new Recording(System.nanoTime(), new LinkedHashMap<>()));
+        }
+    }
+
+    /**
+     * 记录一个阶段的耗时（同名阶段累加）；当前线程没有录制上下文时忽略
+     */
+    public void stage(String name, long millis) {
+        Recording recording = current.get();
+        if (recording != null) {
+            recording.stages().merge(name, millis, Long::sum);
+        }
+    }
+
+    /**
+     * 结束录制并异步写入日志
+     *
+     * @param type      请求类型（intelligent、hybrid、vector）
+     * @param status    HTTP状态码
+     * @param totalHits 命中数，失败时为null
+     */
+    public void record(String type, QueryRequest request, int status, Long totalHits) {
+        Recording recording = current.get();
+        if (recording == null) {
+            return;
+        }
+        current.remove();
+
+        try {
+            ObjectNode line = objectMapper.createObjectNode();
+            line.put("timestamp", System.currentTimeMillis());
+            line.put("type", type);
+            line.put("query", request.getQuery());
+            line.put("page", request.getPage());
+            line.put("size", request.getSize());
+            if (request.getFilters() != null && !request.getFilters().isEmpty()) {
+                line.set("filters", objectMapper.valueToTree(request.getFilters()));
+            }
+            line.put("status", status);
+            if (totalHits != null) {
+                line.put("totalHits", totalHits);
+            }
+            line.put("latencyMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - recording.startNanos()));
+            ObjectNode stages = line.putObject("stages");
+            recording.stages().forEach(stages::put);
+
+            recorded.incrementAndGet();
+            if (!queue.offer(objectMapper.writeValueAsString(line))) {
+                dropped.incrementAndGet();
+            }
+        } catch (Exception e) {
+            logger.debug("录制查询失败: {}", e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("recorded", recorded.get());
+        stats.put("written", written.get());
+        stats.put("dropped", dropped.get());
+        stats.put("queued", queue == null ? 0 : queue.size());
+        return stats;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        // 不中断写线程（文件通道被中断会直接关闭），等待其写完队列中剩余的记录
+        running = false;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        List<String> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                String first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, 1000);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        closeWriter();
+    }
+
+    private void writeBatch(List<String> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        try {
+            for (String line : lines) {
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                if (writer == null || currentFileSize + bytes.length + 1 > maxFileSizeMb * 1024 * 1024) {
+                    rotate();
+                }
+                writer.write(line);
+                writer.newLine();
+                currentFileSize += bytes.length + 1;
+            }
+            writer.flush();
+            written.addAndGet(lines.size());
+        } catch (IOException e) {
+            logger.warn("写入查询日志失败，丢弃 {} 条记录: {}", lines.size(), e.getMessage());
+            dropped.addAndGet(lines.size());
+            closeWriter();
+        }
+    }
+
+    /**
+     * 切换到新的日志文件，并删除超出保留数量的旧文件
+     */
+    private void rotate() throws IOException {
+        closeWriter();
+        Path dir = Paths.get(logPath);
+        Files.createDirectories(dir);
+
+        String baseName = "queries-" + LocalDateTime.now().format(FILE_TIME_FORMAT);
+        Path file = dir.resolve(baseName + ".ndjson");
+        for (int i = 1; Files.exists(file); i++) {
+            file = dir.resolve(baseName + "-" + i + ".ndjson");
+        }
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        currentFileSize = 0;
+
+        try (Stream<Path> listing = Files.list(dir)) {
+            List<Path> files = listing
+                .filter(path -> path.getFileName().toString().startsWith("queries-"))
+                .filter(path -> path.getFileName().toString().endsWith(".ndjson"))
+                .sorted()
+                .toList();
+            for (int i = 0; i < files.size() - maxFiles; i++) {
+                Files.deleteIfExists(files.get(i));
+            }
+        }
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.debug("关闭查询日志失败: {}", e.getMessage());
+        }
+        writer = null;
+    }
+}
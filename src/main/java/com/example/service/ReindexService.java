@@ -0,0 +1,651 @@
+package com.example.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.indices.GetIndexResponse;
+import co.elastic.clients.elasticsearch.indices.GetMappingResponse;
+import co.elastic.clients.elasticsearch.indices.IndexState;
+import co.elastic.clients.json.JsonData;
+import com.example.model.Document;
+import com.example.model.Passage;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 在线重建索引（蓝绿切换）
+ * 修改分词器、向量维度或更换向量模型时，在后台新建下一个版本的索引（如 documents-v2），
+ * 用PIT分页读取当前索引的全部文档，按限速分批重新向量化（或直接复制向量）后写入新索引；
+ * 重建期间经写别名写入的文档ID被记录下来，建完和切换前各补写一次。
+ * 切换时暂停写入，在一次 _aliases 请求中把读写别名原子地移到新索引；回滚同样原子地移回原索引。
+ * <p>
+ * 重建进度记录在新索引映射的 _meta 中：任务中断后再次发起会继续使用同一个新索引，
+ * 已写入且标题/正文指纹一致的文档不再向量化，只需重新扫描。
+ * 更换向量模型时应在使用新模型配置的实例上执行，切换后其余实例以新配置滚动重启；
+ * 多实例同时写入时，其他实例的增量写入不会被记录，切换前可再次发起重建做一次全量比对。
+ * <p>
+ * 按月分区模式下读别名指向多个分区，不支持在线重建（发起、切换和回滚都会被拒绝）：
+ * 映射或路由的变更对之后新建的分区生效，旧分区移出读别名后全部索引即为新的映射
+ */
+@Service
+public class ReindexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReindexService.class);
+
+    private static final String META_KEY = "reindex";
+    private static final Pattern VERSION_PATTERN = Pattern.compile("-v(\\d+)$");
+    private static final int MAX_CATCH_UP_ROUNDS = 3;
+
+    public enum State { BUILDING, BUILT, SWITCHED, ROLLED_BACK, FAILED, CANCELLED }
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final ElasticsearchService elasticsearchService;
+    private final IndexGenerationService indexGenerationService;
+    private final ShardRoutingService shardRoutingService;
+    private final VectorSearchService vectorSearchService;
+    private final ObjectMapper sourceMapper;
+    private final ExecutorService executor;
+
+    // 重建期间经写别名写入的文档ID，建完和切换前补写到新索引
+    private final Set<String> dirtyIds = ConcurrentHashMap.newKeySet();
+    private final AtomicLong writesSinceCutover = new AtomicLong();
+
+    private volatile ReindexJob current;
+
+    @Value("${app.reindex.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.reindex.max-docs-per-second:50}")
+    private double maxDocsPerSecond;
+
+    @Value("${app.reindex.checkpoint-every-batches:10}")
+    private int checkpointEveryBatches;
+
+    @Value("${app.reindex.pit-keep-alive:5m}")
+    private String pitKeepAlive;
+
+    @Value("${app.elasticsearch.index.replicas:1}")
+    private int numberOfReplicas;
+
+    public ReindexService(ElasticsearchClient elasticsearchClient, ElasticsearchService elasticsearchService,
+                          IndexGenerationService indexGenerationService, ShardRoutingService shardRoutingService,
+                          VectorSearchService vectorSearchService) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.elasticsearchService = elasticsearchService;
+        this.indexGenerationService = indexGenerationService;
+        this.shardRoutingService = shardRoutingService;
+        this.vectorSearchService = vectorSearchService;
+        this.sourceMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reindex");
+            thread.setDaemon(true);
+            return thread;
+        });
+        elasticsearchService.addWriteListener(ids -> {
+            ReindexJob job = current;
+            if (job == null) {
+                return;
+            }
+            if (job.state == State.BUILDING || job.state == State.BUILT) {
+                dirtyIds.addAll(ids);
+            } else if (job.state == State.SWITCHED) {
+                writesSinceCutover.addAndGet(ids.size());
+            }
+        });
+    }
+
+    /**
+     * 发起重建；存在未切换的重建索引时继续使用（断点续建）
+     *
+     * @param reembed     是否重新向量化（更换向量模型时为true；只改映射或分词器时复制原向量即可）
+     * @param autoCutover 建完后是否自动切换
+     * @throws IllegalStateException 已有重建在运行、当前读别名不是别名，或开启了按月分区
+     */
+    public synchronized ReindexJob start(boolean reembed, boolean autoCutover) throws IOException {
+        rejectIfPartitioned();
+        ReindexJob running = current;
+        if (running != null && running.state == State.BUILDING) {
+            throw new IllegalStateException("已有重建任务在运行: " + running.target);
+        }
+
+        String readAlias = elasticsearchService.getReadAlias();
+        String source = elasticsearchService.resolveAlias(readAlias);
+        if (source.equals(readAlias)) {
+            throw new IllegalStateException("索引 " + readAlias + " 不是别名，请先迁移到带版本号的索引");
+        }
+
+        Map<String, IndexState> versions = listVersions();
+        String target = null;
+        for (Map.Entry<String, IndexState> entry : versions.entrySet()) {
+            Map<String, Object> meta = readMeta(entry.getValue());
+            if (meta != null && source.equals(meta.get("source"))
+                    && (State.BUILDING.name().equals(meta.get("state")) || State.BUILT.name().equals(meta.get("state")))) {
+                target = entry.getKey();
+                reembed = Boolean.TRUE.equals(meta.get("reembed"));
+                logger.info("继续未完成的重建: {} -> {}", source, target);
+                break;
+            }
+        }
+        if (target == null) {
+            String newIndex = readAlias + "-v" + (maxVersion(versions.keySet()) + 1);
+            elasticsearchService.createIndex(newIndex, false, false);
+            // 新索引尚未对外提供服务，构建期间关闭刷新、不分配副本
+            elasticsearchClient.indices().putSettings(p -> p
+                .index(newIndex)
+                .settings(s -> s.refreshInterval(t -> t.time("-1")).numberOfReplicas("0")));
+            target = newIndex;
+        }
+
+        ReindexJob job = new ReindexJob(source, target, reembed, autoCutover);
+        dirtyIds.clear();
+        writesSinceCutover.set(0);
+        current = job;
+        writeMeta(job);
+        executor.execute(() -> run(job));
+        logger.info("已发起重建索引: {} -> {}（重新向量化: {}）", source, target, reembed);
+        return job;
+    }
+
+    /**
+     * 将读写别名原子地切换到已建好的新索引
+     *
+     * @throws IllegalStateException 没有已建好的新索引，或开启了按月分区
+     */
+    public synchronized Map<String, Object> cutover() throws IOException {
+        rejectIfPartitioned();
+        ReindexJob job = current;
+        if (job == null || job.state != State.BUILT) {
+            job = findBuiltJob();
+        }
+        if (job == null) {
+            throw new IllegalStateException("没有可切换的重建索引");
+        }
+        ReindexJob built = job;
+        String readAlias = elasticsearchService.getReadAlias();
+        String writeAlias = elasticsearchService.getWriteAlias();
+
+        elasticsearchService.pauseWrites(() -> {
+            // 暂停写入后补写最后一批增量，再切换别名
+            catchUp(built);
+            elasticsearchClient.indices().refresh(r -> r.index(built.target));
+            elasticsearchClient.indices().updateAliases(u -> u
+                .actions(a -> a.remove(r -> r.index(built.source).alias(readAlias)))
+                .actions(a -> a.remove(r -> r.index(built.source).alias(writeAlias)))
+                .actions(a -> a.add(add -> add.index(built.target).alias(readAlias)))
+                .actions(a -> a.add(add -> add.index(built.target).alias(writeAlias).isWriteIndex(true)))
+            );
+            return null;
+        });
+
+        // 新索引按路由写入时，查询从此开始使用路由；带有段落向量映射时按段落检索
+        shardRoutingService.checkReadiness();
+        vectorSearchService.checkPassageMapping();
+        writesSinceCutover.set(0);
+        built.state = State.SWITCHED;
+        built.switchedAt = System.currentTimeMillis();
+        current = built;
+        writeMeta(built);
+        indexGenerationService.bump();
+        logger.info("已切换索引别名: {} -> {}，原索引保留用于回滚", built.source, built.target);
+        return built.toStatus();
+    }
+
+    /**
+     * 将读写别名原子地切换回重建前的索引
+     * 切换后写入新索引的文档不在原索引中，需要重新写入
+     *
+     * @throws IllegalStateException 当前索引不是由重建切换而来、原索引已删除，或开启了按月分区
+     */
+    public synchronized Map<String, Object> rollback() throws IOException {
+        rejectIfPartitioned();
+        String readAlias = elasticsearchService.getReadAlias();
+        String writeAlias = elasticsearchService.getWriteAlias();
+        String active = elasticsearchService.resolveAlias(readAlias);
+
+        Map<String, Object> meta = readMeta(listVersions().get(active));
+        if (meta == null || !State.SWITCHED.name().equals(meta.get("state"))) {
+            throw new IllegalStateException("当前索引 " + active + " 不是由重建切换而来");
+        }
+        String previous = String.valueOf(meta.get("source"));
+        if (!elasticsearchClient.indices().exists(e -> e.index(previous)).value()) {
+            throw new IllegalStateException("原索引 " + previous + " 已不存在");
+        }
+
+        elasticsearchService.pauseWrites(() -> {
+            // 原索引可能未按路由写入、没有段落向量映射，切换前先停止查询路由和段落检索
+            shardRoutingService.suspendQueryRouting();
+            vectorSearchService.suspendPassageSearch();
+            elasticsearchClient.indices().updateAliases(u -> u
+                .actions(a -> a.remove(r -> r.index(active).alias(readAlias)))
+                .actions(a -> a.remove(r -> r.index(active).alias(writeAlias)))
+                .actions(a -> a.add(add -> add.index(previous).alias(readAlias)))
+                .actions(a -> a.add(add -> add.index(previous).alias(writeAlias).isWriteIndex(true)))
+            );
+            return null;
+        });
+
+        shardRoutingService.checkReadiness();
+        vectorSearchService.checkPassageMapping();
+        long lostWrites = writesSinceCutover.getAndSet(0);
+        meta.put("state", State.ROLLED_BACK.name());
+        meta.put("rolledBackAt", System.currentTimeMillis());
+        putMeta(active, meta);
+        ReindexJob job = current;
+        if (job != null && job.target.equals(active)) {
+            job.state = State.ROLLED_BACK;
+        }
+        indexGenerationService.bump();
+        if (lostWrites > 0) {
+            logger.warn("已回滚到索引 {}，切换后写入的 {} 个文档需要重新写入", previous, lostWrites);
+        } else {
+            logger.info("已回滚到索引 {}", previous);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("active", previous);
+        result.put("previous", active);
+        result.put("writesSinceCutover", lostWrites);
+        return result;
+    }
+
+    /**
+     * 取消正在运行的重建；已写入新索引的文档保留，再次发起时继续
+     */
+    public boolean cancel() {
+        ReindexJob job = current;
+        if (job == null || job.state != State.BUILDING) {
+            return false;
+        }
+        job.cancelRequested = true;
+        return true;
+    }
+
+    /**
+     * 别名指向、各版本索引的重建状态和当前任务进度（按月分区时读别名下列出全部索引）
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        String readAlias = elasticsearchService.getReadAlias();
+        try {
+            status.put("partitioned", elasticsearchService.isPartitioned());
+            status.put("readAlias", readAlias);
+            List<String> readIndices = elasticsearchService.resolveAliasIndices(readAlias);
+            status.put("readIndices", readIndices);
+            if (readIndices.size() == 1) {
+                status.put("readIndex", readIndices.get(0));
+            }
+            status.put("writeAlias", elasticsearchService.getWriteAlias());
+            status.put("writeIndex", elasticsearchService.resolveAlias(elasticsearchService.getWriteAlias()));
+
+            Map<String, Object> versions = new LinkedHashMap<>();
+            listVersions().forEach((name, state) -> {
+                Map<String, Object> version = new LinkedHashMap<>();
+                version.put("aliases", state.aliases().keySet());
+                version.put("reindex", readMeta(state));
+                versions.put(name, version);
+            });
+            status.put("versions", versions);
+        } catch (Exception e) {
+            status.put("error", e.getMessage());
+        }
+        ReindexJob job = current;
+        status.put("job", job == null ? null : job.toStatus());
+        return status;
+    }
+
+    private void rejectIfPartitioned() {
+        if (elasticsearchService.isPartitioned()) {
+            throw new IllegalStateException("按月分区模式下读别名指向多个分区，不支持在线重建索引；"
+                + "映射变更对新建的分区生效");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private void run(ReindexJob job) {
+        try {
+            scan(job);
+            if (job.cancelRequested) {
+                job.finish(State.CANCELLED, null);
+                writeMeta(job);
+                return;
+            }
+            catchUp(job);
+
+            elasticsearchClient.indices().putSettings(p -> p
+                .index(job.target)
+                .settings(s -> s
+                    .refreshInterval(t -> t.time("1s"))
+                    .numberOfReplicas(String.valueOf(numberOfReplicas))
+                ));
+            elasticsearchClient.indices().refresh(r -> r.index(job.target));
+
+            job.finish(State.BUILT, null);
+            writeMeta(job);
+            logger.info("重建索引完成: {}", job.toStatus());
+
+            if (job.autoCutover) {
+                cutover();
+            }
+        } catch (Exception e) {
+            logger.error("重建索引 {} 失败: {}", job.target, e.getMessage(), e);
+            job.finish(State.FAILED, e.getMessage());
+            try {
+                writeMeta(job);
+            } catch (IOException metaError) {
+                logger.debug("记录重建状态失败: {}", metaError.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 用PIT按 _shard_doc 顺序分页读取原索引，分批写入新索引
+     */
+    private void scan(ReindexJob job) throws IOException, InterruptedException {
+        String pitId = elasticsearchClient.openPointInTime(o -> o
+            .index(job.source)
+            .keepAlive(t -> t.time(pitKeepAlive))
+        ).id();
+        long startNanos = System.nanoTime();
+        int batches = 0;
+        try {
+            List<FieldValue> searchAfter = null;
+            while (!job.cancelRequested) {
+                String currentPit = pitId;
+                List<FieldValue> after = searchAfter;
+                SearchResponse<JsonNode> response = elasticsearchClient.search(s -> {
+                    s.pit(p -> p.id(currentPit).keepAlive(t -> t.time(pitKeepAlive)))
+                        .size(batchSize)
+                        .sort(so -> so.field(f -> f.field("_shard_doc")));
+                    if (after != null) {
+                        s.searchAfter(after);
+                    }
+                    if (job.reembed) {
+                        s.source(src -> src.filter(f -> f.excludes("*Embedding", "passages")));
+                    }
+                    return s;
+                }, JsonNode.class);
+                if (response.pitId() != null) {
+                    pitId = response.pitId();
+                }
+
+                List<Hit<JsonNode>> hits = response.hits().hits();
+                if (hits.isEmpty()) {
+                    break;
+                }
+                List<Document> documents = new ArrayList<>();
+                for (Hit<JsonNode> hit : hits) {
+                    Document document = toDocument(job, hit.id(), hit.source());
+                    if (document != null) {
+                        documents.add(document);
+                    }
+                }
+                job.scanned.addAndGet(hits.size());
+                write(job, documents);
+                searchAfter = hits.get(hits.size() - 1).sort();
+
+                if (++batches % checkpointEveryBatches == 0) {
+                    writeMeta(job);
+                }
+                // 按实际写入数限速，续建时跳过的未变化文档不受限
+                throttle(job.written.get(), startNanos);
+            }
+        } finally {
+            String closingPit = pitId;
+            try {
+                elasticsearchClient.closePointInTime(c -> c.id(closingPit));
+            } catch (Exception e) {
+                logger.debug("关闭PIT失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 补写重建期间经写别名写入的文档，直到没有新的增量（或达到轮数上限，剩余的在切换时补写）
+     */
+    private void catchUp(ReindexJob job) throws IOException {
+        for (int round = 0; round < MAX_CATCH_UP_ROUNDS && !dirtyIds.isEmpty(); round++) {
+            List<String> ids = new ArrayList<>(dirtyIds);
+            dirtyIds.removeAll(ids);
+            for (int start = 0; start < ids.size(); start += batchSize) {
+                List<String> batch = ids.subList(start, Math.min(start + batchSize, ids.size()));
+                List<String> fields = job.reembed
+                    ? List.of("title", "content", "category", "tags", "createTime", "author")
+                    : List.of("*");
+                Map<String, JsonNode> sources = elasticsearchService.fetchSources(job.source, batch, fields);
+                List<Document> documents = new ArrayList<>();
+                sources.forEach((id, source) -> {
+                    Document document = toDocument(job, id, source);
+                    if (document != null) {
+                        documents.add(document);
+                    }
+                });
+                write(job, documents);
+                job.caughtUp.addAndGet(documents.size());
+            }
+        }
+    }
+
+    private void write(ReindexJob job, List<Document> documents) throws IOException {
+        if (documents.isEmpty()) {
+            return;
+        }
+        ElasticsearchService.PreparedBatch prepared =
+            elasticsearchService.prepareBatch(documents, job.target, job.reembed);
+        ElasticsearchService.BatchResult result = elasticsearchService.writeBatch(prepared, job.target);
+        job.written.addAndGet(result.created() + result.updated());
+        job.unchanged.addAndGet(result.noop());
+        job.embedded.addAndGet(job.reembed ? result.embedded() : 0);
+        if (result.failed() > 0) {
+            job.failed.addAndGet(result.failed());
+            job.lastError = result.firstError();
+        }
+    }
+
+    /**
+     * 按 max-docs-per-second 限速，控制向量模型调用和新索引写入的压力
+     */
+    private void throttle(long processed, long startNanos) throws InterruptedException {
+        if (maxDocsPerSecond <= 0) {
+            return;
+        }
+        long expectedNanos = (long) (processed / maxDocsPerSecond * 1_000_000_000L);
+        long aheadNanos = expectedNanos - (System.nanoTime() - startNanos);
+        if (aheadNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(aheadNanos);
+        }
+    }
+
+    /**
+     * 将原索引中的 _source 还原为文档；复制向量时一并还原向量和段落
+     */
+    private Document toDocument(ReindexJob job, String id, JsonNode source) {
+        if (source == null) {
+            return null;
+        }
+        try {
+            Document document = sourceMapper.convertValue(source, Document.class);
+            document.setId(id);
+            if (!job.reembed) {
+                document.setTitleEmbedding(elasticsearchService.toVector(source.get("titleEmbedding")));
+                document.setContentEmbedding(elasticsearchService.toVector(source.get("contentEmbedding")));
+                document.setCombinedEmbedding(elasticsearchService.toVector(source.get("combinedEmbedding")));
+                if (source.has("passages")) {
+                    document.setPassages(sourceMapper.convertValue(source.get("passages"),
+                        new TypeReference<List<Passage>>() {}));
+                }
+            }
+            return document;
+        } catch (IllegalArgumentException e) {
+            job.failed.incrementAndGet();
+            job.lastError = "文档 " + id + " 无法解析: " + e.getMessage();
+            return null;
+        }
+    }
+
+    private ReindexJob findBuiltJob() throws IOException {
+        String source = elasticsearchService.resolveAlias(elasticsearchService.getReadAlias());
+        for (Map.Entry<String, IndexState> entry : listVersions().entrySet()) {
+            Map<String, Object> meta = readMeta(entry.getValue());
+            if (meta != null && source.equals(meta.get("source")) && State.BUILT.name().equals(meta.get("state"))) {
+                ReindexJob job = new ReindexJob(source, entry.getKey(), Boolean.TRUE.equals(meta.get("reembed")), false);
+                job.state = State.BUILT;
+                return job;
+            }
+        }
+        return null;
+    }
+
+    private Map<String, IndexState> listVersions() throws IOException {
+        GetIndexResponse response = elasticsearchClient.indices().get(g -> g
+            .index(elasticsearchService.getReadAlias() + "-v*")
+            .allowNoIndices(true));
+        return response.result();
+    }
+
+    private int maxVersion(Set<String> names) {
+        int max = 0;
+        for (String name : names) {
+            Matcher matcher = VERSION_PATTERN.matcher(name);
+            if (matcher.find()) {
+                max = Math.max(max, Integer.parseInt(matcher.group(1)));
+            }
+        }
+        return max;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readMeta(IndexState state) {
+        if (state == null || state.mappings() == null || state.mappings().meta() == null) {
+            return null;
+        }
+        JsonData meta = state.mappings().meta().get(META_KEY);
+        return meta == null ? null : new LinkedHashMap<>(meta.to(Map.class));
+    }
+
+    private void writeMeta(ReindexJob job) throws IOException {
+        Map<String, Object> meta = new LinkedHashMap<>();
+        meta.put("source", job.source);
+        meta.put("target", job.target);
+        meta.put("reembed", job.reembed);
+        meta.put("state", job.state.name());
+        meta.put("scanned", job.scanned.get());
+        meta.put("written", job.written.get());
+        meta.put("startedAt", job.startedAt);
+        meta.put("updatedAt", System.currentTimeMillis());
+        if (job.switchedAt > 0) {
+            meta.put("switchedAt", job.switchedAt);
+        }
+        putMeta(job.target, meta);
+    }
+
+    private void putMeta(String index, Map<String, Object> meta) throws IOException {
+        // _meta 是整体替换的，保留批量导入模式、路由等写入的其他键
+        GetMappingResponse response = elasticsearchClient.indices().getMapping(g -> g.index(index));
+        Map<String, JsonData> merged = new HashMap<>();
+        response.result().values().stream().findFirst()
+            .filter(record -> record.mappings() != null && record.mappings().meta() != null)
+            .ifPresent(record -> merged.putAll(record.mappings().meta()));
+        merged.put(META_KEY, JsonData.of(meta));
+        elasticsearchClient.indices().putMapping(p -> p
+            .index(index)
+            .meta(merged));
+    }
+
+    /**
+     * 重建任务
+     */
+    public static class ReindexJob {
+
+        private final String source;
+        private final String target;
+        private final boolean reembed;
+        private final boolean autoCutover;
+        private final long startedAt = System.currentTimeMillis();
+
+        private volatile State state = State.BUILDING;
+        private volatile boolean cancelRequested = false;
+        private volatile long finishedAt;
+        private volatile long switchedAt;
+        private volatile String error;
+        private volatile String lastError;
+
+        private final AtomicLong scanned = new AtomicLong();
+        private final AtomicLong written = new AtomicLong();
+        private final AtomicLong unchanged = new AtomicLong();
+        private final AtomicLong embedded = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong caughtUp = new AtomicLong();
+
+        ReindexJob(String source, String target, boolean reembed, boolean autoCutover) {
+            this.source = source;
+            this.target = target;
+            this.reembed = reembed;
+            this.autoCutover = autoCutover;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        void finish(State finalState, String error) {
+            this.error = error;
+            this.finishedAt = System.currentTimeMillis();
+            this.state = finalState;
+        }
+
+        public Map<String, Object> toStatus() {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("source", source);
+            status.put("target", target);
+            status.put("state", state.name());
+            status.put("reembed", reembed);
+            status.put("autoCutover", autoCutover);
+            status.put("scanned", scanned.get());
+            status.put("written", written.get());
+            status.put("unchanged", unchanged.get());
+            status.put("embedded", embedded.get());
+            status.put("failed", failed.get());
+            status.put("caughtUp", caughtUp.get());
+            long end = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+            status.put("elapsedMs", end - startedAt);
+            if (lastError != null) {
+                status.put("lastError", lastError);
+            }
+            if (error != null) {
+                status.put("error", error);
+            }
+            return status;
+        }
+    }
+}
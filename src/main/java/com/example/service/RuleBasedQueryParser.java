@@ -0,0 +1,377 @@
+package com.example.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.aggregations.StringTermsBucket;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 基于规则的自然语言查询解析器
+ * 在调用AI模型之前识别作者、分类、标签和时间范围等常见意图，直接生成bool/filter DSL，
+ * 只有无法完整解析的查询才交给AI模型处理
+ */
+@Service
+public class RuleBasedQueryParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(RuleBasedQueryParser.class);
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private static final String CHINESE_DIGITS = "零一二两三四五六七八九十";
+
+    /**
+     * 解析完实体后可以忽略的虚词（按长度降序移除）
+     */
+    private static final List<String> FILLER_WORDS = List.of(
+        "帮我查找", "帮我找", "给我找", "有哪些", "发表的", "发布的", "所有的", "相关的",
+        "查找", "搜索", "查询", "列出", "显示", "帮我", "给我", "所有", "全部", "相关",
+        "文章", "文档", "内容", "资料", "分类", "类别", "标签", "写的", "作者", "关于",
+        "以及", "一下", "的", "找", "和", "与", "及", "由", "在", "下", "中", "里"
+    );
+
+    private static final Pattern DATE_RANGE_PATTERN = Pattern.compile(
+        "(\\d{4}-\\d{1,2}-\\d{1,2})\\s*(?:到|至|~|—)\\s*(\\d{4}-\\d{1,2}-\\d{1,2})");
+    private static final Pattern DATE_AFTER_PATTERN = Pattern.compile("(\\d{4}-\\d{1,2}-\\d{1,2})\\s*(?:之后|以后|以来)");
+    private static final Pattern DATE_BEFORE_PATTERN = Pattern.compile("(\\d{4}-\\d{1,2}-\\d{1,2})\\s*(?:之前|以前)");
+    private static final Pattern YEAR_MONTH_PATTERN = Pattern.compile("(\\d{4})年(\\d{1,2})月(?:份)?");
+    private static final Pattern YEAR_PATTERN = Pattern.compile("(\\d{4})年(?:度)?");
+    private static final Pattern RECENT_PATTERN = Pattern.compile(
+        "(?:最近|近|过去)([0-9" + CHINESE_DIGITS + "]+)(?:个)?(天|日|周|星期|月|年)(?:内)?");
+
+    private static final Map<String, String[]> FIXED_DATE_EXPRESSIONS = new LinkedHashMap<>();
+
+    static {
+        // 表达式 -> [gte, lt]（ES日期数学）
+        FIXED_DATE_EXPRESSIONS.put("最近一周", new String[]{"now-7d/d", null});
+        FIXED_DATE_EXPRESSIONS.put("最近一个月", new String[]{"now-1M/d", null});
+        FIXED_DATE_EXPRESSIONS.put("最近一年", new String[]{"now-1y/d", null});
+        FIXED_DATE_EXPRESSIONS.put("今天", new String[]{"now/d", null});
+        FIXED_DATE_EXPRESSIONS.put("昨天", new String[]{"now-1d/d", "now/d"});
+        FIXED_DATE_EXPRESSIONS.put("本周", new String[]{"now/w", null});
+        FIXED_DATE_EXPRESSIONS.put("这周", new String[]{"now/w", null});
+        FIXED_DATE_EXPRESSIONS.put("上周", new String[]{"now-1w/w", "now/w"});
+        FIXED_DATE_EXPRESSIONS.put("本月", new String[]{"now/M", null});
+        FIXED_DATE_EXPRESSIONS.put("这个月", new String[]{"now/M", null});
+        FIXED_DATE_EXPRESSIONS.put("上个月", new String[]{"now-1M/M", "now/M"});
+        FIXED_DATE_EXPRESSIONS.put("今年", new String[]{"now/y", null});
+        FIXED_DATE_EXPRESSIONS.put("去年", new String[]{"now-1y/y", "now/y"});
+    }
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private volatile Set<String> knownAuthors = Set.of();
+    private volatile Set<String> knownCategories = Set.of();
+    private volatile Set<String> knownTags = Set.of();
+
+    private final AtomicLong parsedQueries = new AtomicLong();
+    private final AtomicLong unhandledQueries = new AtomicLong();
+
+    @Value("${app.elasticsearch.index-name:documents}")
+    private String indexName;
+
+    @Value("${app.ai.rule-parser.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.ai.rule-parser.max-known-values:1000}")
+    private int maxKnownValues;
+
+    public RuleBasedQueryParser(ElasticsearchClient elasticsearchClient) {
+        this.elasticsearchClient = elasticsearchClient;
+    }
+
+    /**
+     * 尝试将查询解析为DSL，无法完整解析时返回空
+     */
+    public Optional<String> parse(String query) {
+        if (!enabled || query == null || query.isBlank()) {
+            return Optional.empty();
+        }
+
+        StringBuilder remaining = new StringBuilder(query.trim());
+        List<Map<String, Object>> filters = new ArrayList<>();
+
+        Map<String, Object> dateRange;
+        try {
+            dateRange = extractDateRange(remaining);
+        } catch (DateTimeException e) {
+            // 形如2024-02-30的无效日期交给AI模型处理
+            unhandledQueries.incrementAndGet();
+            logger.debug("规则解析日期无效: {} ({})", query, e.getMessage());
+            return Optional.empty();
+        }
+        extractKeywords(remaining, filters);
+        if (dateRange != null) {
+            filters.add(Map.of("range", Map.of("createTime", dateRange)));
+        }
+
+        if (filters.isEmpty() || !isResidualEmpty(remaining.toString())) {
+            unhandledQueries.incrementAndGet();
+            return Optional.empty();
+        }
+
+        try {
+            String dsl = objectMapper.writeValueAsString(Map.of(
+                "query", Map.of("bool", Map.of("filter", filters))
+            ));
+            parsedQueries.incrementAndGet();
+            logger.debug("规则解析成功: {} -> {}", query, dsl);
+            return Optional.of(dsl);
+        } catch (Exception e) {
+            logger.warn("规则解析生成DSL失败: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 通过terms聚合加载author/category/tags字段的已知取值，定期刷新
+     */
+    @Scheduled(initialDelayString = "${app.ai.rule-parser.initial-delay-ms:10000}",
+               fixedDelayString = "${app.ai.rule-parser.refresh-interval-ms:300000}")
+    public void refreshKnownValues() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            SearchResponse<Void> response = elasticsearchClient.search(s -> s
+                .index(indexName)
+                .size(0)
+                .aggregations("authors", a -> a.terms(t -> t.field("author").size(maxKnownValues)))
+                .aggregations("categories", a -> a.terms(t -> t.field("category").size(maxKnownValues)))
+                .aggregations("tags", a -> a.terms(t -> t.field("tags").size(maxKnownValues)))
+            , Void.class);
+
+            knownAuthors = extractTermValues(response, "authors");
+            knownCategories = extractTermValues(response, "categories");
+            knownTags = extractTermValues(response, "tags");
+
+            logger.debug("规则解析器已刷新已知取值: {}个作者, {}个分类, {}个标签",
+                knownAuthors.size(), knownCategories.size(), knownTags.size());
+        } catch (Exception e) {
+            logger.warn("刷新已知取值失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 获取解析统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("parsedQueries", parsedQueries.get());
+        stats.put("unhandledQueries", unhandledQueries.get());
+        stats.put("knownAuthors", knownAuthors.size());
+        stats.put("knownCategories", knownCategories.size());
+        stats.put("knownTags", knownTags.size());
+        return stats;
+    }
+
+    private Set<String> extractTermValues(SearchResponse<Void> response, String aggregationName) {
+        Set<String> values = new HashSet<>();
+        for (StringTermsBucket bucket : response.aggregations().get(aggregationName).sterms().buckets().array()) {
+            values.add(bucket.key().stringValue());
+        }
+        return Collections.unmodifiableSet(values);
+    }
+
+    /**
+     * 识别作者、分类和标签，按取值长度降序匹配以优先选择最长的实体。
+     * 同一字段匹配多个取值时（如"张三和李四的文章"）合并为一个terms条件，取值之间为或的关系
+     */
+    private void extractKeywords(StringBuilder remaining, List<Map<String, Object>> filters) {
+        List<String[]> candidates = new ArrayList<>();
+        knownAuthors.forEach(value -> candidates.add(new String[]{"author", value}));
+        knownCategories.forEach(value -> candidates.add(new String[]{"category", value}));
+        knownTags.forEach(value -> candidates.add(new String[]{"tags", value}));
+        candidates.sort(Comparator.comparingInt((String[] c) -> c[1].length()).reversed());
+
+        Set<String> matchedValues = new HashSet<>();
+        Map<String, List<String>> valuesByField = new LinkedHashMap<>();
+        for (String[] candidate : candidates) {
+            String value = candidate[1];
+            if (value.isBlank() || matchedValues.contains(value)) {
+                continue;
+            }
+
+            int start = indexOfIgnoreCase(remaining.toString(), value);
+            if (start < 0) {
+                continue;
+            }
+
+            String field = resolveField(remaining.toString(), start, value, candidate[0]);
+            valuesByField.computeIfAbsent(field, f -> new ArrayList<>()).add(value);
+            matchedValues.add(value);
+            remaining.replace(start, start + value.length(), " ");
+        }
+
+        valuesByField.forEach((field, values) -> filters.add(values.size() == 1
+            ? Map.of("term", Map.of(field, values.get(0)))
+            : Map.of("terms", Map.of(field, List.copyOf(values)))));
+    }
+
+    /**
+     * 同一个取值可能同时是分类和标签，根据紧随其后的提示词确定字段
+     */
+    private String resolveField(String text, int start, String value, String defaultField) {
+        String suffix = text.substring(start + value.length());
+        if (suffix.startsWith("分类") || suffix.startsWith("类别")) {
+            return knownCategories.contains(value) ? "category" : defaultField;
+        }
+        if (suffix.startsWith("标签") || text.substring(0, start).endsWith("标签")) {
+            return knownTags.contains(value) ? "tags" : defaultField;
+        }
+        if (suffix.startsWith("写的") || suffix.startsWith("发表") || text.substring(0, start).endsWith("作者")) {
+            return knownAuthors.contains(value) ? "author" : defaultField;
+        }
+        return defaultField;
+    }
+
+    /**
+     * 识别相对或绝对时间范围，返回createTime的range条件
+     */
+    private Map<String, Object> extractDateRange(StringBuilder remaining) {
+        String text = remaining.toString();
+
+        Matcher matcher = DATE_RANGE_PATTERN.matcher(text);
+        if (matcher.find()) {
+            return consume(remaining, matcher, Map.of(
+                "gte", normalizeDate(matcher.group(1)),
+                "lte", normalizeDate(matcher.group(2))
+            ));
+        }
+
+        matcher = DATE_AFTER_PATTERN.matcher(text);
+        if (matcher.find()) {
+            return consume(remaining, matcher, Map.of("gte", normalizeDate(matcher.group(1))));
+        }
+
+        matcher = DATE_BEFORE_PATTERN.matcher(text);
+        if (matcher.find()) {
+            return consume(remaining, matcher, Map.of("lt", normalizeDate(matcher.group(1))));
+        }
+
+        matcher = YEAR_MONTH_PATTERN.matcher(text);
+        if (matcher.find()) {
+            int month = Integer.parseInt(matcher.group(2));
+            if (month >= 1 && month <= 12) {
+                LocalDate start = LocalDate.of(Integer.parseInt(matcher.group(1)), month, 1);
+                return consume(remaining, matcher, Map.of(
+                    "gte", start.format(DATE_FORMAT),
+                    "lt", start.plusMonths(1).format(DATE_FORMAT)
+                ));
+            }
+        }
+
+        matcher = YEAR_PATTERN.matcher(text);
+        if (matcher.find()) {
+            LocalDate start = LocalDate.of(Integer.parseInt(matcher.group(1)), 1, 1);
+            return consume(remaining, matcher, Map.of(
+                "gte", start.format(DATE_FORMAT),
+                "lt", start.plusYears(1).format(DATE_FORMAT)
+            ));
+        }
+
+        for (Map.Entry<String, String[]> entry : FIXED_DATE_EXPRESSIONS.entrySet()) {
+            int start = text.indexOf(entry.getKey());
+            if (start >= 0) {
+                remaining.replace(start, start + entry.getKey().length(), " ");
+                Map<String, Object> range = new LinkedHashMap<>();
+                range.put("gte", entry.getValue()[0]);
+                if (entry.getValue()[1] != null) {
+                    range.put("lt", entry.getValue()[1]);
+                }
+                return range;
+            }
+        }
+
+        matcher = RECENT_PATTERN.matcher(text);
+        if (matcher.find()) {
+            int amount = parseNumber(matcher.group(1));
+            String unit = switch (matcher.group(2)) {
+                case "周", "星期" -> "w";
+                case "月" -> "M";
+                case "年" -> "y";
+                default -> "d";
+            };
+            if (amount > 0) {
+                return consume(remaining, matcher, Map.of("gte", "now-" + amount + unit + "/d"));
+            }
+        }
+
+        return null;
+    }
+
+    private Map<String, Object> consume(StringBuilder remaining, Matcher matcher, Map<String, Object> range) {
+        remaining.replace(matcher.start(), matcher.end(), " ");
+        return range;
+    }
+
+    private String normalizeDate(String date) {
+        String[] parts = date.split("-");
+        return LocalDate.of(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]))
+            .format(DATE_FORMAT);
+    }
+
+    /**
+     * 解析阿拉伯数字或简单中文数字（一到九十九）
+     */
+    private int parseNumber(String text) {
+        if (text.chars().allMatch(Character::isDigit)) {
+            return Integer.parseInt(text);
+        }
+        if (text.equals("十")) {
+            return 10;
+        }
+        int tenIndex = text.indexOf('十');
+        if (tenIndex < 0) {
+            return chineseDigit(text.charAt(0));
+        }
+        int tens = tenIndex == 0 ? 1 : chineseDigit(text.charAt(0));
+        int ones = tenIndex == text.length() - 1 ? 0 : chineseDigit(text.charAt(tenIndex + 1));
+        return tens * 10 + ones;
+    }
+
+    private int chineseDigit(char c) {
+        return switch (c) {
+            case '一' -> 1;
+            case '二', '两' -> 2;
+            case '三' -> 3;
+            case '四' -> 4;
+            case '五' -> 5;
+            case '六' -> 6;
+            case '七' -> 7;
+            case '八' -> 8;
+            case '九' -> 9;
+            default -> 0;
+        };
+    }
+
+    /**
+     * 去掉虚词和标点后是否还有未识别的内容
+     */
+    private boolean isResidualEmpty(String residual) {
+        String cleaned = residual;
+        for (String filler : FILLER_WORDS) {
+            cleaned = cleaned.replace(filler, " ");
+        }
+        cleaned = cleaned.replaceAll("[\\p{Punct}\\p{IsPunctuation}\\s]+", "");
+        return cleaned.isEmpty();
+    }
+
+    private int indexOfIgnoreCase(String text, String value) {
+        return text.toLowerCase(Locale.ROOT).indexOf(value.toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.PutScriptRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 存储模板服务
+ * 启动时将固定形态的查询注册为ES存储搜索模板和存储脚本，
+ * 查询时只需发送模板ID和参数，避免每次构建、传输和编译完整的DSL/脚本
+ */
+@Service
+public class SearchTemplateService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchTemplateService.class);
+
+    /**
+     * 全文检索模板（multi_match，filters参数为filter子句数组）
+     */
+    public static final String TEXT_MATCH_TEMPLATE = "text-match-template";
+
+    /**
+     * 混合查询中的向量相似度脚本（无向量的文档得分为0）
+     */
+    public static final String HYBRID_VECTOR_SCORE_SCRIPT = "vector-cosine-hybrid";
+
+    private static final String TEXT_MATCH_TEMPLATE_SOURCE = """
+        {
+          "query": {
+            "bool": {
+              "must": {
+                "multi_match": {
+                  "query": "{{query}}",
+                  "fields": ["title^2", "content", "category", "tags", "author"]
+                }
+              },
+              "filter": {{#toJson}}filters{{/toJson}}
+            }
+          },
+          "_source": {
+            "excludes": ["*Embedding", "passages"]
+          },
+          "from": {{from}},
+          "size": {{size}}
+        }
+        """;
+
+    private static final String HYBRID_VECTOR_SCORE_SCRIPT_SOURCE = """
+        if (doc.containsKey('combinedEmbedding') && doc['combinedEmbedding'].size() > 0) {
+            return cosineSimilarity(params.query_vector, 'combinedEmbedding') + 1.0;
+        } else {
+            return 0.0;
+        }
+        """;
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final ObjectMapper objectMapper;
+
+    private volatile boolean registered = false;
+
+    public SearchTemplateService(ElasticsearchClient elasticsearchClient) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.objectMapper = new ObjectMapper();
+    }
+
+    /**
+     * 注册所有存储模板和存储脚本（幂等，重复注册会覆盖旧版本）
+     */
+    public void registerTemplates() throws IOException {
+        logger.info("注册存储搜索模板和脚本...");
+
+        putStoredScript(TEXT_MATCH_TEMPLATE, "mustache", TEXT_MATCH_TEMPLATE_SOURCE);
+        putStoredScript(HYBRID_VECTOR_SCORE_SCRIPT, "painless", HYBRID_VECTOR_SCORE_SCRIPT_SOURCE);
+
+        registered = true;
+        logger.info("存储搜索模板和脚本注册完成");
+    }
+
+    /**
+     * 模板和脚本是否已注册成功（未注册时调用方应使用内联脚本）
+     */
+    public boolean isRegistered() {
+        return registered;
+    }
+
+    /**
+     * 获取存储脚本的源码（用于未注册时的内联降级）
+     */
+    public String getScriptSource(String scriptId) {
+        return switch (scriptId) {
+            case HYBRID_VECTOR_SCORE_SCRIPT -> HYBRID_VECTOR_SCORE_SCRIPT_SOURCE;
+            default -> throw new IllegalArgumentException("未知的存储脚本: " + scriptId);
+        };
+    }
+
+    /**
+     * 构建模板调用（以DSL字符串形式表示，由ElasticsearchService识别后走search template API）
+     */
+    public String buildTemplateInvocation(String templateId, Map<String, Object> params) {
+        try {
+            Map<String, Object> invocation = new LinkedHashMap<>();
+            invocation.put("id", templateId);
+            invocation.put("params", params);
+            return objectMapper.writeValueAsString(invocation);
+        } catch (IOException e) {
+            throw new IllegalStateException("构建模板调用失败: " + templateId, e);
+        }
+    }
+
+    /**
+     * 写入单个存储脚本
+     */
+    private void putStoredScript(String id, String lang, String source) throws IOException {
+        // 脚本源码必须以字符串形式提交（mustache模板含占位符，不是合法JSON）
+        String body = objectMapper.writeValueAsString(Map.of(
+            "script", Map.of(
+                "lang", lang,
+                "source", source
+            )
+        ));
+
+        PutScriptRequest request = PutScriptRequest.of(p -> p
+            .id(id)
+            .withJson(new StringReader(body))
+        );
+
+        elasticsearchClient.putScript(request);
+        logger.debug("存储脚本已注册: {} ({})", id, lang);
+    }
+}
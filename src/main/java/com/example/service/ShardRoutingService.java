@@ -0,0 +1,317 @@
+package com.example.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Level;
+import co.elastic.clients.elasticsearch._types.aggregations.StringTermsBucket;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.indices.GetMappingResponse;
+import co.elastic.clients.elasticsearch.indices.IndicesStatsResponse;
+import co.elastic.clients.elasticsearch.indices.stats.ShardStats;
+import co.elastic.clients.json.JsonData;
+import com.example.dto.SearchFilters;
+import com.example.model.Document;
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按字段自定义路由（默认关闭）
+ * 文档以配置字段（category或author）的值作为routing写入，同一取值的文档落在同一分片；
+ * 查询带有该字段的等值条件（结构化过滤条件，或DSL中 must/filter 上下文的 term/match）时
+ * 携带相同的routing，只查询一个分片，否则照常查询全部分片。
+ * <p>
+ * 只有读别名下的全部索引都是按路由写入的（创建时在 _meta 中标记）才对查询启用路由，
+ * 在已有索引上开启时写入先按路由进行、查询仍查询全部分片，通过在线重建索引迁移后自动启用；
+ * 按月分区模式不支持在线重建，新建的分区带有标记，未标记的旧分区全部移出读别名后自动启用。
+ * 路由取值集中会造成分片倾斜，定期检查各分片文档数，最大/平均超过阈值时告警
+ */
+@Service
+public class ShardRoutingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardRoutingService.class);
+
+    private static final String META_KEY = "routing";
+    private static final int MAX_TRACKED_VALUES = 1000;
+    private static final String OTHER_VALUES = "_other";
+
+    private final ElasticsearchClient elasticsearchClient;
+
+    @Value("${app.elasticsearch.routing.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.elasticsearch.routing.field:category}")
+    private String field;
+
+    @Value("${app.elasticsearch.index-name:documents}")
+    private String readAlias;
+
+    @Value("${app.elasticsearch.routing.skew-warn-ratio:2.0}")
+    private double skewWarnRatio;
+
+    @Value("${app.elasticsearch.routing.top-values:20}")
+    private int topValues;
+
+    // 读别名下的索引是否都按路由写入；否则查询不使用路由
+    private volatile boolean queryRoutingReady = false;
+
+    private final LongAdder routedQueries = new LongAdder();
+    private final LongAdder fanOutQueries = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> queriesByValue = new ConcurrentHashMap<>();
+
+    public ShardRoutingService(ElasticsearchClient elasticsearchClient) {
+        this.elasticsearchClient = elasticsearchClient;
+    }
+
+    @PostConstruct
+    public void validate() {
+        if (enabled && !"category".equals(field) && !"author".equals(field)) {
+            throw new IllegalStateException("路由字段只支持单值keyword字段 category 或 author: " + field);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 新建索引时写入 _meta 的路由标记
+     */
+    public Map<String, JsonData> indexMeta() {
+        return enabled ? Map.of(META_KEY, JsonData.of(Map.of("field", field))) : Map.of();
+    }
+
+    /**
+     * 文档的routing；未开启或字段为空时返回null（按文档ID路由）
+     */
+    public String routingFor(Document document) {
+        if (!enabled) {
+            return null;
+        }
+        String value = "author".equals(field) ? document.getAuthor() : document.getCategory();
+        return value == null || value.isBlank() ? null : value;
+    }
+
+    /**
+     * 查询的routing：过滤条件或DSL中有路由字段的唯一等值条件时返回该值，否则返回null（查询全部分片）
+     */
+    public String routingFor(JsonNode query, SearchFilters filters) {
+        if (!enabled || !queryRoutingReady) {
+            return null;
+        }
+        List<String> values = new ArrayList<>();
+        if (filters != null) {
+            String value = "author".equals(field) ? filters.getAuthor() : filters.getCategory();
+            if (value != null && !value.isBlank()) {
+                values.add(value);
+            }
+        }
+        collectEqualityValues(query, values);
+
+        String routing = values.isEmpty() || values.stream().distinct().count() > 1 ? null : values.get(0);
+        if (routing == null) {
+            fanOutQueries.increment();
+        } else {
+            routedQueries.increment();
+            String key = queriesByValue.size() < MAX_TRACKED_VALUES || queriesByValue.containsKey(routing)
+                ? routing : OTHER_VALUES;
+            queriesByValue.computeIfAbsent(key, k -> new LongAdder()).increment();
+        }
+        return routing;
+    }
+
+    /**
+     * 收集必须满足的子句中路由字段的等值条件（term、单值terms、match）
+     */
+    private void collectEqualityValues(JsonNode query, List<String> values) {
+        if (query == null || !query.isObject()) {
+            return;
+        }
+        JsonNode term = query.path("term").path(field);
+        if (!term.isMissingNode()) {
+            values.add(term.isObject() ? term.path("value").asText() : term.asText());
+        }
+        JsonNode terms = query.path("terms").path(field);
+        if (terms.isArray() && terms.size() == 1) {
+            values.add(terms.get(0).asText());
+        }
+        JsonNode match = query.path("match").path(field);
+        if (!match.isMissingNode()) {
+            values.add(match.isObject() ? match.path("query").asText() : match.asText());
+        }
+
+        JsonNode bool = query.path("bool");
+        for (String clause : new String[]{"must", "filter"}) {
+            JsonNode children = bool.path(clause);
+            if (children.isArray()) {
+                children.forEach(child -> collectEqualityValues(child, values));
+            } else if (children.isObject()) {
+                collectEqualityValues(children, values);
+            }
+        }
+        collectEqualityValues(query.path("constant_score").path("filter"), values);
+        collectEqualityValues(query.path("function_score").path("query"), values);
+        collectEqualityValues(query.path("script_score").path("query"), values);
+    }
+
+    /**
+     * 检查读别名下的索引是否都带有当前字段的路由标记
+     */
+    public void checkReadiness() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            GetMappingResponse response = elasticsearchClient.indices().getMapping(g -> g.index(readAlias));
+            List<String> unrouted = new ArrayList<>();
+            response.result().forEach((index, record) -> {
+                Map<String, JsonData> meta = record.mappings() == null ? null : record.mappings().meta();
+                JsonData marker = meta == null ? null : meta.get(META_KEY);
+                Object markedField = marker == null ? null : marker.to(Map.class).get("field");
+                if (!field.equals(markedField)) {
+                    unrouted.add(index);
+                }
+            });
+            boolean ready = unrouted.isEmpty() && !response.result().isEmpty();
+            if (ready != queryRoutingReady) {
+                if (ready) {
+                    logger.info("索引均已按 {} 路由写入，查询开始使用路由", field);
+                } else {
+                    logger.warn("索引 {} 未按 {} 路由写入，查询不使用路由（在线重建索引或这些分区移出读别名后自动启用）", unrouted, field);
+                }
+            }
+            queryRoutingReady = ready;
+        } catch (Exception e) {
+            logger.debug("检查路由标记失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 停止查询路由，直到下次检查确认读别名下的索引都按路由写入（回滚到旧索引前调用）
+     */
+    public void suspendQueryRouting() {
+        queryRoutingReady = false;
+    }
+
+    /**
+     * 定期检查路由标记（其他实例切换或回滚索引后及时跟进）
+     */
+    @Scheduled(initialDelay = 30000, fixedDelayString = "${app.elasticsearch.routing.readiness-interval-ms:30000}")
+    public void scheduledReadinessCheck() {
+        checkReadiness();
+    }
+
+    /**
+     * 定期检查分片倾斜，最大/平均超过阈值时告警
+     */
+    @Scheduled(initialDelay = 60000, fixedDelayString = "${app.elasticsearch.routing.skew-check-interval-ms:600000}")
+    public void scheduledSkewCheck() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Map<String, Object> skew = getSkew();
+            Object ratio = skew.get("maxSkewRatio");
+            if (ratio instanceof Double value && value > skewWarnRatio) {
+                logger.warn("分片文档分布倾斜: 最大/平均 = {}（阈值 {}），热点取值: {}",
+                    value, skewWarnRatio, skew.get("topValues"));
+            }
+        } catch (Exception e) {
+            logger.debug("检查分片倾斜失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 路由倾斜情况：各索引主分片文档数及最大/平均比值、文档数最多的路由取值、查询路由统计
+     */
+    public Map<String, Object> getSkew() throws IOException {
+        Map<String, Object> skew = new LinkedHashMap<>();
+        skew.put("enabled", enabled);
+        skew.put("field", field);
+        skew.put("queryRoutingReady", queryRoutingReady);
+        if (!enabled) {
+            return skew;
+        }
+
+        IndicesStatsResponse stats = elasticsearchClient.indices().stats(s -> s
+            .index(readAlias)
+            .metric("docs")
+            .level(Level.Shards));
+        Map<String, Object> indices = new LinkedHashMap<>();
+        double maxRatio = 0;
+        for (var entry : stats.indices().entrySet()) {
+            if (entry.getValue().shards() == null) {
+                continue;
+            }
+            List<Long> shardDocs = new ArrayList<>();
+            entry.getValue().shards().entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(shard -> shard.getValue().stream()
+                    .filter(copy -> copy.routing() != null && copy.routing().primary())
+                    .findFirst()
+                    .map(ShardStats::docs)
+                    .ifPresent(docs -> shardDocs.add(docs.count())));
+            double mean = shardDocs.stream().mapToLong(Long::longValue).average().orElse(0);
+            long max = shardDocs.stream().mapToLong(Long::longValue).max().orElse(0);
+            double ratio = mean > 0 ? Math.round(max / mean * 100) / 100.0 : 0;
+            maxRatio = Math.max(maxRatio, ratio);
+
+            Map<String, Object> index = new LinkedHashMap<>();
+            index.put("shardDocs", shardDocs);
+            index.put("skewRatio", ratio);
+            indices.put(entry.getKey(), index);
+        }
+        skew.put("indices", indices);
+        skew.put("maxSkewRatio", maxRatio);
+
+        SearchResponse<Void> values = elasticsearchClient.search(s -> s
+            .index(readAlias)
+            .size(0)
+            .aggregations("values", a -> a.terms(t -> t.field(field).size(topValues)))
+        , Void.class);
+        long total = values.hits().total() == null ? 0 : values.hits().total().value();
+        Map<String, Object> top = new LinkedHashMap<>();
+        for (StringTermsBucket bucket : values.aggregations().get("values").sterms().buckets().array()) {
+            top.put(bucket.key().stringValue(), Map.of(
+                "docs", bucket.docCount(),
+                "share", total > 0 ? Math.round(bucket.docCount() * 1000.0 / total) / 10.0 : 0.0
+            ));
+        }
+        skew.put("topValues", top);
+
+        Map<String, Object> queries = new LinkedHashMap<>();
+        queries.put("routed", routedQueries.sum());
+        queries.put("fanOut", fanOutQueries.sum());
+        Map<String, Long> byValue = new LinkedHashMap<>();
+        queriesByValue.entrySet().stream()
+            .sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+            .limit(topValues)
+            .forEach(entry -> byValue.put(entry.getKey(), entry.getValue().sum()));
+        queries.put("byValue", byValue);
+        skew.put("queries", queries);
+        return skew;
+    }
+
+    /**
+     * 已存储文档的routing与新的routing是否不同（字段值变化后需要从原分片删除）
+     */
+    public boolean routingChanged(JsonNode stored, Document document) {
+        if (!enabled || stored == null) {
+            return false;
+        }
+        String storedRouting = stored.hasNonNull("_routing") ? stored.get("_routing").asText() : null;
+        return !Objects.equals(storedRouting, routingFor(document));
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 按月时间分区
+ * 文档按 createTime 所在月份写入 {读别名}-yyyy.MM 分区，所有分区挂在读别名下。
+ * 查询中带有 createTime 范围（结构化过滤条件或DSL中 must/filter 上下文的 range 查询）时，
+ * 只查询与范围重叠的分区；无法解析的范围按不限处理，查询全部分区。
+ * 绝对时间与存储的 createTime 按相同方式比较，分区边界是精确的；
+ * 相对于now的日期表达式和指定了time_zone的范围两端各放宽14小时（最大时区偏移），避免漏查边界分区
+ */
+public class TimePartitions {
+
+    private static final DateTimeFormatter SUFFIX_FORMAT = DateTimeFormatter.ofPattern("yyyy.MM");
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final Pattern SUFFIX_PATTERN = Pattern.compile("-(\\d{4}\\.\\d{2})$");
+    private static final long MAX_ZONE_OFFSET_HOURS = 14;
+    private static final Pattern DATE_MATH_PATTERN = Pattern.compile("([+-])(\\d+)([yMwdhHms])|/([yMwdhHms])");
+
+    /**
+     * 时间范围，null表示该端不限
+     */
+    public record Bounds(LocalDateTime from, LocalDateTime to) {
+
+        static final Bounds UNBOUNDED = new Bounds(null, null);
+
+        public boolean isUnbounded() {
+            return from == null && to == null;
+        }
+
+        Bounds intersect(Bounds other) {
+            LocalDateTime start = from == null ? other.from
+                : other.from == null ? from : (from.isAfter(other.from) ? from : other.from);
+            LocalDateTime end = to == null ? other.to
+                : other.to == null ? to : (to.isBefore(other.to) ? to : other.to);
+            return new Bounds(start, end);
+        }
+    }
+
+    private final String baseName;
+
+    public TimePartitions(String baseName) {
+        this.baseName = baseName;
+    }
+
+    /**
+     * 文档创建时间所在的分区
+     */
+    public String partitionFor(LocalDateTime createTime) {
+        return baseName + "-" + YearMonth.from(createTime).format(SUFFIX_FORMAT);
+    }
+
+    /**
+     * 分区对应的月份；不是分区的索引（如迁移前的版本索引）返回null
+     */
+    public YearMonth monthOf(String index) {
+        if (!index.startsWith(baseName + "-")) {
+            return null;
+        }
+        Matcher matcher = SUFFIX_PATTERN.matcher(index);
+        return matcher.find() ? YearMonth.parse(matcher.group(1), SUFFIX_FORMAT) : null;
+    }
+
+    /**
+     * 与时间范围重叠的分区（不是分区的索引总是包含在内）
+     */
+    public List<String> overlapping(Bounds bounds, Collection<String> indices) {
+        LocalDateTime from = bounds.from();
+        LocalDateTime to = bounds.to();
+
+        List<String> result = new ArrayList<>();
+        for (String index : indices) {
+            YearMonth month = monthOf(index);
+            if (month == null) {
+                result.add(index);
+                continue;
+            }
+            LocalDateTime monthStart = month.atDay(1).atStartOfDay();
+            LocalDateTime monthEnd = month.plusMonths(1).atDay(1).atStartOfDay();
+            if ((to == null || !monthStart.isAfter(to)) && (from == null || monthEnd.isAfter(from))) {
+                result.add(index);
+            }
+        }
+        result.sort(null);
+        return result;
+    }
+
+    /**
+     * 从结构化过滤条件中取时间范围
+     */
+    public static Bounds fromFilters(String createTimeFrom, String createTimeTo) {
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        return new Bounds(bound(createTimeFrom, false, now, false), bound(createTimeTo, true, now, false));
+    }
+
+    /**
+     * 从查询DSL中提取指定字段的时间范围
+     * 只看必须满足的子句（bool的must/filter、constant_score的filter），should和must_not不收窄范围
+     */
+    public static Bounds extractRange(JsonNode query, String field) {
+        if (query == null || !query.isObject()) {
+            return Bounds.UNBOUNDED;
+        }
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        Bounds bounds = Bounds.UNBOUNDED;
+
+        JsonNode range = query.path("range").path(field);
+        if (range.isObject()) {
+            String from = text(range, "gte", "gt", "from");
+            String to = text(range, "lte", "lt", "to");
+            boolean zoned = range.hasNonNull("time_zone");
+            bounds = bounds.intersect(new Bounds(bound(from, false, now, zoned), bound(to, true, now, zoned)));
+        }
+
+        JsonNode bool = query.path("bool");
+        for (String clause : new String[]{"must", "filter"}) {
+            JsonNode children = bool.path(clause);
+            if (children.isArray()) {
+                for (JsonNode child : children) {
+                    bounds = bounds.intersect(extractRange(child, field));
+                }
+            } else if (children.isObject()) {
+                bounds = bounds.intersect(extractRange(children, field));
+            }
+        }
+
+        bounds = bounds.intersect(extractRange(query.path("constant_score").path("filter"), field));
+        bounds = bounds.intersect(extractRange(query.path("function_score").path("query"), field));
+        bounds = bounds.intersect(extractRange(query.path("script_score").path("query"), field));
+        return bounds;
+    }
+
+    /**
+     * 解析范围的一端，必要时按最大时区偏移放宽
+     */
+    private static LocalDateTime bound(String value, boolean upper, LocalDateTime now, boolean zoned) {
+        LocalDateTime time = parseBound(value, upper, now);
+        if (time == null || !(zoned || value.trim().startsWith("now"))) {
+            return time;
+        }
+        return upper ? time.plusHours(MAX_ZONE_OFFSET_HOURS) : time.minusHours(MAX_ZONE_OFFSET_HOURS);
+    }
+
+    private static String text(JsonNode node, String... names) {
+        for (String name : names) {
+            JsonNode value = node.get(name);
+            if (value != null && !value.isNull()) {
+                return value.asText();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 解析范围的一端：绝对时间（yyyy-MM-dd HH:mm:ss、yyyy-MM-dd、yyyy-MM、yyyy、ISO-8601、毫秒时间戳）
+     * 或日期表达式（now-7d/d、2024-01-01||+1M）。只精确到日期的上界取当天结束。
+     * 无法解析时返回null（该端不限）
+     *
+     * @param upper 是否为上界（上界的取整向后取）
+     */
+    static LocalDateTime parseBound(String value, boolean upper, LocalDateTime now) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String text = value.trim();
+        String anchor;
+        String math;
+        if (text.startsWith("now")) {
+            anchor = "now";
+            math = text.substring(3);
+        } else if (text.contains("||")) {
+            anchor = text.substring(0, text.indexOf("||"));
+            math = text.substring(text.indexOf("||") + 2);
+        } else {
+            anchor = text;
+            math = "";
+        }
+
+        LocalDateTime time = "now".equals(anchor) ? now : parseAbsolute(anchor, upper);
+        if (time == null) {
+            return null;
+        }
+
+        Matcher matcher = DATE_MATH_PATTERN.matcher(math);
+        int position = 0;
+        while (matcher.find()) {
+            if (matcher.start() != position) {
+                return null;
+            }
+            position = matcher.end();
+            if (matcher.group(4) != null) {
+                time = round(time, matcher.group(4).charAt(0), upper);
+            } else {
+                long amount = Long.parseLong(matcher.group(2)) * ("-".equals(matcher.group(1)) ? -1 : 1);
+                time = time.plus(amount, unitOf(matcher.group(3).charAt(0)));
+            }
+        }
+        return position == math.length() ? time : null;
+    }
+
+    private static LocalDateTime parseAbsolute(String text, boolean upper) {
+        try {
+            if (text.matches("\\d{9,}")) {
+                return LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(text)), ZoneOffset.UTC);
+            }
+            if (text.matches("\\d{4}")) {
+                LocalDateTime start = LocalDate.of(Integer.parseInt(text), 1, 1).atStartOfDay();
+                return upper ? start.plusYears(1).minusNanos(1) : start;
+            }
+            if (text.matches("\\d{4}-\\d{2}")) {
+                LocalDateTime start = YearMonth.parse(text).atDay(1).atStartOfDay();
+                return upper ? start.plusMonths(1).minusNanos(1) : start;
+            }
+            if (text.matches("\\d{4}-\\d{2}-\\d{2}")) {
+                LocalDateTime start = LocalDate.parse(text).atStartOfDay();
+                return upper ? start.plusDays(1).minusNanos(1) : start;
+            }
+            if (text.matches("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}")) {
+                return LocalDateTime.parse(text, DATE_TIME_FORMAT);
+            }
+            if (text.endsWith("Z") || text.matches(".*[+-]\\d{2}:\\d{2}$")) {
+                return OffsetDateTime.parse(text).withOffsetSameInstant(ZoneOffset.UTC).toLocalDateTime();
+            }
+            return LocalDateTime.parse(text);
+        } catch (DateTimeParseException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static ChronoUnit unitOf(char unit) {
+        return switch (unit) {
+            case 'y' -> ChronoUnit.YEARS;
+            case 'M' -> ChronoUnit.MONTHS;
+            case 'w' -> ChronoUnit.WEEKS;
+            case 'd' -> ChronoUnit.DAYS;
+            case 'h', 'H' -> ChronoUnit.HOURS;
+            case 'm' -> ChronoUnit.MINUTES;
+            default -> ChronoUnit.SECONDS;
+        };
+    }
+
+    /**
+     * 日期表达式的取整：下界取单位开始，上界取单位结束
+     */
+    private static LocalDateTime round(LocalDateTime time, char unit, boolean upper) {
+        LocalDateTime start = switch (unit) {
+            case 'y' -> time.toLocalDate().withDayOfYear(1).atStartOfDay();
+            case 'M' -> time.toLocalDate().withDayOfMonth(1).atStartOfDay();
+            case 'w' -> time.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay();
+            case 'd' -> time.toLocalDate().atStartOfDay();
+            default -> time.truncatedTo(unitOf(unit));
+        };
+        return upper ? start.plus(1, unitOf(unit)).minusNanos(1) : start;
+    }
+}
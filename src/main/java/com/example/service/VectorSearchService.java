@@ -1,26 +1,36 @@
 package com.example.service;
 
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Script;
+import co.elastic.clients.elasticsearch._types.mapping.Property;
 import co.elastic.clients.elasticsearch._types.query_dsl.Query;
 import co.elastic.clients.elasticsearch.core.SearchRequest;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.indices.GetMappingResponse;
 import co.elastic.clients.json.JsonData;
+import com.example.dto.SearchFilters;
 import com.example.model.Document;
+import com.example.resilience.HedgedRequestExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 /**
  * 向量搜索服务
- * 基于文本向量相似度进行语义搜索
+ * 基于文本向量相似度进行语义搜索。读别名下的索引都带有段落向量映射时按段落（passages.embedding）检索，
+ * 否则回退到整篇向量（combinedEmbedding）；旧索引需以 reembed=true 在线重建后才会按段落检索
  */
 @Service
 public class VectorSearchService {
@@ -30,135 +40,256 @@ public class VectorSearchService {
     @Autowired
     private ElasticsearchClient elasticsearchClient;
     
+    @Autowired
+    private ElasticsearchAsyncClient elasticsearchAsyncClient;
+    
+    @Autowired
+    private HedgedRequestExecutor hedgedRequestExecutor;
+    
     @Autowired
     private EmbeddingService embeddingService;
     
+    @Autowired
+    private SearchTemplateService searchTemplateService;
+    
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+    
+    @Autowired
+    private QueryRecorder queryRecorder;
+    
     @Value("${app.elasticsearch.index-name:documents}")
     private String indexName;
     
+    @Value("${app.search.rescore.window.default:100}")
+    private int defaultWindow;
+    
+    // 读别名下的索引是否都带有段落向量映射，由定时检查保持更新；检查前按整篇向量检索
+    private volatile boolean passageVectorsReady = false;
+    
+    /**
+     * 基于向量相似度的搜索（使用默认候选窗口）
+     */
+    @Cacheable(value = "vectorSearchResults", key = "@indexGenerationService.current() + '_' + #query + '_' + #size + '_' + #filters")
+    public SearchResponse<Document> vectorSearch(String query, int size, SearchFilters filters) throws IOException {
+        return executeVectorSearch(query, size, defaultWindow, filters);
+    }
+    
     /**
      * 基于向量相似度的搜索
+     * 对正文段落向量执行nested kNN检索，每个文档按其最相关段落打分（长文档不再被单一向量稀释），
+     * 每个分片从HNSW图中取 window 个候选再返回相似度最高的 size 个结果；
+     * 过滤条件作为kNN的filter，在图遍历过程中剪枝，保证返回足够的结果
      */
-    @Cacheable(value = "vectorSearchResults", key = "#query + '_' + #size")
-    public SearchResponse<Document> vectorSearch(String query, int size) throws IOException {
-        logger.info("执行向量搜索: {}", query);
+    @Cacheable(value = "vectorSearchResults", key = "@indexGenerationService.current() + '_' + #query + '_' + #size + '_' + #window + '_' + #filters")
+    public SearchResponse<Document> vectorSearch(String query, int size, int window, 
+                                                 SearchFilters filters) throws IOException {
+        return executeVectorSearch(query, size, window, filters);
+    }
+    
+    /**
+     * 混合搜索（使用默认重排窗口）
+     */
+    public SearchResponse<Document> hybridSearch(String query, int size) throws IOException {
+        return hybridSearch(query, size, defaultWindow, null);
+    }
+    
+    /**
+     * 混合搜索：两阶段检索
+     * 第一阶段用全文检索（BM25）选出候选集，第二阶段只对每个分片的前 window 个候选
+     * 用 combinedEmbedding 精确计算余弦相似度重排，避免对全索引执行脚本打分
+     */
+    public SearchResponse<Document> hybridSearch(String query, int size, int window, 
+                                                 SearchFilters filters) throws IOException {
+        logger.info("执行混合搜索: {} (重排窗口: {})", query, window);
         
         // 1. 生成查询向量
+        long embeddingStart = System.currentTimeMillis();
         float[] queryVector = embeddingService.generateEmbedding(query);
+        queryRecorder.stage("embedding", System.currentTimeMillis() - embeddingStart);
+        
+        // 2. 候选召回查询（全文检索，过滤条件放在filter上下文中）
+        Query candidateQuery = elasticsearchService.applyFilters(
+            buildTextQuery(query), elasticsearchService.buildFilterQueries(filters));
+        int windowSize = Math.max(window, size);
+        List<String> indices = elasticsearchService.searchIndices(filters);
+        String routing = elasticsearchService.searchRouting(null, filters);
         
+        // 3. 执行搜索（可对冲）；向量不可用时不做重排，避免用空向量打分
+        SearchResponse<Document> response;
         if (queryVector.length == 0) {
-            logger.warn("查询向量生成失败，返回空结果");
-            return createEmptySearchResponse();
+            logger.warn("查询向量生成失败，混合搜索降级为全文搜索");
+            response = hedgedSearch(preference -> SearchRequest.of(s -> s
+                .index(indices)
+                .routing(routing)
+                .query(candidateQuery)
+                .size(size)
+                .source(source -> source.filter(f -> f.excludes("*Embedding", "passages")))
+                .preference(preference)
+            ));
+        } else {
+            Query vectorRescoreQuery = buildVectorRescoreQuery(queryVector);
+            response = hedgedSearch(preference -> SearchRequest.of(s -> s
+                .index(indices)
+                .routing(routing)
+                .query(candidateQuery)
+                .rescore(r -> r
+                    .windowSize(windowSize)
+                    .query(rq -> rq
+                        .query(vectorRescoreQuery)
+                        .queryWeight(1.0)
+                        .rescoreQueryWeight(3.0)  // 向量相似度权重
+                    )
+                )
+                .size(size)
+                .source(source -> source.filter(f -> f.excludes("*Embedding", "passages")))
+                .preference(preference)
+            ));
         }
         
-        // 2. 构建向量查询
-        Query vectorQuery = buildVectorQuery(queryVector);
-        
-        // 3. 执行搜索
-        SearchRequest searchRequest = SearchRequest.of(s -> s
-            .index(indexName)
-            .query(vectorQuery)
-            .size(size)
-            .source(source -> source.includes("*").excludes("*Embedding"))  // 排除向量字段
-        );
-        
-        SearchResponse<Document> response = elasticsearchClient.search(searchRequest, Document.class);
-        
-        logger.info("向量搜索完成，找到 {} 个结果", response.hits().total().value());
+        logger.info("混合搜索完成，找到 {} 个结果", response.hits().total().value());
         return response;
     }
     
-    /**
-     * 混合搜索：结合向量搜索和传统全文搜索
-     */
-    public SearchResponse<Document> hybridSearch(String query, int size) throws IOException {
-        logger.info("执行混合搜索: {}", query);
+    private SearchResponse<Document> executeVectorSearch(String query, int size, int window, 
+                                                         SearchFilters filters) throws IOException {
+        logger.info("执行向量搜索: {} (候选窗口: {})", query, window);
         
         // 1. 生成查询向量
+        long embeddingStart = System.currentTimeMillis();
         float[] queryVector = embeddingService.generateEmbedding(query);
+        queryRecorder.stage("embedding", System.currentTimeMillis() - embeddingStart);
         
-        // 2. 构建混合查询
-        Query hybridQuery = buildHybridQuery(query, queryVector);
+        if (queryVector.length == 0) {
+            logger.warn("查询向量生成失败，返回空结果");
+            return createEmptySearchResponse();
+        }
         
-        // 3. 执行搜索
-        SearchRequest searchRequest = SearchRequest.of(s -> s
-            .index(indexName)
-            .query(hybridQuery)
+        // 2. 执行kNN搜索（可对冲）
+        List<Float> vector = toVectorList(queryVector);
+        int numCandidates = Math.max(window, size);
+        List<Query> filterQueries = elasticsearchService.buildFilterQueries(filters);
+        List<String> indices = elasticsearchService.searchIndices(filters);
+        String routing = elasticsearchService.searchRouting(null, filters);
+        String vectorField = passageVectorsReady ? "passages.embedding" : "combinedEmbedding";
+        SearchResponse<Document> response = hedgedSearch(preference -> SearchRequest.of(s -> s
+            .index(indices)
+            .routing(routing)
+            .knn(knn -> knn
+                .field(vectorField)
+                .queryVector(vector)
+                .k(size)
+                .numCandidates(numCandidates)
+                .filter(filterQueries)
+            )
             .size(size)
-            .source(source -> source.includes("*").excludes("*Embedding"))
-        );
-        
-        SearchResponse<Document> response = elasticsearchClient.search(searchRequest, Document.class);
+            .source(source -> source.filter(f -> f.excludes("*Embedding", "passages")))  // 排除向量字段
+            .preference(preference)
+        ));
         
-        logger.info("混合搜索完成，找到 {} 个结果", response.hits().total().value());
+        logger.info("向量搜索完成，找到 {} 个结果", response.hits().total().value());
         return response;
     }
     
     /**
-     * 构建向量查询
+     * 检查读别名下的索引是否都带有 passages.embedding 映射（在线重建切换或回滚后立即调用）
+     */
+    public void checkPassageMapping() {
+        try {
+            GetMappingResponse response = elasticsearchClient.indices().getMapping(g -> g.index(indexName));
+            List<String> missing = new ArrayList<>();
+            response.result().forEach((index, record) -> {
+                Property passages = record.mappings() == null ? null : record.mappings().properties().get("passages");
+                if (passages == null || !passages.isNested()
+                    || !passages.nested().properties().containsKey("embedding")) {
+                    missing.add(index);
+                }
+            });
+            boolean ready = missing.isEmpty() && !response.result().isEmpty();
+            if (ready != passageVectorsReady) {
+                if (ready) {
+                    logger.info("索引均已带有段落向量映射，向量搜索按段落检索");
+                } else {
+                    logger.warn("索引 {} 没有段落向量映射，向量搜索回退到 combinedEmbedding（以 reembed=true 在线重建索引后自动启用）", missing);
+                }
+            }
+            passageVectorsReady = ready;
+        } catch (Exception e) {
+            logger.debug("检查段落向量映射失败: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * 停止按段落检索，直到下次检查确认（回滚到可能没有段落映射的旧索引前调用）
+     */
+    public void suspendPassageSearch() {
+        passageVectorsReady = false;
+    }
+    
+    /**
+     * 定期检查段落向量映射（启动时立即执行，其他实例切换或回滚索引后及时跟进）
+     */
+    @Scheduled(fixedDelayString = "${app.search.vector.mapping-check-interval-ms:30000}")
+    public void scheduledPassageMappingCheck() {
+        checkPassageMapping();
+    }
+    
+    /**
+     * 执行可对冲的搜索请求：主请求超过延迟阈值未返回时，以不同的preference发送副本请求
      */
-    private Query buildVectorQuery(float[] queryVector) {
-        // 使用 script_score 查询进行向量相似度计算
+    private SearchResponse<Document> hedgedSearch(Function<String, SearchRequest> requestFactory) throws IOException {
+        long start = System.currentTimeMillis();
+        try {
+            return hedgedRequestExecutor.execute(preference -> 
+                elasticsearchAsyncClient.search(requestFactory.apply(preference), Document.class));
+        } finally {
+            queryRecorder.stage("elasticsearch", System.currentTimeMillis() - start);
+        }
+    }
+    
+    /**
+     * 构建重排阶段的向量相似度查询（只作用于重排窗口内的候选文档）
+     */
+    private Query buildVectorRescoreQuery(float[] queryVector) {
         return Query.of(q -> q
             .scriptScore(ss -> ss
                 .query(Query.of(matchAll -> matchAll.matchAll(m -> m)))
-                .script(script -> script
-                    .source("""
-                        // 检查文档是否有combinedEmbedding字段
-                        if (doc.containsKey('combinedEmbedding') && doc['combinedEmbedding'].size() > 0) {
-                            // 计算余弦相似度并加1确保分数为正
-                            return cosineSimilarity(params.query_vector, 'combinedEmbedding') + 1.0;
-                        } else {
-                            // 如果没有向量，使用标题和内容的文本相似度
-                            return 0.1;
-                        }
-                        """)
-                    .params(createVectorParams(queryVector))
-                )
-                .minScore(0.5f)  // 过滤相似度过低的结果
+                .script(vectorScoreScript(SearchTemplateService.HYBRID_VECTOR_SCORE_SCRIPT, queryVector))
             )
         );
     }
     
     /**
-     * 构建混合查询（向量 + 全文搜索）
+     * 构建全文搜索查询
      */
-    private Query buildHybridQuery(String queryText, float[] queryVector) {
-        return Query.of(q -> q
-            .bool(bool -> bool
-                .should(
-                    // 向量相似度查询（权重更高）
-                    Query.of(vector -> vector
-                        .scriptScore(ss -> ss
-                            .query(Query.of(matchAll -> matchAll.matchAll(m -> m)))
-                            .script(script -> script
-                                .source("""
-                                    if (doc.containsKey('combinedEmbedding') && doc['combinedEmbedding'].size() > 0) {
-                                        return cosineSimilarity(params.query_vector, 'combinedEmbedding') + 1.0;
-                                    } else {
-                                        return 0.0;
-                                    }
-                                    """)
-                                .params(createVectorParams(queryVector))
-                            )
-                            .boost(3.0f)  // 向量搜索权重
-                        )
-                    ),
-                    
-                    // 传统全文搜索
-                    Query.of(text -> text
-                        .multiMatch(mm -> mm
-                            .query(queryText)
-                            .fields("title^2", "content", "category", "tags", "author")
-                            .type(co.elastic.clients.elasticsearch._types.query_dsl.TextQueryType.BestFields)
-                            .boost(1.0f)  // 全文搜索权重
-                        )
-                    )
-                )
+    private Query buildTextQuery(String queryText) {
+        return Query.of(text -> text
+            .multiMatch(mm -> mm
+                .query(queryText)
+                .fields("title^2", "content", "category", "tags", "author")
+                .type(co.elastic.clients.elasticsearch._types.query_dsl.TextQueryType.BestFields)
+                .boost(1.0f)  // 全文搜索权重
             )
         );
     }
     
+    /**
+     * 构建向量相似度脚本：已注册时引用存储脚本，只发送脚本ID和查询向量；否则降级为内联脚本
+     */
+    private Script vectorScoreScript(String scriptId, float[] queryVector) {
+        if (searchTemplateService.isRegistered()) {
+            return Script.of(script -> script
+                .id(scriptId)
+                .params(createVectorParams(queryVector))
+            );
+        }
+        
+        return Script.of(script -> script
+            .source(searchTemplateService.getScriptSource(scriptId))
+            .params(createVectorParams(queryVector))
+        );
+    }
+    
     /**
      * 创建向量参数
      */
@@ -168,6 +299,14 @@ public class VectorSearchService {
         return params;
     }
     
+    private List<Float> toVectorList(float[] vector) {
+        List<Float> values = new ArrayList<>(vector.length);
+        for (float value : vector) {
+            values.add(value);
+        }
+        return values;
+    }
+    
     /**
      * 创建空的搜索响应
      */
@@ -210,10 +349,7 @@ public class VectorSearchService {
                         .mustNot(mn -> mn.term(t -> t.field("_id").value(documentId)))  // 排除自身
                     )
                 ))
-                .script(script -> script
-                    .source("cosineSimilarity(params.query_vector, 'combinedEmbedding') + 1.0")
-                    .params(createVectorParams(documentVector))
-                )
+                .script(vectorScoreScript(SearchTemplateService.HYBRID_VECTOR_SCORE_SCRIPT, documentVector))
                 .minScore(0.7f)  // 相似度阈值
             )
         );
@@ -222,7 +358,7 @@ public class VectorSearchService {
             .index(indexName)
             .query(similarQuery)
             .size(size)
-            .source(source -> source.includes("*").excludes("*Embedding"))
+            .source(source -> source.filter(f -> f.excludes("*Embedding", "passages")))
         );
         
         return elasticsearchClient.search(searchRequest, Document.class);
@@ -0,0 +1,289 @@
+package com.example.tools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 查询回放工具（独立运行，不启动Spring容器）
+ * <p>
+ * replay：按录制日志中的时间间隔（可按倍数加速，0表示不等待）向目标实例重新发送查询，
+ * 输出每个请求的实际延迟；compare：比较两份结果（或录制日志本身）的延迟分布。
+ * <pre>
+ * replay  --log data/query-log --target http://localhost:8080 [--speed 1.0] [--max-in-flight 64]
+ *         [--types hybrid,intelligent,vector] [--limit 0] [--output replay-result.ndjson]
+ * compare baseline.ndjson candidate.ndjson
+ * </pre>
+ */
+public class QueryReplayTool {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.95, 0.99};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            printUsage();
+            System.exit(1);
+        }
+
+        switch (args[0]) {
+            case "replay" -> replay(parseOptions(Arrays.copyOfRange(args, 1, args.length)));
+            case "compare" -> {
+                if (args.length != 3) {
+                    printUsage();
+                    System.exit(1);
+                }
+                compare(Paths.get(args[1]), Paths.get(args[2]));
+            }
+            default -> {
+                printUsage();
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("用法:");
+        System.err.println("  replay --log <文件或目录> --target <http://host:port> [--speed 1.0] [--max-in-flight 64]");
+        System.err.println("         [--types hybrid,intelligent,vector] [--limit 0] [--output replay-result.ndjson]");
+        System.err.println("  compare <基线结果> <对比结果>");
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("无法识别的参数: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    /**
+     * 按原始节奏回放查询日志
+     */
+    private static void replay(Map<String, String> options) throws Exception {
+        Path logPath = Paths.get(require(options, "log"));
+        String target = require(options, "target").replaceAll("/+$", "");
+        double speed = Double.parseDouble(options.getOrDefault("speed", "1.0"));
+        int maxInFlight = Integer.parseInt(options.getOrDefault("max-in-flight", "64"));
+        int limit = Integer.parseInt(options.getOrDefault("limit", "0"));
+        Set<String> types = Set.of(options.getOrDefault("types", "hybrid,intelligent,vector").split(","));
+        Path output = Paths.get(options.getOrDefault("output", "replay-result.ndjson"));
+
+        List<JsonNode> records = readRecords(logPath).stream()
+            .filter(record -> types.contains(record.path("type").asText()))
+            .sorted(Comparator.comparingLong(record -> record.path("timestamp").asLong()))
+            .toList();
+        if (limit > 0 && records.size() > limit) {
+            records = records.subList(0, limit);
+        }
+        if (records.isEmpty()) {
+            System.err.println("日志中没有可回放的查询: " + logPath);
+            return;
+        }
+        System.out.printf("回放 %d 条查询 -> %s（速度 x%s，最大并发 %d）%n", records.size(), target,
+            speed <= 0 ? "不限" : speed, maxInFlight);
+
+        HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        ConcurrentLinkedQueue<ObjectNode> results = new ConcurrentLinkedQueue<>();
+
+        long firstTimestamp = records.get(0).path("timestamp").asLong();
+        long replayStart = System.nanoTime();
+        for (JsonNode record : records) {
+            long offsetMs = record.path("timestamp").asLong() - firstTimestamp;
+            long dueNanos = speed <= 0 ? replayStart : replayStart + (long) (offsetMs / speed * 1_000_000);
+            long waitNanos = dueNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+            inFlight.acquire();
+
+            // 发送时间晚于计划时间（并发上限或客户端过慢）时记录滞后，便于判断回放是否失真
+            long lagMs = TimeUnit.NANOSECONDS.toMillis(Math.max(0, System.nanoTime() - dueNanos));
+            long sendStart = System.nanoTime();
+            client.sendAsync(buildRequest(target, record), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    ObjectNode result = objectMapper.createObjectNode();
+                    result.put("timestamp", record.path("timestamp").asLong());
+                    result.put("type", record.path("type").asText());
+                    result.put("query", record.path("query").asText());
+                    result.put("status", error == null ? response.statusCode() : 0);
+                    result.put("latencyMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sendStart));
+                    result.put("lagMs", lagMs);
+                    if (error != null) {
+                        result.put("error", String.valueOf(error.getMessage()));
+                    }
+                    results.add(result);
+                    inFlight.release();
+                });
+        }
+        inFlight.acquire(maxInFlight);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            for (ObjectNode result : results) {
+                writer.write(objectMapper.writeValueAsString(result));
+                writer.newLine();
+            }
+        }
+        System.out.printf("回放完成，耗时 %dms，结果已写入 %s%n",
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - replayStart), output.toAbsolutePath());
+        printSummary(summarize(new ArrayList<>(results)));
+    }
+
+    private static HttpRequest buildRequest(String target, JsonNode record) throws IOException {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("query", record.path("query").asText());
+        body.put("page", record.path("page").asInt(0));
+        body.put("size", record.path("size").asInt(10));
+        if (record.has("filters")) {
+            body.set("filters", record.get("filters"));
+        }
+        return HttpRequest.newBuilder(URI.create(target + "/api/search/" + record.path("type").asText()))
+            .timeout(Duration.ofSeconds(60))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)))
+            .build();
+    }
+
+    /**
+     * 比较两份结果的延迟分布（录制日志和回放结果格式兼容，均可作为输入）
+     */
+    private static void compare(Path baselinePath, Path candidatePath) throws IOException {
+        Map<String, LatencySummary> baseline = summarize(readRecords(baselinePath));
+        Map<String, LatencySummary> candidate = summarize(readRecords(candidatePath));
+
+        System.out.printf("%-12s %-8s %10s %10s %10s%n", "类型", "指标", "基线", "对比", "变化");
+        for (String type : candidate.keySet()) {
+            LatencySummary base = baseline.get(type);
+            LatencySummary current = candidate.get(type);
+            if (base == null) {
+                System.out.printf("%-12s 基线中没有该类型的请求%n", type);
+                continue;
+            }
+            printRow(type, "count", base.count(), current.count());
+            printRow(type, "errors%", base.errorRate() * 100, current.errorRate() * 100);
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                printRow(type, "p" + Math.round(PERCENTILES[i] * 100), base.percentiles()[i], current.percentiles()[i]);
+            }
+            printRow(type, "max", base.max(), current.max());
+        }
+    }
+
+    private static void printRow(String type, String metric, double base, double current) {
+        String change = base == 0 ? "-" : String.format("%+.1f%%", (current - base) / base * 100);
+        System.out.printf("%-12s %-8s %10.1f %10.1f %10s%n", type, metric, base, current, change);
+    }
+
+    record LatencySummary(long count, double errorRate, double[] percentiles, long max) {}
+
+    /**
+     * 按请求类型汇总延迟分布（"all" 为全部请求）；失败请求只计入错误率
+     */
+    private static Map<String, LatencySummary> summarize(List<? extends JsonNode> records) {
+        Map<String, List<JsonNode>> byType = new TreeMap<>();
+        for (JsonNode record : records) {
+            byType.computeIfAbsent("all", key -> new ArrayList<>()).add(record);
+            byType.computeIfAbsent(record.path("type").asText("unknown"), key -> new ArrayList<>()).add(record);
+        }
+
+        Map<String, LatencySummary> summaries = new TreeMap<>();
+        byType.forEach((type, group) -> {
+            long[] latencies = group.stream()
+                .filter(QueryReplayTool::isSuccess)
+                .mapToLong(record -> record.path("latencyMs").asLong())
+                .sorted()
+                .toArray();
+            long errors = group.size() - latencies.length;
+            double[] percentiles = new double[PERCENTILES.length];
+            for (int i = 0; i < PERCENTILES.length && latencies.length > 0; i++) {
+                int index = Math.min(latencies.length - 1,
+                    Math.max(0, (int) Math.ceil(PERCENTILES[i] * latencies.length) - 1));
+                percentiles[i] = latencies[index];
+            }
+            summaries.put(type, new LatencySummary(group.size(), (double) errors / group.size(), percentiles,
+                latencies.length == 0 ? 0 : latencies[latencies.length - 1]));
+        });
+        return summaries;
+    }
+
+    private static boolean isSuccess(JsonNode record) {
+        int status = record.path("status").asInt(200);
+        return status >= 200 && status < 300;
+    }
+
+    private static void printSummary(Map<String, LatencySummary> summaries) {
+        System.out.printf("%-12s %8s %8s %8s %8s %8s %8s %8s%n",
+            "类型", "count", "errors%", "p50", "p90", "p95", "p99", "max");
+        summaries.forEach((type, summary) -> System.out.printf("%-12s %8d %8.1f %8.0f %8.0f %8.0f %8.0f %8d%n",
+            type, summary.count(), summary.errorRate() * 100, summary.percentiles()[0], summary.percentiles()[1],
+            summary.percentiles()[2], summary.percentiles()[3], summary.max()));
+    }
+
+    /**
+     * 读取NDJSON文件，或目录下的全部 .ndjson 文件；跳过无法解析的行
+     */
+    private static List<JsonNode> readRecords(Path path) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> listing = Files.list(path)) {
+                listing.filter(file -> file.getFileName().toString().endsWith(".ndjson"))
+                    .sorted()
+                    .forEach(files::add);
+            }
+        } else {
+            files.add(path);
+        }
+
+        List<JsonNode> records = new ArrayList<>();
+        for (Path file : files) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    records.add(objectMapper.readTree(line));
+                } catch (IOException e) {
+                    // 忽略写入中断产生的不完整行
+                }
+            }
+        }
+        return records;
+    }
+
+    private static String require(Map<String, String> options, String name) {
+        String value = options.get(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("缺少参数 --" + name);
+        }
+        return value;
+    }
+}
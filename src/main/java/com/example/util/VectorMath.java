@@ -0,0 +1,63 @@
+package com.example.util;
+
+/**
+ * 向量运算工具
+ * 余弦相似度和归一化，供向量化服务和查询意图分类器共用
+ */
+public final class VectorMath {
+
+    private VectorMath() {
+    }
+
+    /**
+     * 计算两个向量的余弦相似度，任一向量为零向量时返回0
+     *
+     * @throws IllegalArgumentException 向量维度不匹配
+     */
+    public static double cosineSimilarity(float[] a, float[] b) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("向量维度不匹配");
+        }
+        double dot = 0.0, normA = 0.0, normB = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0.0 || normB == 0.0 ? 0.0 : dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    /**
+     * 计算两个向量的余弦相似度，任一向量为零向量时返回0
+     *
+     * @throws IllegalArgumentException 向量维度不匹配
+     */
+    public static double cosineSimilarity(double[] a, double[] b) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("向量维度不匹配");
+        }
+        double dot = 0.0, normA = 0.0, normB = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0.0 || normB == 0.0 ? 0.0 : dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    /**
+     * 归一化为单位向量，零向量返回全0
+     */
+    public static double[] normalize(float[] vector) {
+        double norm = 0.0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        double[] normalized = new double[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = norm == 0.0 ? 0.0 : vector[i] / norm;
+        }
+        return normalized;
+    }
+}